@@ -1,7 +1,11 @@
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
+import bakery.Autosave;
+import bakery.Journal;
 import bakery.MagicBakery;
+import search.HintService;
 import util.ConsoleUtils;
 
 public class BakeryDriver {
@@ -11,25 +15,56 @@ public class BakeryDriver {
 
     public static void main(String[] args) throws IOException, ClassNotFoundException {
         MagicBakery bakery;
+        Journal journal = null;
 
         ConsoleUtils consoleUtils = new ConsoleUtils();
         if (!consoleUtils.promptForStartLoad("Would you like to start a new game, or load an existing one?")) {
-            bakery = MagicBakery.loadState(consoleUtils.promptForFilePath("Enter path to saved game state:"));
+            File file = consoleUtils.promptForFilePath("Enter path to saved game state:");
+            if (Journal.isJournal(file)) {
+                // A journal left by a crash carries on where it stopped, in the same file
+                journal = Journal.resume(file);
+                bakery = journal.getGame();
+            } else {
+                bakery = MagicBakery.loadState(file);
+            }
         } else {
             bakery = new MagicBakery(123, "io/ingredients.csv", "io/layers.csv");
             List<String> players = consoleUtils.promptForNewPlayers("Let's get started! Who's playing?");
             bakery.startGame(players, "io/customers.csv");
         }
 
+        // Every action is journaled, so a game lost in a crash can be recovered by loading the journal.
+        // A journal left by an earlier game is only replaced if the players agree, otherwise this game
+        // gets a journal of its own
+        if (journal == null) {
+            File file = new File("bakery.journal");
+            if (file.exists() && !consoleUtils.promptForYesNo("bakery.journal holds an earlier game that can still be recovered. Replace it?")) {
+                file = new File("bakery-" + System.currentTimeMillis() + ".journal");
+                System.out.println("Journaling this game to " + file);
+            }
+            journal = Journal.start(file, bakery);
+        }
+        // Saves the game in the background at the end of every turn, if the players want it
+        Autosave autosave = null;
+        if (consoleUtils.promptForYesNo("Autosave to autosave.save at the end of every turn?")) {
+            autosave = Autosave.start(new File("autosave.save"), bakery);
+        }
+
+        // Plans the turn in the background while the player reads the game state
+        HintService hints = new HintService();
         boolean gameRunning = true;
         while (gameRunning) {
             while (bakery.getActionsRemaining() != 0) {
                 bakery.printGameState();
+                hints.update(bakery);
                 String prompt = String.format("You have %d actions remaining. What do you want to do?", bakery.getActionsRemaining());
-                bakery.doAction(consoleUtils.promptForAction(prompt, bakery));
+                bakery.doAction(consoleUtils.promptForAction(prompt, bakery, () -> hints.describe(bakery)));
             }
             gameRunning = !bakery.endTurn();
         }
+        hints.shutdown();
+        if (autosave != null) autosave.close();
+        journal.close();
         bakery.printCustomerServiceRecord();
     }
 
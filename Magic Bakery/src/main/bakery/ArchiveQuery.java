@@ -0,0 +1,205 @@
+package bakery;
+
+import java.io.Serial;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import bakery.CustomerOrder.CustomerOrderStatus;
+
+/**
+ * Query over the games of a {@link GameArchive}, answered from its columns and secondary indexes
+ * <br/>
+ * Every filter looks its games up in one of the archive's indexes and intersects them with the games
+ * already selected, giving a new query, so a query can be kept and narrowed in different ways.
+ * Totals are scanned from the columns on a fork/join pool, each task adding up a range of games.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public final class ArchiveQuery {
+    private static final int BATCH = 4096;
+
+    /**
+     * Numbers kept for every archived game
+     */
+    public enum Column {
+        PLAYERS,
+        TURNS,
+        MOVES,
+        FULFILLED,
+        GARNISHED,
+        HAPPY,
+        GIVEN_UP,
+        GARNISH_DUCKS
+    }
+
+    private final GameArchive archive;
+    private final int[] games;
+
+    private ArchiveQuery(GameArchive archive, int[] games) {
+        this.archive = archive;
+        this.games = games;
+    }
+
+    /**
+     * Starts a query over every game of an archive
+     * @param archive Archive to query
+     * @return Query selecting every game
+     * @throws IllegalArgumentException If the archive is version 1 and has no indexes
+     */
+    public static ArchiveQuery all(GameArchive archive) {
+        if (!archive.hasIndexes())
+            throw new IllegalArgumentException("Archive is version 1 and has no indexes to query");
+        return new ArchiveQuery(archive, null);
+    }
+
+    /**
+     * Narrows the query to games with a number of players
+     * @param players Number of players
+     * @return Narrowed query
+     */
+    public ArchiveQuery withPlayers(int players) {
+        return with(archive.postings(GameArchive.BY_PLAYERS, players));
+    }
+
+    /**
+     * Narrows the query to games where a customer ended with a status
+     * @param name Customer name
+     * @param status Status of the customer when the game ended
+     * @return Narrowed query
+     */
+    public ArchiveQuery withCustomer(String name, CustomerOrderStatus status) {
+        int key = archive.customerKey(name, status);
+        return with(key < 0 ? new int[0] : archive.postings(GameArchive.BY_CUSTOMER, key));
+    }
+
+    /**
+     * Narrows the query to games with a number of orders fulfilled, with or without garnish
+     * @param happy Number of happy customers
+     * @return Narrowed query
+     */
+    public ArchiveQuery withHappy(int happy) {
+        return with(archive.postings(GameArchive.BY_HAPPY, happy));
+    }
+
+    /**
+     * Narrows the query to games made with a seed
+     * @param seed Seed passed to {@link MagicBakery#MagicBakery(long, CardSet)}
+     * @return Narrowed query
+     */
+    public ArchiveQuery withSeed(long seed) {
+        return with(archive.gamesWithSeed(seed));
+    }
+
+    /**
+     * Gets the games selected by the query
+     * @return Game numbers in increasing order
+     */
+    public int[] games() {
+        if (games != null) return games.clone();
+        int[] all = new int[archive.size()];
+        for (int game = 0; game < all.length; game++) {
+            all[game] = game;
+        }
+        return all;
+    }
+
+    /**
+     * Counts the games selected by the query
+     * @return Number of games
+     */
+    public int count() {
+        return games == null ? archive.size() : games.length;
+    }
+
+    /**
+     * Adds up a column over the games selected by the query, on the common pool
+     * @param column Column to add up
+     * @return Total of the column
+     */
+    public long sum(Column column) {
+        return sum(column, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Adds up a column over the games selected by the query
+     * @param column Column to add up
+     * @param pool Pool to scan the column on
+     * @return Total of the column
+     */
+    public long sum(Column column, ForkJoinPool pool) {
+        return pool.invoke(new Scan(column, 0, count()));
+    }
+
+    /**
+     * Averages a column over the games selected by the query
+     * @param column Column to average
+     * @return Average of the column, or NaN if the query selects no game
+     */
+    public double average(Column column) {
+        int count = count();
+        return count == 0 ? Double.NaN : (double) sum(column) / count;
+    }
+
+    private ArchiveQuery with(int[] found) {
+        if (games == null) return new ArchiveQuery(archive, found);
+        int[] both = new int[Math.min(games.length, found.length)];
+        int size = 0;
+        for (int i = 0, j = 0; i < games.length && j < found.length; ) {
+            if (games[i] < found[j]) i++;
+            else if (games[i] > found[j]) j++;
+            else {
+                both[size++] = games[i];
+                i++;
+                j++;
+            }
+        }
+        return new ArchiveQuery(archive, Arrays.copyOf(both, size));
+    }
+
+    private long value(Column column, int game) {
+        return switch (column) {
+            case PLAYERS -> archive.getPlayerCount(game);
+            case TURNS -> archive.getTurns(game);
+            case MOVES -> archive.getMoveCount(game);
+            case FULFILLED -> archive.getFulfilled(game);
+            case GARNISHED -> archive.getGarnished(game);
+            case HAPPY -> archive.getFulfilled(game) + archive.getGarnished(game);
+            case GIVEN_UP -> archive.getGivenUp(game);
+            case GARNISH_DUCKS -> archive.getGarnishDucks(game);
+        };
+    }
+
+    /**
+     * Fork/join task adding up a column over a range of the selected games
+     */
+    private class Scan extends RecursiveTask<Long> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final Column column;
+        private final int from;
+        private final int to;
+
+        private Scan(Column column, int from, int to) {
+            this.column = column;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from > BATCH) {
+                int middle = (from + to) >>> 1;
+                Scan left = new Scan(column, from, middle);
+                left.fork();
+                return new Scan(column, middle, to).compute() + left.join();
+            }
+            long sum = 0;
+            for (int i = from; i < to; i++) {
+                sum += value(column, games == null ? i : games[i]);
+            }
+            return sum;
+        }
+    }
+}
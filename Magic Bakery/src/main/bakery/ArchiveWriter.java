@@ -0,0 +1,238 @@
+package bakery;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+import bakery.CustomerOrder.CustomerOrderStatus;
+
+/**
+ * Writes finished games into a {@link GameArchive}
+ * <br/>
+ * Records are gathered in memory and written in large blocks, while the index, the columns and the
+ * game lists of the secondary indexes are kept in memory and written with the card names when the
+ * writer is closed. An archive that was never closed has no index and can't be opened.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public final class ArchiveWriter implements Closeable {
+    private static final int BLOCK_BYTES = 1 << 16;
+    private static final CustomerOrderStatus[] STATUSES = CustomerOrderStatus.values();
+
+    private final FileChannel channel;
+    private final SaveFile.Writer records = new SaveFile.Writer();
+    private final SaveFile.Writer index = new SaveFile.Writer();
+    private final SaveFile.Writer turns = new SaveFile.Writer();
+    private final SaveFile.Writer garnishDucks = new SaveFile.Writer();
+    private final CRC32 crc = new CRC32();
+    private final Map<String, Integer> customerIds = new HashMap<>();
+    private final List<String> customerNames = new ArrayList<>();
+    private final Map<Integer, Postings> byCustomer = new TreeMap<>();
+    private final Map<Integer, Postings> byPlayers = new TreeMap<>();
+    private final Map<Integer, Postings> byHappy = new TreeMap<>();
+    private long[] seeds = new long[1024];
+    private long written;
+    private int games;
+
+    private ArchiveWriter(FileChannel channel) {
+        this.channel = channel;
+        records.buffer.putInt(GameArchive.MAGIC).putShort((short) GameArchive.VERSION).putShort((short) 0);
+    }
+
+    /**
+     * Starts an archive, replacing the file if it exists
+     * @param file File to write the archive to
+     * @return Writer of the archive
+     * @throws IOException If the file can't be written
+     */
+    public static ArchiveWriter create(File file) throws IOException {
+        return new ArchiveWriter(FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /**
+     * Gets the number of games added so far
+     * @return Number of games
+     */
+    public int size() {
+        return games;
+    }
+
+    /**
+     * Adds a finished game to the archive
+     * @param seed Seed the game was made with by {@link MagicBakery#MagicBakery(long, CardSet)}
+     * @param game Finished game, which gives the player names and the customer service record
+     * @param moves Every move played in the game, in order, each turn ending when the player has no actions left
+     * @throws IOException If the file can't be written
+     */
+    public void add(long seed, MagicBakery game, List<Move> moves) throws IOException {
+        int start = records.buffer.position();
+        for (Player player: game.getPlayers()) {
+            records.string(player.toString());
+        }
+        for (Move move: moves) {
+            records.count(move.encode());
+        }
+        crc.reset();
+        crc.update(records.buffer.array(), start, records.buffer.position() - start);
+
+        Customers customers = game.getCustomers();
+        int fulfilled = customers.countInactiveCustomersWithStatus(CustomerOrderStatus.FULFILLED);
+        int garnished = customers.countInactiveCustomersWithStatus(CustomerOrderStatus.GARNISHED);
+        int players = game.getPlayers().size();
+        index.ensure(GameArchive.ENTRY_BYTES);
+        index.buffer.putLong(written + start).putLong(seed).putInt((int) crc.getValue()).putInt(moves.size())
+                .putShort((short) fulfilled)
+                .putShort((short) garnished)
+                .putShort((short) customers.countInactiveCustomersWithStatus(CustomerOrderStatus.GIVEN_UP))
+                .putShort((short) players);
+
+        // Columns and secondary indexes
+        int ducks = 0;
+        for (CustomerOrder customerOrder: customers.getInactiveCustomersWithStatus(CustomerOrderStatus.GARNISHED)) {
+            ducks += customerOrder.getGarnishDucks();
+        }
+        turns.ensure(Short.BYTES);
+        turns.buffer.putShort((short) (moves.size() / game.getActionsPermitted()));
+        garnishDucks.ensure(Short.BYTES);
+        garnishDucks.buffer.putShort((short) ducks);
+        addCustomers(customers.getCustomerDeck());
+        addCustomers(customers.getActiveCustomers());
+        for (CustomerOrderStatus status: STATUSES) {
+            addCustomers(customers.getInactiveCustomersWithStatus(status));
+        }
+        byPlayers.computeIfAbsent(players, key -> new Postings()).add(games);
+        byHappy.computeIfAbsent(fulfilled + garnished, key -> new Postings()).add(games);
+        if (games == seeds.length) {
+            seeds = Arrays.copyOf(seeds, games * 2);
+        }
+        seeds[games] = seed;
+
+        games++;
+        if (records.buffer.position() >= BLOCK_BYTES) {
+            writeRecords();
+        }
+    }
+
+    /**
+     * Writes the index, the card names, the columns and the secondary indexes, finishing the archive
+     * @throws IOException If the file can't be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) return;
+        try (channel) {
+            writeRecords();
+            long start = written;
+            int cards = CardCatalog.size();
+            index.count(cards);
+            for (int ordinal = 0; ordinal < cards; ordinal++) {
+                index.string(CardCatalog.get(ordinal).getName());
+            }
+            putColumn(turns);
+            putColumn(garnishDucks);
+            index.count(customerNames.size());
+            for (String name: customerNames) {
+                index.string(name);
+            }
+            putPostings(byCustomer);
+            putPostings(byPlayers);
+            putPostings(byHappy);
+            index.ensure(games * Integer.BYTES);
+            IntStream.range(0, games).boxed()
+                    .sorted((a, b) -> Long.compare(seeds[a], seeds[b]))
+                    .forEachOrdered(game -> index.buffer.putInt(game));
+
+            crc.reset();
+            crc.update(index.buffer.array(), 0, index.buffer.position());
+            index.ensure(GameArchive.TRAILER_BYTES);
+            index.buffer.putLong(start).putInt(games).putInt((int) crc.getValue()).putInt(GameArchive.MAGIC);
+            write(index.buffer);
+            channel.force(true);
+        }
+    }
+
+    private void addCustomers(Collection<CustomerOrder> source) {
+        for (CustomerOrder customerOrder: source) {
+            if (customerOrder == null) continue;
+            String name = customerOrder.toString();
+            Integer id = customerIds.get(name);
+            if (id == null) {
+                id = customerNames.size();
+                customerIds.put(name, id);
+                customerNames.add(name);
+            }
+            byCustomer.computeIfAbsent(id * STATUSES.length + customerOrder.getStatus().ordinal(), key -> new Postings()).add(games);
+        }
+    }
+
+    private void putColumn(SaveFile.Writer column) {
+        column.buffer.flip();
+        index.ensure(column.buffer.remaining());
+        index.buffer.put(column.buffer);
+        column.buffer.clear();
+    }
+
+    /**
+     * Writes each game list as its key, its size, its length in bytes and the gaps between its games
+     */
+    private void putPostings(Map<Integer, Postings> lists) {
+        index.count(lists.size());
+        SaveFile.Writer gaps = new SaveFile.Writer();
+        for (Map.Entry<Integer, Postings> list: lists.entrySet()) {
+            Postings postings = list.getValue();
+            gaps.buffer.clear();
+            int previous = -1;
+            for (int i = 0; i < postings.size; i++) {
+                gaps.count(postings.games[i] - previous);
+                previous = postings.games[i];
+            }
+            index.count(list.getKey());
+            index.count(postings.size);
+            index.count(gaps.buffer.position());
+            index.ensure(gaps.buffer.position());
+            index.buffer.put(gaps.buffer.array(), 0, gaps.buffer.position());
+        }
+    }
+
+    private void writeRecords() throws IOException {
+        written += write(records.buffer);
+    }
+
+    private int write(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        return length;
+    }
+
+    /**
+     * Growing list of game numbers in increasing order, each added once
+     */
+    private static final class Postings {
+        private int[] games = new int[16];
+        private int size;
+
+        private void add(int game) {
+            if (size > 0 && games[size - 1] == game) return;
+            if (size == games.length) {
+                games = Arrays.copyOf(games, size * 2);
+            }
+            games[size++] = game;
+        }
+    }
+}
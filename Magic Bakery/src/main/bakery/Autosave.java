@@ -0,0 +1,165 @@
+package bakery;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Saves a game in the background at the end of every turn
+ * <br/>
+ * Ending a turn only takes a {@link MagicBakery#copy()} of the game, so the turn isn't held up by the
+ * disk and the save is always of a position between turns, never of one halfway through an action.
+ * A background thread writes the copy as a checkpoint with {@link Checkpoints}, so most turns only
+ * add what changed since the last save to the file. If turns end faster than copies can be saved,
+ * only the newest copy is saved and the older ones are skipped.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public final class Autosave implements Closeable {
+    private final MagicBakery game;
+    private final Checkpoints checkpoints;
+    private MagicBakery pending;
+    private long offered;
+    private long saved;
+    private long written;
+    private long skipped;
+    private boolean idle;
+    private boolean closed;
+    private IOException failure;
+
+    private Autosave(MagicBakery game, File file) {
+        this.game = game;
+        checkpoints = Checkpoints.create(file);
+        Thread writer = new Thread(this::write, "autosave");
+        writer.setDaemon(true);
+        writer.start();
+        game.setAutosave(this);
+    }
+
+    /**
+     * Starts saving a game at the end of every turn
+     * @param file File to save checkpoints to
+     * @param game Game to save, which is saved until the autosave is closed
+     * @return Autosave of the game
+     */
+    public static Autosave start(File file, MagicBakery game) {
+        return new Autosave(game, file);
+    }
+
+    /**
+     * Gets the number of turns ended since autosave started
+     * @return Number of copies taken
+     */
+    public synchronized long getOffered() {
+        return offered;
+    }
+
+    /**
+     * Gets the number of saves written
+     * @return Number of saves
+     */
+    public synchronized long getWritten() {
+        return written;
+    }
+
+    /**
+     * Gets the number of copies skipped because a newer one came before they were saved
+     * @return Number of skipped copies
+     */
+    public synchronized long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Waits until the copy from the latest end of turn is saved
+     * @throws IOException If the latest save failed
+     */
+    public synchronized void flush() throws IOException {
+        long target = offered;
+        try {
+            while (saved < target) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the autosave");
+        }
+        if (failure != null)
+            throw new IOException("Autosave couldn't be written", failure);
+    }
+
+    /**
+     * Saves the latest copy and stops saving the game
+     * @throws IOException If the latest save failed
+     */
+    @Override
+    public void close() throws IOException {
+        game.setAutosave(null);
+        try {
+            flush();
+        } finally {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+            checkpoints.close();
+        }
+    }
+
+    /**
+     * Takes a copy of the game to be saved, called by the game at the end of a turn
+     */
+    void offer() {
+        MagicBakery copy = game.copy();
+        synchronized (this) {
+            if (pending != null) {
+                skipped++;
+            }
+            pending = copy;
+            offered++;
+            // A busy writer picks the copy up by itself, so only an idle one needs waking
+            if (idle) {
+                idle = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Saves copies in the background until the autosave is closed
+     */
+    private void write() {
+        while (true) {
+            MagicBakery copy;
+            long number;
+            synchronized (this) {
+                try {
+                    while (pending == null && !closed) {
+                        idle = true;
+                        wait();
+                    }
+                    idle = false;
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (pending == null) return;
+                copy = pending;
+                pending = null;
+                number = offered;
+            }
+            IOException error = null;
+            try {
+                checkpoints.write(copy);
+            } catch (IOException e) {
+                error = e;
+            }
+            synchronized (this) {
+                failure = error;
+                saved = number;
+                if (error == null) written++;
+                notifyAll();
+            }
+        }
+    }
+}
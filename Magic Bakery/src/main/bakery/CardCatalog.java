@@ -0,0 +1,158 @@
+package bakery;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Flyweight catalog of card types
+ * <br/>
+ * Every card name is given a small, dense ordinal the first time it is seen, and a single canonical
+ * Ingredient or Layer instance is kept per name. Cards loaded through the catalog can therefore be
+ * compared by reference or by ordinal instead of by name.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public final class CardCatalog {
+    private static final Map<String, Integer> ordinals = new HashMap<>();
+    private static volatile Ingredient[] cards = new Ingredient[16];
+    private static volatile int[] byName = new int[0];
+    private static volatile int size;
+
+    private CardCatalog() {}
+
+    /**
+     * Returns the ordinal of a card name, assigning the next free ordinal if the name is new
+     * @param name Name of the card
+     * @return Ordinal of the card name
+     */
+    static synchronized int ordinalOf(String name) {
+        Integer ordinal = ordinals.get(name);
+        if (ordinal == null) {
+            ordinal = size;
+            ordinals.put(name, ordinal);
+            if (ordinal == cards.length) {
+                cards = Arrays.copyOf(cards, ordinal * 2);
+            }
+            size = ordinal + 1;
+            byName = ordinals.entrySet().stream()
+                    .sorted(Map.Entry.comparingByKey())
+                    .mapToInt(Map.Entry::getValue)
+                    .toArray();
+        }
+        return ordinal;
+    }
+
+    /**
+     * Returns the canonical card with a given name, creating a plain Ingredient if the name is new
+     * @param name Name of the card
+     * @return Canonical card with the given name
+     */
+    public static synchronized Ingredient ingredient(String name) {
+        Ingredient card = lookup(name);
+        if (card == null) {
+            card = new Ingredient(name);
+            cards[card.getOrdinal()] = card;
+        }
+        return card;
+    }
+
+    /**
+     * Returns the canonical Layer with a given name, creating it from the recipe if the name is new
+     * @param name Name of the layer
+     * @param recipe List of ingredients that make up the Layer, only used if the layer is new
+     * @return Canonical Layer with the given name
+     */
+    public static synchronized Layer layer(String name, List<Ingredient> recipe) {
+        Ingredient card = lookup(name);
+        if (card instanceof Layer) {
+            return (Layer) card;
+        }
+        Layer layer = new Layer(name, recipe);
+        cards[layer.getOrdinal()] = layer;
+        return layer;
+    }
+
+    /**
+     * Returns the canonical card with a given name
+     * @param name Name of the card
+     * @return Canonical card, or {@code null} if no card with that name has been loaded
+     */
+    public static synchronized Ingredient lookup(String name) {
+        Integer ordinal = ordinals.get(name);
+        return ordinal == null ? null : cards[ordinal];
+    }
+
+    /**
+     * Returns the canonical card with a given ordinal
+     * @param ordinal Ordinal of the card
+     * @return Canonical card, or {@code null} if no card with that ordinal has been loaded
+     */
+    public static Ingredient get(int ordinal) {
+        Ingredient card = cards[ordinal];
+        if (card == null) {
+            synchronized (CardCatalog.class) {
+                card = cards[ordinal];
+            }
+        }
+        return card;
+    }
+
+    /**
+     * Returns the number of ordinals handed out so far
+     * <br/>
+     * Every ordinal is strictly smaller than this value, so it can be used to size per-card arrays
+     * @return Number of ordinals
+     */
+    public static int size() {
+        return size;
+    }
+
+    /**
+     * Returns every ordinal handed out so far, sorted by card name
+     * @return Ordinals in name order, which must not be modified
+     */
+    static int[] ordinalsByName() {
+        return byName;
+    }
+
+    /**
+     * Returns the canonical instance of a card, registering the card itself if there is none yet
+     * @param card Card to resolve
+     * @return Canonical card with the same name
+     */
+    static Ingredient canonical(Ingredient card) {
+        Ingredient canonical = get(card.getOrdinal());
+        if (canonical != null) {
+            return canonical;
+        }
+        synchronized (CardCatalog.class) {
+            if (cards[card.getOrdinal()] == null) {
+                cards[card.getOrdinal()] = card;
+            }
+            return cards[card.getOrdinal()];
+        }
+    }
+
+    /**
+     * Makes sure a card can be got back from its ordinal, registering the card itself if there is no
+     * canonical card for it yet
+     * @param card Card to register
+     */
+    static void register(Ingredient card) {
+        canonical(card);
+    }
+
+    /**
+     * Resolves a deserialized card to the canonical card with the same name
+     * @param card Deserialized card
+     * @return Canonical card with the same name
+     */
+    static synchronized Ingredient resolve(Ingredient card) {
+        if (card instanceof Layer) {
+            return layer(card.getName(), ((Layer) card).getRecipe());
+        }
+        return ingredient(card.getName());
+    }
+}
@@ -0,0 +1,74 @@
+package bakery;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import util.CardUtils;
+
+/**
+ * Represents the ingredient, layer and customer cards of a game, read once and shared between games
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public final class CardSet {
+    private final List<Ingredient> ingredients;
+    private final List<Layer> layers;
+    private final List<CustomerOrder> customerOrders;
+
+    private CardSet(List<Ingredient> ingredients, List<Layer> layers, List<CustomerOrder> customerOrders) {
+        this.ingredients = Collections.unmodifiableList(ingredients);
+        this.layers = Collections.unmodifiableList(layers);
+        this.customerOrders = Collections.unmodifiableList(customerOrders);
+    }
+
+    /**
+     * Reads the cards from the source files
+     * @param ingredientDeckFile Path to ingredient file
+     * @param layerDeckFile Path to layer file
+     * @param customerDeckFile Path to customer file
+     * @return Cards read from the files
+     * @throws FileNotFoundException If any of the files is not found
+     */
+    public static CardSet load(String ingredientDeckFile, String layerDeckFile, String customerDeckFile) throws FileNotFoundException {
+        List<Layer> layers = CardUtils.readLayerFile(layerDeckFile);
+        return new CardSet(CardUtils.readIngredientFile(ingredientDeckFile), layers, CardUtils.readCustomerFile(customerDeckFile, layers));
+    }
+
+    /**
+     * Gets the ingredient deck in file order
+     * @return Unmodifiable list of ingredient cards
+     */
+    public List<Ingredient> getIngredients() {
+        return ingredients;
+    }
+
+    /**
+     * Gets the layer cards in file order
+     * @return Unmodifiable list of layer cards
+     */
+    public List<Layer> getLayers() {
+        return layers;
+    }
+
+    /**
+     * Gets the customer order templates in file order
+     * @return Unmodifiable list of customer orders, which must not be played directly
+     */
+    public List<CustomerOrder> getCustomerOrders() {
+        return customerOrders;
+    }
+
+    /**
+     * Creates a fresh, waiting copy of every customer order for a new game
+     * @return New list of customer orders in file order
+     */
+    List<CustomerOrder> newCustomerOrders() {
+        List<CustomerOrder> orders = new ArrayList<>(customerOrders.size());
+        for (CustomerOrder customerOrder: customerOrders) {
+            orders.add(new CustomerOrder(customerOrder));
+        }
+        return orders;
+    }
+}
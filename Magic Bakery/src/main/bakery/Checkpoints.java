@@ -0,0 +1,556 @@
+package bakery;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import bakery.CustomerOrder.CustomerOrderStatus;
+
+/**
+ * File of checkpoints of a game, each written as the changes since the one before
+ * <br/>
+ * The file starts with the magic number {@code MBKC}, the format version and flags, then a full save
+ * in the {@link SaveFile} format. Each later checkpoint is a delta against the one before it: the
+ * seat, the actions remaining, any random stream that moved, and for each pile, hand and row of
+ * customers that changed, how many entries it kept at each end and the entries in between. Cards and
+ * customers are numbered by name over the full save, so a delta usually takes a few dozen bytes
+ * however long the game has run. Loading reads the full save and applies the deltas in order.
+ * <br/>
+ * Every checkpoint has its own length and CRC-32, so one cut short by a crash is dropped and the game
+ * loads at the checkpoint before. Once the deltas add up to four times the full save, or the game no
+ * longer fits its numbering, the next checkpoint replaces the file with a new full save, which keeps
+ * both the file and the time to load it bounded.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public final class Checkpoints implements Closeable {
+    /**
+     * Current version of the format, written into every checkpoint file
+     */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x4D424B43;
+    private static final int HEADER_BYTES = 8;
+    private static final CustomerOrderStatus[] STATUSES = CustomerOrderStatus.values();
+
+    private static final int COMPACT_AFTER = 4;
+
+    private static final int STILL = 0;
+    private static final int STEPPED = 1;
+    private static final int REPLACED = 2;
+
+    private final Path path;
+    private FileChannel channel;
+    private Numbering numbering;
+    private Frame previous;
+    private long fullBytes;
+    private long deltaBytes;
+    private long fullSaves;
+    private long deltas;
+    private long bytesWritten;
+
+    private Checkpoints(File file) {
+        path = file.toPath();
+    }
+
+    /**
+     * Starts a checkpoint file, which is replaced by a full save at the first checkpoint
+     * @param file File to write checkpoints to
+     * @return Checkpoints writing to the file
+     */
+    public static Checkpoints create(File file) {
+        return new Checkpoints(file);
+    }
+
+    /**
+     * Loads the game at the last whole checkpoint of a file
+     * @param file File written by {@link #write(MagicBakery)}
+     * @return Game in the checkpointed position, with no undo history
+     * @throws IOException If the file can't be read or its full save is damaged
+     */
+    public static MagicBakery read(File file) throws IOException {
+        return fromBytes(Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * Loads the game at the last whole checkpoint of a file read into memory
+     * @param bytes Whole checkpoint file
+     * @return Game in the checkpointed position, with no undo history
+     * @throws IOException If the full save is damaged or the file is made by a newer version of the format
+     */
+    static MagicBakery fromBytes(byte[] bytes) throws IOException {
+        if (!isCheckpoints(bytes) || bytes.length < HEADER_BYTES)
+            throw new StreamCorruptedException("Not a checkpoint file");
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        in.getInt();
+        int version = in.getShort();
+        if (version > VERSION)
+            throw new IOException("Checkpoint file is version " + version + ", this game reads up to version " + VERSION);
+        int flags = in.getShort();
+        if (flags != 0)
+            throw new IOException("Checkpoint file uses features this game doesn't know: " + Integer.toHexString(flags));
+        ByteBuffer save = nextRecord(in);
+        if (save == null)
+            throw new StreamCorruptedException("Checkpoint file's full save is damaged");
+        MagicBakery game = SaveFile.fromBytes(Arrays.copyOfRange(bytes, save.position(), save.limit()));
+
+        Numbering numbering = new Numbering(game);
+        Frame first = numbering.frame(game);
+        Frame frame = first;
+        for (ByteBuffer delta = nextRecord(in); delta != null; delta = nextRecord(in)) {
+            try {
+                frame = frame.apply(delta);
+            } catch (BufferUnderflowException e) {
+                throw new StreamCorruptedException("Checkpoint is truncated");
+            }
+        }
+        return frame == first ? game : numbering.game(frame);
+    }
+
+    /**
+     * Checks if a file starts like a checkpoint file
+     * @param bytes Start of the file
+     * @return {@code true} if the file is a checkpoint file
+     */
+    static boolean isCheckpoints(byte[] bytes) {
+        return bytes.length >= Integer.BYTES && ByteBuffer.wrap(bytes).getInt() == MAGIC;
+    }
+
+    /**
+     * Gets the number of full saves written
+     * @return Number of full saves
+     */
+    public synchronized long getFullSaves() {
+        return fullSaves;
+    }
+
+    /**
+     * Gets the number of checkpoints written as deltas
+     * @return Number of deltas
+     */
+    public synchronized long getDeltas() {
+        return deltas;
+    }
+
+    /**
+     * Gets the number of bytes written for every checkpoint so far
+     * @return Bytes written
+     */
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Writes a checkpoint of a game and waits for the disk
+     * <br/>
+     * The checkpoint is a delta against the previous one if it can be, or a new full save that replaces
+     * the file in one step.
+     * @param game Game to checkpoint
+     * @throws IOException If the file can't be written, in which case the next checkpoint is a full save
+     */
+    public synchronized void write(MagicBakery game) throws IOException {
+        Frame frame = previous == null || deltaBytes > COMPACT_AFTER * fullBytes ? null : numbering.frame(game);
+        try {
+            if (frame == null) {
+                writeFull(game);
+            } else {
+                writeDelta(frame);
+            }
+        } catch (IOException e) {
+            previous = null;
+            throw e;
+        }
+    }
+
+    /**
+     * Stops writing checkpoints, keeping the file
+     * @throws IOException If the file can't be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        previous = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void writeFull(MagicBakery game) throws IOException {
+        byte[] save = SaveFile.toBytes(game);
+        SaveFile.Writer out = new SaveFile.Writer();
+        out.ensure(HEADER_BYTES);
+        out.buffer.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0);
+        record(out, save, 0, save.length);
+
+        close();
+        SaveFile.writeAtomically(path, Arrays.copyOf(out.buffer.array(), out.buffer.position()));
+        channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        numbering = new Numbering(game);
+        previous = numbering.frame(game);
+        fullBytes = save.length;
+        deltaBytes = 0;
+        fullSaves++;
+        bytesWritten += out.buffer.position();
+    }
+
+    private void writeDelta(Frame frame) throws IOException {
+        SaveFile.Writer body = new SaveFile.Writer();
+        frame.writeDelta(previous, numbering, body);
+        SaveFile.Writer out = new SaveFile.Writer();
+        record(out, body.buffer.array(), 0, body.buffer.position());
+
+        ByteBuffer bytes = out.buffer.flip();
+        int length = bytes.remaining();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        channel.force(false);
+        previous = frame;
+        deltaBytes += length;
+        deltas++;
+        bytesWritten += length;
+    }
+
+    /**
+     * Writes a record as its length, a CRC-32 and its bytes
+     */
+    private static void record(SaveFile.Writer out, byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        out.count(length);
+        out.ensure(Integer.BYTES + length);
+        out.buffer.putInt((int) crc.getValue());
+        out.buffer.put(bytes, offset, length);
+    }
+
+    /**
+     * Reads the next record, or {@code null} at the end of the file or at a record cut short or damaged
+     */
+    private static ByteBuffer nextRecord(ByteBuffer in) {
+        try {
+            int length = SaveFile.readCount(in);
+            int checksum = in.getInt();
+            if (length > in.remaining()) return null;
+            CRC32 crc = new CRC32();
+            crc.update(in.array(), in.position(), length);
+            if ((int) crc.getValue() != checksum) return null;
+            ByteBuffer record = ByteBuffer.wrap(in.array(), in.position(), length);
+            in.position(in.position() + length);
+            return record;
+        } catch (BufferUnderflowException | StreamCorruptedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Numbers of the cards and customers of a full save, by name, and what a position is made from
+     */
+    private static final class Numbering {
+        private final List<Ingredient> cards;
+        private final int[] indexes = new int[CardCatalog.size()];
+        private final CustomerOrder[] roster;
+        private final Map<String, Integer> rosterIndexes = new HashMap<>();
+        private final String[] players;
+        private final boolean customers;
+        private final boolean legacyRandom;
+        private final boolean legacyCustomerRandom;
+        private final boolean sharedRandom;
+
+        private Numbering(MagicBakery game) {
+            // Numbered in order of name, so a game loaded from the full save is numbered the same
+            Map<String, CustomerOrder> orders = new TreeMap<>();
+            Map<String, Ingredient> names = new TreeMap<>();
+            Customers gameCustomers = game.getCustomers();
+            customers = gameCustomers != null;
+            if (customers) {
+                addOrders(gameCustomers.getCustomerDeck(), orders);
+                addOrders(gameCustomers.getActiveCustomers(), orders);
+                addOrders(gameCustomers.getInactiveCustomers(), orders);
+            }
+            roster = orders.values().toArray(new CustomerOrder[0]);
+            for (int i = 0; i < roster.length; i++) {
+                rosterIndexes.put(roster[i].toString(), i);
+                addCards(roster[i].getRecipe(), names);
+                addCards(roster[i].getGarnish(), names);
+            }
+            for (int list = MagicBakery.PANTRY; list <= MagicBakery.LAYERS; list++) {
+                addCards(game.list(list), names);
+            }
+            List<Player> gamePlayers = (List<Player>) game.getPlayers();
+            players = new String[gamePlayers.size()];
+            for (int seat = 0; seat < players.length; seat++) {
+                players[seat] = gamePlayers.get(seat).toString();
+                addCards(gamePlayers.get(seat).getHand(), names);
+            }
+            cards = new ArrayList<>(names.values());
+            for (int i = 0; i < cards.size(); i++) {
+                indexes[cards.get(i).getOrdinal()] = i + 1;
+            }
+
+            GameRandom random = game.getRandom(false);
+            GameRandom customerRandom = game.getRandom(true);
+            legacyRandom = random.isLegacy();
+            legacyCustomerRandom = customerRandom.isLegacy();
+            sharedRandom = random == customerRandom;
+        }
+
+        private static void addOrders(Collection<CustomerOrder> source, Map<String, CustomerOrder> orders) {
+            for (CustomerOrder customerOrder: source) {
+                if (customerOrder != null) {
+                    orders.putIfAbsent(customerOrder.toString(), customerOrder);
+                }
+            }
+        }
+
+        private static void addCards(Collection<? extends Ingredient> source, Map<String, Ingredient> names) {
+            for (Ingredient card: source) {
+                if (names.putIfAbsent(card.getName(), card) == null && card instanceof Layer) {
+                    addCards(((Layer) card).getRecipe(), names);
+                }
+            }
+        }
+
+        /**
+         * Numbers a position, or returns {@code null} if it has a card, customer or player this numbering doesn't have
+         */
+        private Frame frame(MagicBakery game) {
+            List<Player> gamePlayers = (List<Player>) game.getPlayers();
+            Customers gameCustomers = game.getCustomers();
+            if (gamePlayers.size() != players.length || (gameCustomers != null) != customers) return null;
+            int[][] sections = new int[MagicBakery.LAYERS + 1 + players.length + (customers ? 3 : 0)][];
+            for (int list = MagicBakery.PANTRY; list <= MagicBakery.LAYERS; list++) {
+                List<Ingredient> pile = game.list(list);
+                int[] section = new int[pile.size()];
+                for (int i = 0; i < section.length; i++) {
+                    section[i] = indexOf(pile.get(i));
+                    if (section[i] < 0) return null;
+                }
+                sections[list] = section;
+            }
+            for (int seat = 0; seat < players.length; seat++) {
+                Player player = gamePlayers.get(seat);
+                int[] section = new int[player.getHandSize()];
+                int size = 0;
+                for (int i = 0; i < cards.size(); i++) {
+                    for (int n = player.count(cards.get(i).getOrdinal()); n > 0 && size < section.length; n--) {
+                        section[size++] = i;
+                    }
+                }
+                if (size != section.length) return null;
+                sections[MagicBakery.LAYERS + 1 + seat] = section;
+            }
+            if (customers) {
+                int first = MagicBakery.LAYERS + 1 + players.length;
+                sections[first] = orders(gameCustomers.getCustomerDeck());
+                sections[first + 1] = orders(gameCustomers.getActiveCustomers());
+                sections[first + 2] = orders(gameCustomers.getInactiveCustomers());
+                if (sections[first] == null || sections[first + 1] == null || sections[first + 2] == null) return null;
+            }
+            long randomState = game.getRandom(false).getState();
+            long customerRandomState = sharedRandom ? 0 : game.getRandom(true).getState();
+            return new Frame(players.length == 0 ? 0 : game.getSeat(), game.getActionsRemaining(), randomState, customerRandomState, sections);
+        }
+
+        private int indexOf(Ingredient card) {
+            int ordinal = card.getOrdinal();
+            return ordinal < indexes.length ? indexes[ordinal] - 1 : -1;
+        }
+
+        /**
+         * Numbers customers as 0 for an empty slot, or one more than their roster index and status
+         */
+        private int[] orders(Collection<CustomerOrder> source) {
+            int[] section = new int[source.size()];
+            int i = 0;
+            for (CustomerOrder customerOrder: source) {
+                if (customerOrder != null) {
+                    Integer index = rosterIndexes.get(customerOrder.toString());
+                    if (index == null) return null;
+                    section[i] = 1 + index * STATUSES.length + customerOrder.getStatus().ordinal();
+                }
+                i++;
+            }
+            return section;
+        }
+
+        /**
+         * Builds a new game in a numbered position
+         */
+        private MagicBakery game(Frame frame) throws StreamCorruptedException {
+            List<List<Ingredient>> piles = new ArrayList<>();
+            for (int list = MagicBakery.PANTRY; list <= MagicBakery.LAYERS; list++) {
+                piles.add(cards(frame.sections[list]));
+            }
+            List<Player> hands = new ArrayList<>(players.length);
+            for (int seat = 0; seat < players.length; seat++) {
+                Player player = new Player(players[seat]);
+                player.addToHand(cards(frame.sections[MagicBakery.LAYERS + 1 + seat]));
+                hands.add(player);
+            }
+            if (players.length > 0 && frame.seat >= players.length)
+                throw new StreamCorruptedException("Checkpoint has no player in seat " + frame.seat);
+            Customers gameCustomers = null;
+            if (customers) {
+                int first = MagicBakery.LAYERS + 1 + players.length;
+                List<CustomerOrder> deck = orders(frame.sections[first]);
+                List<CustomerOrder> active = orders(frame.sections[first + 1]);
+                gameCustomers = new Customers(active, deck, orders(frame.sections[first + 2]));
+            }
+
+            GameRandom random = SaveFile.stream(legacyRandom, frame.randomState);
+            GameRandom customerRandom = sharedRandom ? random : SaveFile.stream(legacyCustomerRandom, frame.customerRandomState);
+            MagicBakery game = new MagicBakery(random, customerRandom);
+            game.setPosition(hands, frame.seat, frame.actions, piles, gameCustomers, random.getState(), customerRandom.getState());
+            return game;
+        }
+
+        private List<Ingredient> cards(int[] section) throws StreamCorruptedException {
+            List<Ingredient> result = new ArrayList<>(section.length);
+            for (int index: section) {
+                if (index >= cards.size())
+                    throw new StreamCorruptedException("Checkpoint refers to unknown card " + index);
+                result.add(cards.get(index));
+            }
+            return result;
+        }
+
+        private List<CustomerOrder> orders(int[] section) throws StreamCorruptedException {
+            List<CustomerOrder> result = new ArrayList<>(section.length);
+            for (int number: section) {
+                if (number == 0) {
+                    result.add(null);
+                    continue;
+                }
+                int index = (number - 1) / STATUSES.length;
+                if (index >= roster.length)
+                    throw new StreamCorruptedException("Checkpoint refers to unknown customer " + index);
+                CustomerOrder customerOrder = new CustomerOrder(roster[index]);
+                customerOrder.setStatus(STATUSES[(number - 1) % STATUSES.length]);
+                result.add(customerOrder);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Numbered position: the seat, actions, random states, then the piles, hands and rows of customers as sections
+     */
+    private static final class Frame {
+        private final int seat;
+        private final int actions;
+        private final long randomState;
+        private final long customerRandomState;
+        private final int[][] sections;
+
+        private Frame(int seat, int actions, long randomState, long customerRandomState, int[][] sections) {
+            this.seat = seat;
+            this.actions = actions;
+            this.randomState = randomState;
+            this.customerRandomState = customerRandomState;
+            this.sections = sections;
+        }
+
+        /**
+         * Writes what changed since an earlier position, each changed section as the entries kept at its
+         * start and end and the entries in between
+         */
+        private void writeDelta(Frame before, Numbering numbering, SaveFile.Writer out) {
+            int random = move(before.randomState, randomState, numbering.legacyRandom);
+            int customerRandom = move(before.customerRandomState, customerRandomState, numbering.legacyCustomerRandom);
+            out.count(random | customerRandom << 2 | actions << 4);
+            out.count(seat);
+            writeMove(out, random, before.randomState, randomState);
+            writeMove(out, customerRandom, before.customerRandomState, customerRandomState);
+            for (int i = 0; i < sections.length; i++) {
+                int[] now = sections[i];
+                int[] was = before.sections[i];
+                int shorter = Math.min(now.length, was.length);
+                int start = 0;
+                while (start < shorter && now[start] == was[start]) start++;
+                int end = 0;
+                while (end < shorter - start && now[now.length - 1 - end] == was[was.length - 1 - end]) end++;
+                if (start == now.length && start == was.length) continue;
+                out.count(1 + i + sections.length * (now.length - start - end));
+                out.count(start);
+                out.count(end);
+                for (int j = start; j < now.length - end; j++) {
+                    out.count(now[j]);
+                }
+            }
+            out.count(0);
+        }
+
+        /**
+         * Reads a delta written by {@link #writeDelta(Frame, Numbering, SaveFile.Writer)} against this position
+         */
+        private Frame apply(ByteBuffer in) throws StreamCorruptedException {
+            int first = SaveFile.readCount(in);
+            int nextSeat = SaveFile.readCount(in);
+            long nextRandomState = readMove(in, first & 3, randomState);
+            long nextCustomerRandomState = readMove(in, first >>> 2 & 3, customerRandomState);
+            int[][] next = sections.clone();
+            for (int change = SaveFile.readCount(in); change != 0; change = SaveFile.readCount(in)) {
+                if (change < 0)
+                    throw new StreamCorruptedException("Checkpoint has a malformed change");
+                int i = (change - 1) % next.length;
+                int middle = (change - 1) / next.length;
+                int[] was = next[i];
+                int start = SaveFile.readCount(in);
+                int end = SaveFile.readCount(in);
+                if (start + end > was.length || middle > in.remaining())
+                    throw new StreamCorruptedException("Checkpoint changes more than its section holds");
+                int[] now = new int[start + middle + end];
+                System.arraycopy(was, 0, now, 0, start);
+                for (int j = start; j < start + middle; j++) {
+                    now[j] = SaveFile.readCount(in);
+                }
+                System.arraycopy(was, was.length - end, now, start + middle, end);
+                next[i] = now;
+            }
+            return new Frame(nextSeat, first >>> 4, nextRandomState, nextCustomerRandomState, next);
+        }
+
+        /**
+         * Chooses how to write a random stream's new state: a seeded stream that drew a few numbers is
+         * written as how many, and any other change as the whole state
+         */
+        private static int move(long was, long now, boolean legacy) {
+            if (was == now) return STILL;
+            long steps = GameRandom.seededSteps(was, now);
+            return !legacy && steps > 0 && steps <= Integer.MAX_VALUE ? STEPPED : REPLACED;
+        }
+
+        private static void writeMove(SaveFile.Writer out, int move, long was, long now) {
+            if (move == STEPPED) {
+                out.count((int) GameRandom.seededSteps(was, now));
+            } else if (move == REPLACED) {
+                out.ensure(Long.BYTES);
+                out.buffer.putLong(now);
+            }
+        }
+
+        private static long readMove(ByteBuffer in, int move, long was) throws StreamCorruptedException {
+            return switch (move) {
+                case STILL -> was;
+                case STEPPED -> GameRandom.seededAdvance(was, SaveFile.readCount(in));
+                case REPLACED -> in.getLong();
+                default -> throw new StreamCorruptedException("Checkpoint has unknown random change " + move);
+            };
+        }
+    }
+}
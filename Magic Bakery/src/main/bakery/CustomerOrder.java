@@ -1,13 +1,17 @@
 package bakery;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
  * Represents a CustomerOrder
+ * <br/>
+ * The recipe and garnish are compiled into requirement vectors, split into layers and plain
+ * ingredients, so that fulfil and garnish checks are a few array lookups against a hand.
  * @author Ali Almuhtaseb
  * @version 1
  */
@@ -17,10 +21,14 @@ public class CustomerOrder implements Serializable {
     private final String name;
     private final List<Ingredient> recipe;
     private CustomerOrderStatus status;
+    private transient int garnishDucks;
+    private transient Plan plan;
 
     @Serial
     final private static long serialVersionUID = 1L;
 
+    private static final int DUCK = Ingredient.HELPFUL_DUCK.getOrdinal();
+
     /**
      * Constructor for CustomerOrder
      * <br/>
@@ -38,6 +46,21 @@ public class CustomerOrder implements Serializable {
         this.recipe = recipe;
         this.garnish = garnish;
         this.status = CustomerOrderStatus.WAITING;
+        this.plan = new Plan(recipe, garnish);
+    }
+
+    /**
+     * Copies a CustomerOrder, sharing its recipe, garnish and compiled plan
+     * @param other CustomerOrder to copy
+     */
+    CustomerOrder(CustomerOrder other) {
+        this.name = other.name;
+        this.level = other.level;
+        this.recipe = other.recipe;
+        this.garnish = other.garnish;
+        this.status = other.status;
+        this.garnishDucks = other.garnishDucks;
+        this.plan = other.plan;
     }
 
     /**
@@ -64,15 +87,18 @@ public class CustomerOrder implements Serializable {
      * @return {@code true} if ingredients include the recipe's required ingredients, {@code false} otherwise
      */
     public boolean canFulfill(List<Ingredient> ingredients) {
-        List<Ingredient> _recipe = new ArrayList<>(recipe);
-        for (Ingredient ingredient: ingredients) {
-            _recipe.remove(ingredient);
-        }
-        if (_recipe.isEmpty()) return true;
-        for (Ingredient _ingredient: _recipe) {
-            if (_ingredient instanceof Layer) return false;
-        }
-        return _recipe.size() <= Collections.frequency(ingredients, Ingredient.HELPFUL_DUCK);
+        return plan.recipeLayers.missing(ingredients) == 0
+                && plan.recipeIngredients.missing(ingredients) <= Requirement.count(ingredients, DUCK);
+    }
+
+    /**
+     * Checks if the player's hand contains the recipe ingredients
+     * @param player Player whose hand is checked
+     * @return {@code true} if the hand includes the recipe's required ingredients, {@code false} otherwise
+     */
+    public boolean canFulfill(Player player) {
+        return plan.recipeLayers.missing(player) == 0
+                && plan.recipeIngredients.missing(player) <= player.count(DUCK);
     }
 
     /**
@@ -81,50 +107,92 @@ public class CustomerOrder implements Serializable {
      * @return {@code true} if ingredients include the garnish's required ingredients, {@code false} otherwise
      */
     public boolean canGarnish(List<Ingredient> ingredients) {
-        List<Ingredient> _garnish = new ArrayList<>(garnish);
-        for (Ingredient ingredient: ingredients) {
-            _garnish.remove(ingredient);
-        }
-        if (_garnish.isEmpty()) return true;
-        for (Ingredient _ingredient: _garnish) {
-            if (_ingredient instanceof Layer) return false;
-        }
-        return _garnish.size() <= Collections.frequency(ingredients, Ingredient.HELPFUL_DUCK);
+        return plan.garnishLayers.missing(ingredients) == 0
+                && plan.garnishIngredients.missing(ingredients) <= Requirement.count(ingredients, DUCK);
+    }
+
+    /**
+     * Checks if the player's hand contains the garnish ingredients
+     * @param player Player whose hand is checked
+     * @return {@code true} if the hand includes the garnish's required ingredients, {@code false} otherwise
+     */
+    public boolean canGarnish(Player player) {
+        return plan.garnishLayers.missing(player) == 0
+                && plan.garnishIngredients.missing(player) <= player.count(DUCK);
+    }
+
+    /**
+     * Checks if the player's hand contains the recipe ingredients and, after the recipe has been
+     * taken from it, the garnish ingredients as well
+     * @param player Player whose hand is checked
+     * @return {@code true} if the order can be fulfilled with garnish, {@code false} otherwise
+     */
+    public boolean canFulfillWithGarnish(Player player) {
+        if (garnish.isEmpty() || !canFulfill(player)) return false;
+        int ducks = player.count(DUCK) - plan.recipeIngredients.missing(player);
+        return plan.garnishLayers.missing(player, plan.recipe) == 0
+                && plan.garnishIngredients.missing(player, plan.recipe) <= ducks;
     }
 
     /**
      * Fulfills the customer's order using the given ingredient list, with or without garnish
+     * <br/>
+     * The garnish is only used if it can still be made from what is left after the recipe
      * @param ingredients List of ingredients
      * @param garnish Flag to choose to fulfill with or without garnish
      * @return List of ingredients used to fulfill the order
      */
     public List<Ingredient> fulfill(List<Ingredient> ingredients, boolean garnish) {
-        List<Ingredient> ingredientList = new ArrayList<>(ingredients);
-        List<Ingredient> used = new ArrayList<>();
+        int ducks = Requirement.count(ingredients, DUCK);
+        int[] recipeLeft = new int[plan.recipe.distinct()];
+        for (int i = 0; i < recipeLeft.length; i++) {
+            recipeLeft[i] = Requirement.count(ingredients, plan.recipe.ordinal(i));
+        }
+        List<Ingredient> used = new ArrayList<>(recipe.size() + this.garnish.size());
         for (Ingredient ingredient: recipe) {
-            if (!ingredientList.remove(ingredient)) {
-                if (ingredient instanceof Layer)
-                    throw new WrongIngredientsException("Missing layer ingredient");
-                if (!ingredientList.remove(Ingredient.HELPFUL_DUCK)) {
-                    throw new WrongIngredientsException("Missing ingredient");
-                }
+            int index = plan.recipe.indexOf(ingredient.getOrdinal());
+            if (recipeLeft[index] > 0) {
+                recipeLeft[index]--;
+                used.add(ingredient);
+            } else if (ingredient instanceof Layer) {
+                throw new WrongIngredientsException("Missing layer ingredient");
+            } else if (ducks > 0) {
+                ducks--;
                 used.add(Ingredient.HELPFUL_DUCK);
             } else {
-                used.add(ingredient);
+                throw new WrongIngredientsException("Missing ingredient");
             }
         }
         status = CustomerOrderStatus.FULFILLED;
 
-        if (!garnish || this.garnish.isEmpty() || !canGarnish(ingredientList)) {
+        if (!garnish || this.garnish.isEmpty()) {
             return used;
         }
+        int[] garnishLeft = new int[plan.garnish.distinct()];
+        int garnishMissing = 0;
+        for (int i = 0; i < garnishLeft.length; i++) {
+            int ordinal = plan.garnish.ordinal(i);
+            int recipeIndex = plan.recipe.indexOf(ordinal);
+            garnishLeft[i] = recipeIndex < 0 ? Requirement.count(ingredients, ordinal) : recipeLeft[recipeIndex];
+            int missing = Math.max(0, plan.garnish.amount(i) - garnishLeft[i]);
+            if (missing > 0 && plan.garnishLayers.amountOf(ordinal) > 0) {
+                return used;
+            }
+            garnishMissing += missing;
+        }
+        if (garnishMissing > ducks) {
+            return used;
+        }
+        garnishDucks = 0;
         for (Ingredient ingredient: this.garnish) {
-            if (!ingredientList.remove(ingredient)) {
-                ingredientList.remove(Ingredient.HELPFUL_DUCK);
-                used.add(Ingredient.HELPFUL_DUCK);
-            } else {
+            int index = plan.garnish.indexOf(ingredient.getOrdinal());
+            if (garnishLeft[index] > 0) {
+                garnishLeft[index]--;
                 used.add(ingredient);
-            };
+            } else {
+                used.add(Ingredient.HELPFUL_DUCK);
+                garnishDucks++;
+            }
         }
         status = CustomerOrderStatus.GARNISHED;
         return used;
@@ -178,6 +246,16 @@ public class CustomerOrder implements Serializable {
         return status;
     }
 
+    /**
+     * Gets how many helpful ducks stood in for garnish ingredients when the order was garnished
+     * <br/>
+     * Only meaningful while the status is GARNISHED, and not kept by saved games
+     * @return Number of helpful ducks used for the garnish
+     */
+    public int getGarnishDucks() {
+        return garnishDucks;
+    }
+
     /**
      * Sets the CustomerOrder status
      * @param status The status to set
@@ -193,4 +271,39 @@ public class CustomerOrder implements Serializable {
     public String toString() {
         return name;
     }
+
+    @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        plan = new Plan(recipe, garnish);
+    }
+
+    /**
+     * Recipe and garnish compiled into requirement vectors, split by layers and plain ingredients
+     */
+    private static final class Plan {
+        private final Requirement recipe;
+        private final Requirement recipeLayers;
+        private final Requirement recipeIngredients;
+        private final Requirement garnish;
+        private final Requirement garnishLayers;
+        private final Requirement garnishIngredients;
+
+        private Plan(List<Ingredient> recipe, List<Ingredient> garnish) {
+            this.recipe = new Requirement(recipe);
+            this.recipeLayers = new Requirement(layers(recipe, true));
+            this.recipeIngredients = new Requirement(layers(recipe, false));
+            this.garnish = new Requirement(garnish);
+            this.garnishLayers = new Requirement(layers(garnish, true));
+            this.garnishIngredients = new Requirement(layers(garnish, false));
+        }
+
+        private static List<Ingredient> layers(List<Ingredient> cards, boolean layers) {
+            List<Ingredient> matching = new ArrayList<>();
+            for (Ingredient card: cards) {
+                if ((card instanceof Layer) == layers) matching.add(card);
+            }
+            return matching;
+        }
+    }
 }
@@ -5,10 +5,9 @@ import java.io.Serial;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.EmptyStackException;
 import java.util.List;
-import java.util.Random;
+import java.util.random.RandomGenerator;
 import java.util.stream.Collectors;
 
 import util.CardUtils;
@@ -24,7 +23,7 @@ public class Customers implements Serializable {
     private final Collection<CustomerOrder> activeCustomers;
     private Collection<CustomerOrder> customerDeck;
     private final List<CustomerOrder> inactiveCustomers;
-    private final Random random;
+    private transient int version;
 
     @Serial
     final private static long serialVersionUID = 1L;
@@ -32,27 +31,68 @@ public class Customers implements Serializable {
     /**
      * Constructor for Customers
      * @param deckFile Path to customer order cards file
-     * @param random Same random object initialised in MagicBakery
+     * @param random Random generator to shuffle the customer deck with
      * @param layers List of layers
      * @param numPlayers Number of players
      * @throws FileNotFoundException If deck file is not found
      */
-    public Customers(String deckFile, Random random, Collection<Layer> layers, int numPlayers) throws FileNotFoundException {
-        this.random = random;
+    public Customers(String deckFile, RandomGenerator random, Collection<Layer> layers, int numPlayers) throws FileNotFoundException {
+        this(CardUtils.readCustomerFile(deckFile, layers), random, numPlayers);
+    }
+
+    /**
+     * Constructor for Customers from customer orders that have already been read
+     * @param customerOrders Customer orders to build the deck from, shuffled in place
+     * @param random Random generator to shuffle the customer deck with
+     * @param numPlayers Number of players
+     */
+    public Customers(List<CustomerOrder> customerOrders, RandomGenerator random, int numPlayers) {
         inactiveCustomers = new ArrayList<>();
-        initialiseCustomerDeck(deckFile, layers, numPlayers);
+        initialiseCustomerDeck(customerOrders, random, numPlayers);
         activeCustomers = new ArrayList<>();
         activeCustomers.add(null);
         activeCustomers.add(null);
         activeCustomers.add(null);
     }
 
+    /**
+     * Copies Customers, including every order, so that the copy can be played independently
+     * @param other Customers to copy
+     */
+    Customers(Customers other) {
+        activeCustomers = copyOrders(other.activeCustomers);
+        customerDeck = copyOrders(other.customerDeck);
+        inactiveCustomers = copyOrders(other.inactiveCustomers);
+        version = other.version;
+    }
+
+    /**
+     * Builds Customers in a given state
+     * @param activeCustomers The three slots of the active row, {@code null} where a slot is empty
+     * @param customerDeck Customer deck, with the next customer last
+     * @param inactiveCustomers Customers who were served or gave up, in the order they left
+     */
+    Customers(List<CustomerOrder> activeCustomers, List<CustomerOrder> customerDeck, List<CustomerOrder> inactiveCustomers) {
+        this.activeCustomers = new ArrayList<>(activeCustomers);
+        this.customerDeck = new ArrayList<>(customerDeck);
+        this.inactiveCustomers = new ArrayList<>(inactiveCustomers);
+    }
+
+    private static ArrayList<CustomerOrder> copyOrders(Collection<CustomerOrder> customerOrders) {
+        ArrayList<CustomerOrder> copies = new ArrayList<>(customerOrders.size());
+        for (CustomerOrder customerOrder: customerOrders) {
+            copies.add(customerOrder == null ? null : new CustomerOrder(customerOrder));
+        }
+        return copies;
+    }
+
     /**
      * Adds a new customer order to activeCustomers, drawn from customerDeck
      * @return Customer that left the shop
      */
     public CustomerOrder addCustomerOrder() {
         CustomerOrder customerOrder = timePasses();
+        version++;
         CustomerOrder newOrder = drawCustomer();
         if (newOrder != null) {
             ((ArrayList<CustomerOrder>) activeCustomers).set(0, newOrder);
@@ -118,6 +158,74 @@ public class Customers implements Serializable {
         return customers;
     }
 
+    /**
+     * Gets a counter that changes every time a customer joins, moves along or leaves the active row
+     * @return Customer row version
+     */
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * Reorders the customer deck
+     * @param random Random generator to shuffle the deck with
+     */
+    void shuffleDeck(RandomGenerator random) {
+        GameRandom.shuffle((ArrayList<CustomerOrder>) customerDeck, random);
+    }
+
+    /**
+     * Captures everything that serving a customer or letting time pass can change
+     * @return Snapshot to pass to {@link #restore(Snapshot)}
+     */
+    Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Puts the active row, the top of the deck and the inactive customers back as they were in a snapshot
+     * <br/>
+     * Assumes that at most the top order of the deck has been drawn since the snapshot was taken
+     * @param snapshot Snapshot taken earlier
+     */
+    void restore(Snapshot snapshot) {
+        List<CustomerOrder> active = (ArrayList<CustomerOrder>) activeCustomers;
+        for (int slot = 0; slot < 3; slot++) {
+            active.set(slot, snapshot.active[slot]);
+            if (snapshot.active[slot] != null) snapshot.active[slot].setStatus(snapshot.statuses[slot]);
+        }
+        if (customerDeck.size() < snapshot.deckSize) {
+            customerDeck.add(snapshot.deckTop);
+        }
+        if (snapshot.deckTop != null) snapshot.deckTop.setStatus(snapshot.deckTopStatus);
+        inactiveCustomers.subList(snapshot.inactiveSize, inactiveCustomers.size()).clear();
+        version++;
+    }
+
+    /**
+     * State of the active row and its surroundings at one point in time
+     */
+    static final class Snapshot {
+        private final CustomerOrder[] active = new CustomerOrder[3];
+        private final CustomerOrder.CustomerOrderStatus[] statuses = new CustomerOrder.CustomerOrderStatus[3];
+        private final CustomerOrder deckTop;
+        private final CustomerOrder.CustomerOrderStatus deckTopStatus;
+        private final int deckSize;
+        private final int inactiveSize;
+
+        private Snapshot(Customers customers) {
+            List<CustomerOrder> _active = (ArrayList<CustomerOrder>) customers.activeCustomers;
+            for (int slot = 0; slot < 3; slot++) {
+                active[slot] = _active.get(slot);
+                if (active[slot] != null) statuses[slot] = active[slot].getStatus();
+            }
+            deckSize = customers.customerDeck.size();
+            deckTop = deckSize == 0 ? null : ((ArrayList<CustomerOrder>) customers.customerDeck).get(deckSize - 1);
+            deckTopStatus = deckTop == null ? null : deckTop.getStatus();
+            inactiveSize = customers.inactiveCustomers.size();
+        }
+    }
+
     /**
      * Returns the inactiveCustomers whose status matches the specified CustomerOrderStatus
      * @param status Status to filter inactiveCustomers by
@@ -127,10 +235,30 @@ public class Customers implements Serializable {
         return inactiveCustomers.stream().filter(customerOrder -> customerOrder.getStatus() == status).collect(Collectors.toCollection(ArrayList::new));
     }
 
-    private void initialiseCustomerDeck(String deckFile, Collection<Layer> layers, int numPlayers) throws FileNotFoundException {
+    /**
+     * Counts the inactiveCustomers whose status matches the specified CustomerOrderStatus
+     * @param status Status to count
+     * @return Number of inactiveCustomers with the given status
+     */
+    public int countInactiveCustomersWithStatus(CustomerOrder.CustomerOrderStatus status) {
+        int count = 0;
+        for (CustomerOrder customerOrder: inactiveCustomers) {
+            if (customerOrder.getStatus() == status) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the customers who were served or gave up
+     * @return Inactive customers in the order they left, which must not be modified
+     */
+    List<CustomerOrder> getInactiveCustomers() {
+        return inactiveCustomers;
+    }
+
+    private void initialiseCustomerDeck(List<CustomerOrder> customerOrders, RandomGenerator random, int numPlayers) {
         customerDeck = new ArrayList<>();
-        List<CustomerOrder> customerOrders = CardUtils.readCustomerFile(deckFile, layers);
-        Collections.shuffle(customerOrders, random);
+        GameRandom.shuffle(customerOrders, random);
         List<CustomerOrder> levelOne = customerOrders.stream().filter(customerOrder -> customerOrder.getLevel() == 1).collect(Collectors.toCollection(ArrayList::new));
         List<CustomerOrder> levelTwo = customerOrders.stream().filter(customerOrder -> customerOrder.getLevel() == 2).collect(Collectors.toCollection(ArrayList::new));
         List<CustomerOrder> levelThree = customerOrders.stream().filter(customerOrder -> customerOrder.getLevel() == 3).collect(Collectors.toCollection(ArrayList::new));
@@ -146,7 +274,7 @@ public class Customers implements Serializable {
             customerDeck.addAll(levelTwo.subList(0, 1));
             customerDeck.addAll(levelThree.subList(0, 6));
         }
-        Collections.shuffle((ArrayList<CustomerOrder>)customerDeck, random);
+        GameRandom.shuffle((ArrayList<CustomerOrder>)customerDeck, random);
     }
 
     /**
@@ -173,6 +301,7 @@ public class Customers implements Serializable {
         int index = ((ArrayList<CustomerOrder>) activeCustomers).indexOf(customer);
         ((ArrayList<CustomerOrder>) activeCustomers).set(index, null);
         inactiveCustomers.add(customer);
+        version++;
     }
 
     /**
@@ -207,6 +336,7 @@ public class Customers implements Serializable {
      * @return Customer that left the shop
      */
     public CustomerOrder timePasses() {
+        version++;
         boolean deckCustomer = !getCustomerDeck().isEmpty();
 
         CustomerOrder firstCustomer = ((ArrayList<CustomerOrder>) activeCustomers).get(0);
@@ -0,0 +1,223 @@
+package bakery;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exact odds of drawing cards from the pantry deck, worked out from the cards left in it
+ * <br/>
+ * The odds are those of the composition of the deck and discard pile when the odds were made by
+ * {@link MagicBakery#getDrawOdds()}. Draws beyond the end of the deck come from the discard pile,
+ * reshuffled as {@link MagicBakery} does, assuming no card is discarded before then. Each answer is
+ * kept in a table per multiset of cards, so asking again costs a lookup. Not safe for use by several
+ * threads at once.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public final class DrawOdds {
+    private static final int KEY_BITS = 4;
+    private static volatile double[][] binomials = new double[1][];
+
+    static {
+        binomials[0] = new double[] {1};
+    }
+
+    private final int[] deck;
+    private final int[] discard;
+    private final int deckSize;
+    private final int discardSize;
+    private final Map<Long, double[]> tables = new HashMap<>();
+
+    /**
+     * Initialises the odds of a deck and discard pile
+     * @param deck Copies of each card in the deck, by ordinal
+     * @param discard Copies of each card in the discard pile, by ordinal
+     */
+    DrawOdds(int[] deck, int[] discard) {
+        this.deck = deck.clone();
+        this.discard = discard.clone();
+        deckSize = Arrays.stream(deck).sum();
+        discardSize = Arrays.stream(discard).sum();
+    }
+
+    /**
+     * Gets the probability of drawing every card of a multiset within a number of draws
+     * @param cards Cards to draw, with a card listed twice needing two copies
+     * @param draws Number of cards drawn, past the deck and discard pile counting as all of them
+     * @return Probability of drawing at least as many copies of each card as listed
+     * @throws IllegalArgumentException If the number of draws is negative
+     */
+    public double probability(List<Ingredient> cards, int draws) {
+        if (draws < 0)
+            throw new IllegalArgumentException("Can't draw " + draws + " cards");
+        int[] needed = new int[deck.length];
+        for (Ingredient card: cards) {
+            int ordinal = card.getOrdinal();
+            if (ordinal >= needed.length) return 0;
+            needed[ordinal]++;
+        }
+        draws = Math.min(draws, deckSize + discardSize);
+        long key = key(needed);
+        if (key < 0) return compute(needed, draws);
+        double[] table = tables.get(key);
+        if (table == null) {
+            table = new double[deckSize + discardSize + 1];
+            Arrays.fill(table, Double.NaN);
+            tables.put(key, table);
+        }
+        if (Double.isNaN(table[draws])) {
+            table[draws] = compute(needed, draws);
+        }
+        return table[draws];
+    }
+
+    /**
+     * Gets the probability that the next card drawn is a given card
+     * @param card Card to draw
+     * @return Probability of drawing the card next
+     */
+    public double probabilityOfNext(Ingredient card) {
+        return probability(List.of(card), 1);
+    }
+
+    /**
+     * Gets the probability that refreshing the pantry draws every card of a multiset
+     * @param cards Cards to draw, with a card listed twice needing two copies
+     * @return Probability of drawing at least as many copies of each card as listed
+     * @see MagicBakery#refreshPantry()
+     */
+    public double probabilityOnRefresh(List<Ingredient> cards) {
+        return probability(cards, getRefreshDraws());
+    }
+
+    /**
+     * Gets the number of cards refreshing the pantry draws, which is fewer than five when the deck is
+     * nearly empty
+     * @return Number of cards drawn by {@link MagicBakery#refreshPantry()}
+     */
+    public int getRefreshDraws() {
+        int draws = 0;
+        while (draws < Math.min(5, deckSize - draws)) {
+            draws++;
+        }
+        return draws;
+    }
+
+    /**
+     * Counts the copies of a card in the deck
+     * @param card Card to count
+     * @return Number of copies in the deck
+     */
+    public int getDeckCount(Ingredient card) {
+        return card.getOrdinal() < deck.length ? deck[card.getOrdinal()] : 0;
+    }
+
+    /**
+     * Counts the copies of a card in the discard pile
+     * @param card Card to count
+     * @return Number of copies in the discard pile
+     */
+    public int getDiscardCount(Ingredient card) {
+        return card.getOrdinal() < discard.length ? discard[card.getOrdinal()] : 0;
+    }
+
+    /**
+     * Gets the number of cards in the deck
+     * @return Size of the deck
+     */
+    public int getDeckSize() {
+        return deckSize;
+    }
+
+    /**
+     * Gets the number of cards in the discard pile
+     * @return Size of the discard pile
+     */
+    public int getDiscardSize() {
+        return discardSize;
+    }
+
+    private double compute(int[] needed, int draws) {
+        if (draws <= deckSize) {
+            return hypergeometric(deck, deckSize, needed, draws);
+        }
+        // The whole deck is drawn, and the rest comes from the reshuffled discard pile
+        int[] rest = new int[needed.length];
+        for (int ordinal = 0; ordinal < needed.length; ordinal++) {
+            rest[ordinal] = Math.max(0, needed[ordinal] - deck[ordinal]);
+        }
+        return hypergeometric(discard, discardSize, rest, draws - deckSize);
+    }
+
+    /**
+     * Gets the probability that drawing from a pile without replacement gets at least the needed copies
+     * of each card, summing the multivariate hypergeometric distribution over every way to do so
+     */
+    private static double hypergeometric(int[] pile, int size, int[] needed, int draws) {
+        // ways[t] is the number of ways to draw t cards of the needed kinds, enough of each
+        double[] ways = new double[draws + 1];
+        ways[0] = 1;
+        int others = size;
+        for (int ordinal = 0; ordinal < needed.length; ordinal++) {
+            if (needed[ordinal] == 0) continue;
+            int copies = pile[ordinal];
+            if (copies < needed[ordinal]) return 0;
+            others -= copies;
+            double[] next = new double[draws + 1];
+            for (int drawn = 0; drawn <= draws; drawn++) {
+                if (ways[drawn] == 0) continue;
+                for (int j = needed[ordinal]; j <= copies && drawn + j <= draws; j++) {
+                    next[drawn + j] += ways[drawn] * choose(copies, j);
+                }
+            }
+            ways = next;
+        }
+        double favourable = 0;
+        for (int drawn = 0; drawn <= draws; drawn++) {
+            favourable += ways[drawn] * choose(others, draws - drawn);
+        }
+        return Math.min(1, favourable / choose(size, draws));
+    }
+
+    /**
+     * Gets a binomial coefficient from Pascal's triangle, growing the triangle the first time it is too small
+     */
+    private static double choose(int n, int k) {
+        if (k < 0 || k > n) return 0;
+        double[][] rows = binomials;
+        if (n >= rows.length) {
+            rows = grow(n);
+        }
+        return rows[n][k];
+    }
+
+    private static synchronized double[][] grow(int n) {
+        double[][] rows = binomials;
+        if (n < rows.length) return rows;
+        rows = Arrays.copyOf(rows, Math.max(n + 1, rows.length * 2));
+        for (int row = binomials.length; row < rows.length; row++) {
+            rows[row] = new double[row + 1];
+            rows[row][0] = rows[row][row] = 1;
+            for (int k = 1; k < row; k++) {
+                rows[row][k] = rows[row - 1][k - 1] + rows[row - 1][k];
+            }
+        }
+        binomials = rows;
+        return rows;
+    }
+
+    /**
+     * Packs the needed copies of each card into a key, or returns -1 if they don't fit
+     */
+    private static long key(int[] needed) {
+        long key = 0;
+        for (int ordinal = 0; ordinal < needed.length; ordinal++) {
+            if (needed[ordinal] == 0) continue;
+            if (ordinal >= Long.SIZE / KEY_BITS || needed[ordinal] >= 1 << KEY_BITS) return -1;
+            key |= (long) needed[ordinal] << ordinal * KEY_BITS;
+        }
+        return key;
+    }
+}
@@ -0,0 +1,439 @@
+package bakery;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import bakery.CustomerOrder.CustomerOrderStatus;
+
+/**
+ * Archive of many finished games in one file, read through a memory map
+ * <br/>
+ * An archive is written by {@link ArchiveWriter}. It starts with the magic number {@code MBKA}, the
+ * format version and flags, followed by one record per game: the player names and the moves played,
+ * as variable-length numbers. After the records comes the index, a fixed 32-byte entry per game:
+ * <ul>
+ *     <li>where the game's record starts and the seed the game was made with</li>
+ *     <li>a CRC-32 of the record and the number of moves</li>
+ *     <li>the customers fulfilled, garnished and gone to Greggs, and the number of players</li>
+ * </ul>
+ * Then come the names of the cards that moves refer to. Since version 2 they are followed by columns
+ * of the turns played and the ducks used as garnish in each game, then the secondary indexes queried
+ * by {@link ArchiveQuery}: the games by customer and status, by number of players and by number of
+ * happy customers, each as a list of game numbers stored as gaps, and the game numbers sorted by
+ * seed. Last is a trailer with where the index starts, the number of games, a CRC-32 of everything
+ * after the records, and the magic number again. Reading maps the whole file, so fetching a game only
+ * reads its own record and index entry, and the outcomes of every game are scanned straight from the
+ * index without reading any record.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public final class GameArchive {
+    /**
+     * Current version of the format, written into every archive
+     */
+    public static final int VERSION = 2;
+
+    static final int MAGIC = 0x4D424B41;
+    static final int HEADER_BYTES = 8;
+    static final int ENTRY_BYTES = 32;
+    static final int OFFSET = 0;
+    static final int SEED = 8;
+    static final int CRC = 16;
+    static final int MOVES = 20;
+    static final int FULFILLED = 24;
+    static final int GARNISHED = 26;
+    static final int GIVEN_UP = 28;
+    static final int PLAYERS = 30;
+    static final int TRAILER_BYTES = 20;
+
+    static final int BY_CUSTOMER = 0;
+    static final int BY_PLAYERS = 1;
+    static final int BY_HAPPY = 2;
+
+    private static final CustomerOrderStatus[] STATUSES = CustomerOrderStatus.values();
+
+    private final ByteBuffer map;
+    private final int games;
+    private final int index;
+    private final int[] ordinals;
+    private final Indexes indexes;
+
+    private GameArchive(ByteBuffer map, int games, int index, int[] ordinals, Indexes indexes) {
+        this.map = map;
+        this.games = games;
+        this.index = index;
+        this.ordinals = ordinals;
+        this.indexes = indexes;
+    }
+
+    /**
+     * Opens an archive, mapping the whole file into memory
+     * @param file Archive written by {@link ArchiveWriter}
+     * @return Archive of the file
+     * @throws IOException If the file can't be read, is larger than 2 GB, or its index is damaged
+     */
+    public static GameArchive open(File file) throws IOException {
+        MappedByteBuffer map;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("Archive is larger than 2 GB");
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        int size = map.capacity();
+        if (size < HEADER_BYTES + TRAILER_BYTES || map.getInt(0) != MAGIC || map.getInt(size - Integer.BYTES) != MAGIC)
+            throw new StreamCorruptedException("Not a finished archive");
+        int version = map.getShort(Integer.BYTES);
+        if (version > VERSION)
+            throw new IOException("Archive is version " + version + ", this game reads up to version " + VERSION);
+        int flags = map.getShort(Integer.BYTES + Short.BYTES);
+        if (flags != 0)
+            throw new IOException("Archive uses features this game doesn't know: " + Integer.toHexString(flags));
+
+        int trailer = size - TRAILER_BYTES;
+        long index = map.getLong(trailer);
+        int games = map.getInt(trailer + Long.BYTES);
+        if (index < HEADER_BYTES || games < 0 || index + (long) games * ENTRY_BYTES > trailer)
+            throw new StreamCorruptedException("Archive index is damaged");
+        ByteBuffer footer = map.slice((int) index, trailer - (int) index);
+        CRC32 crc = new CRC32();
+        crc.update(footer.duplicate());
+        if ((int) crc.getValue() != map.getInt(trailer + Long.BYTES + Integer.BYTES))
+            throw new StreamCorruptedException("Archive index is damaged: checksum doesn't match");
+
+        // Card ordinals of the run that wrote the archive, mapped to this run's
+        ByteBuffer names = footer.position(games * ENTRY_BYTES);
+        int[] ordinals;
+        Indexes indexes = null;
+        try {
+            ordinals = new int[SaveFile.readCount(names)];
+            for (int ordinal = 0; ordinal < ordinals.length; ordinal++) {
+                Ingredient card = CardCatalog.lookup(readString(names));
+                ordinals[ordinal] = card == null ? -1 : card.getOrdinal();
+            }
+            if (version >= 2) {
+                indexes = new Indexes(footer, (int) index, games);
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new StreamCorruptedException("Archive card names or indexes are truncated");
+        }
+        return new GameArchive(map, games, (int) index, ordinals, indexes);
+    }
+
+    /**
+     * Gets the number of games in the archive
+     * @return Number of games
+     */
+    public int size() {
+        return games;
+    }
+
+    /**
+     * Gets the seed a game was made with
+     * @param game Number of the game, from 0
+     * @return Seed passed to {@link MagicBakery#MagicBakery(long, CardSet)}
+     */
+    public long getSeed(int game) {
+        return map.getLong(entry(game) + SEED);
+    }
+
+    /**
+     * Gets the number of moves played in a game
+     * @param game Number of the game, from 0
+     * @return Number of moves
+     */
+    public int getMoveCount(int game) {
+        return map.getInt(entry(game) + MOVES);
+    }
+
+    /**
+     * Gets the number of players of a game
+     * @param game Number of the game, from 0
+     * @return Number of players
+     */
+    public int getPlayerCount(int game) {
+        return map.getShort(entry(game) + PLAYERS);
+    }
+
+    /**
+     * Gets the number of orders a game fulfilled without garnish
+     * @param game Number of the game, from 0
+     * @return Number of fulfilled orders
+     */
+    public int getFulfilled(int game) {
+        return map.getShort(entry(game) + FULFILLED);
+    }
+
+    /**
+     * Gets the number of orders a game fulfilled with garnish
+     * @param game Number of the game, from 0
+     * @return Number of garnished orders
+     */
+    public int getGarnished(int game) {
+        return map.getShort(entry(game) + GARNISHED);
+    }
+
+    /**
+     * Gets the number of customers who gave up and went to Greggs in a game
+     * @param game Number of the game, from 0
+     * @return Number of customers who gave up
+     */
+    public int getGivenUp(int game) {
+        return map.getShort(entry(game) + GIVEN_UP);
+    }
+
+    /**
+     * Checks whether the archive has the columns and secondary indexes added in version 2
+     * @return True if the archive can be queried by {@link ArchiveQuery}
+     */
+    public boolean hasIndexes() {
+        return indexes != null;
+    }
+
+    /**
+     * Gets the number of turns played in a game
+     * @param game Number of the game, from 0
+     * @return Number of turns
+     * @throws IllegalStateException If the archive has no indexes
+     */
+    public int getTurns(int game) {
+        entry(game);
+        return map.getShort(indexes().turns + game * Short.BYTES);
+    }
+
+    /**
+     * Gets the number of ducks used as garnish in the garnished orders of a game
+     * @param game Number of the game, from 0
+     * @return Number of ducks
+     * @throws IllegalStateException If the archive has no indexes
+     */
+    public int getGarnishDucks(int game) {
+        entry(game);
+        return map.getShort(indexes().garnishDucks + game * Short.BYTES);
+    }
+
+    /**
+     * Gets the player names of a game
+     * @param game Number of the game, from 0
+     * @return Player names by seat
+     * @throws StreamCorruptedException If the game's record is damaged
+     */
+    public List<String> getPlayers(int game) throws StreamCorruptedException {
+        ByteBuffer in = record(game);
+        List<String> players = new ArrayList<>();
+        try {
+            for (int i = getPlayerCount(game); i > 0; i--) {
+                players.add(readString(in));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new StreamCorruptedException("Archived game " + game + " is truncated");
+        }
+        return players;
+    }
+
+    /**
+     * Gets the moves played in a game, in order
+     * @param game Number of the game, from 0
+     * @return Moves with this run's canonical cards
+     * @throws StreamCorruptedException If the game's record is damaged or refers to a card that isn't loaded
+     */
+    public List<Move> getMoves(int game) throws StreamCorruptedException {
+        ByteBuffer in = record(game);
+        int count = getMoveCount(game);
+        List<Move> moves = new ArrayList<>(count);
+        try {
+            for (int i = getPlayerCount(game); i > 0; i--) {
+                int length = SaveFile.readCount(in);
+                in.position(in.position() + length);
+            }
+            for (int i = 0; i < count; i++) {
+                moves.add(Move.decode(code(SaveFile.readCount(in))));
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new StreamCorruptedException("Archived game " + game + " is truncated");
+        }
+        return moves;
+    }
+
+    /**
+     * Plays a game again from its seed, ending each turn when the player has no actions left
+     * @param game Number of the game, from 0
+     * @param cards Cards the game was played with
+     * @return Game after its last move, with the undo history of the replay
+     * @throws StreamCorruptedException If the game's record is damaged
+     */
+    public MagicBakery replay(int game, CardSet cards) throws StreamCorruptedException {
+        MagicBakery bakery = new MagicBakery(getSeed(game), cards);
+        bakery.startGame(getPlayers(game));
+        boolean over = false;
+        for (Move move: getMoves(game)) {
+            if (over)
+                throw new StreamCorruptedException("Archived game " + game + " has moves after the game ended");
+            bakery.apply(move);
+            if (bakery.getActionsRemaining() == 0) over = bakery.endTurn();
+        }
+        return bakery;
+    }
+
+    /**
+     * Gets the games of a secondary index with a key, in increasing order
+     * @param section One of {@link #BY_CUSTOMER}, {@link #BY_PLAYERS} and {@link #BY_HAPPY}
+     * @param key Customer number and status from {@link #customerKey}, number of players, or number of happy customers
+     * @return Game numbers, empty if no game has the key
+     */
+    int[] postings(int section, int key) {
+        int[] list = indexes().sections.get(section).get(key);
+        if (list == null) return new int[0];
+        ByteBuffer in = map.slice(list[0], list[2]);
+        int[] found = new int[list[1]];
+        int game = -1;
+        try {
+            for (int i = 0; i < found.length; i++) {
+                game += SaveFile.readCount(in);
+                found[i] = game;
+            }
+        } catch (StreamCorruptedException | BufferUnderflowException e) {
+            throw new IllegalStateException("Archive index of games is damaged", e);
+        }
+        return found;
+    }
+
+    /**
+     * Gets the key of a customer and status in the customer index
+     * @param name Customer name
+     * @param status Status of the customer when the game ended
+     * @return Key for {@link #postings}, or -1 if no archived game had the customer
+     */
+    int customerKey(String name, CustomerOrderStatus status) {
+        Integer id = indexes().customers.get(name);
+        return id == null ? -1 : id * STATUSES.length + status.ordinal();
+    }
+
+    /**
+     * Gets the games made with a seed, by binary search over the games sorted by seed
+     * @param seed Seed passed to {@link MagicBakery#MagicBakery(long, CardSet)}
+     * @return Game numbers in increasing order, empty if no game has the seed
+     */
+    int[] gamesWithSeed(long seed) {
+        int bySeed = indexes().bySeed;
+        int low = 0;
+        int high = games;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getSeed(map.getInt(bySeed + middle * Integer.BYTES)) < seed) low = middle + 1;
+            else high = middle;
+        }
+        int end = low;
+        while (end < games && getSeed(map.getInt(bySeed + end * Integer.BYTES)) == seed) end++;
+        int[] found = new int[end - low];
+        for (int i = 0; i < found.length; i++) {
+            found[i] = map.getInt(bySeed + (low + i) * Integer.BYTES);
+        }
+        Arrays.sort(found);
+        return found;
+    }
+
+    private Indexes indexes() {
+        if (indexes == null)
+            throw new IllegalStateException("Archive is version 1 and has no indexes");
+        return indexes;
+    }
+
+    private int entry(int game) {
+        if (game < 0 || game >= games)
+            throw new IndexOutOfBoundsException(game);
+        return index + game * ENTRY_BYTES;
+    }
+
+    /**
+     * Gets a view of a game's record, after checking its CRC-32
+     */
+    private ByteBuffer record(int game) throws StreamCorruptedException {
+        int entry = entry(game);
+        long start = map.getLong(entry + OFFSET);
+        long end = game + 1 < games ? map.getLong(entry + ENTRY_BYTES + OFFSET) : index;
+        if (start < HEADER_BYTES || start > end || end > index)
+            throw new StreamCorruptedException("Archived game " + game + " is out of place");
+        ByteBuffer record = map.slice((int) start, (int) (end - start));
+        CRC32 crc = new CRC32();
+        crc.update(record.duplicate());
+        if ((int) crc.getValue() != map.getInt(entry + CRC))
+            throw new StreamCorruptedException("Archived game " + game + " is damaged: checksum doesn't match");
+        return record;
+    }
+
+    /**
+     * Maps the card of a move code from the ordinals of the run that wrote the archive to this run's
+     */
+    private int code(int code) throws StreamCorruptedException {
+        int card = (code >>> 8) - 1;
+        if (card < 0) return code;
+        if (card >= ordinals.length || ordinals[card] < 0)
+            throw new StreamCorruptedException("Archive refers to unknown card " + card);
+        return code & 0xFF | (ordinals[card] + 1) << 8;
+    }
+
+    /**
+     * Where the columns and secondary indexes of a version 2 archive are in the map
+     */
+    private static final class Indexes {
+        private final int turns;
+        private final int garnishDucks;
+        private final Map<String, Integer> customers = new HashMap<>();
+        private final List<Map<Integer, int[]>> sections = new ArrayList<>();
+        private final int bySeed;
+
+        /**
+         * Reads the customer names and the position, size and length of every game list
+         * @param footer Footer after the card names
+         * @param start Where the footer starts in the map
+         * @param games Number of games
+         */
+        private Indexes(ByteBuffer footer, int start, int games) throws StreamCorruptedException {
+            turns = start + footer.position();
+            garnishDucks = turns + games * Short.BYTES;
+            footer.position(footer.position() + 2 * games * Short.BYTES);
+            for (int id = SaveFile.readCount(footer); id > 0; id--) {
+                customers.put(readString(footer), customers.size());
+            }
+            for (int section = BY_CUSTOMER; section <= BY_HAPPY; section++) {
+                Map<Integer, int[]> lists = new HashMap<>();
+                for (int list = SaveFile.readCount(footer); list > 0; list--) {
+                    int key = SaveFile.readCount(footer);
+                    int size = SaveFile.readCount(footer);
+                    int length = SaveFile.readCount(footer);
+                    if (size < 0 || length < 0 || length > footer.remaining())
+                        throw new StreamCorruptedException("Archive index of games is truncated");
+                    lists.put(key, new int[] {start + footer.position(), size, length});
+                    footer.position(footer.position() + length);
+                }
+                sections.add(lists);
+            }
+            bySeed = start + footer.position();
+            if (footer.remaining() != games * Integer.BYTES)
+                throw new StreamCorruptedException("Archive index of seeds is truncated");
+        }
+    }
+
+    private static String readString(ByteBuffer in) throws StreamCorruptedException {
+        int length = SaveFile.readCount(in);
+        if (length < 0 || length > in.remaining())
+            throw new StreamCorruptedException("Archive is truncated");
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,243 @@
+package bakery;
+
+import java.io.Serial;
+import java.util.List;
+import java.util.Random;
+import java.util.random.RandomGenerator;
+
+/**
+ * Random number stream used for shuffling, whose state can be read, restored and copied
+ * <br/>
+ * Subclasses keep their state in a plain long instead of the {@code AtomicLong} of {@link Random},
+ * so drawing never needs a compare-and-set. Each game owns its streams, which is why the same seed
+ * replays the same game whether games run one at a time or in parallel. It still extends Random so
+ * that it can be stored wherever a Random was stored before, including in saved games.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public abstract class GameRandom extends Random {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final long INVERSE_GOLDEN_GAMMA = 0xF1DE83E19937733DL;
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long INVERSE_MULTIPLIER = 0xDFE05BCB1365L;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    @Serial
+    final private static long serialVersionUID = 1L;
+
+    private GameRandom() {
+        super(0L);
+    }
+
+    /**
+     * Creates a fast SplitMix64 stream
+     * @param seed Seed of the stream
+     * @return New stream
+     */
+    public static GameRandom seeded(long seed) {
+        return new SplitMix(seed);
+    }
+
+    /**
+     * Creates a stream that draws exactly the same numbers as {@code new Random(seed)}
+     * @param seed Seed of the stream
+     * @return New stream
+     */
+    public static GameRandom legacy(long seed) {
+        Legacy random = new Legacy();
+        random.setSeed(seed);
+        return random;
+    }
+
+    /**
+     * Takes over the position of an existing Random, so the returned stream draws the numbers the
+     * given Random would have drawn next
+     * <br/>
+     * The internal state of a Random is private, so it is recovered from two draws. The given Random
+     * should not be used afterwards.
+     * @param random Random to take over
+     * @return The given Random if it already is a GameRandom, a new stream otherwise
+     */
+    public static GameRandom legacy(Random random) {
+        if (random instanceof GameRandom) {
+            return (GameRandom) random;
+        }
+        long first = random.nextInt() & 0xFFFFFFFFL;
+        int second = random.nextInt();
+        for (long low = 0; low < 1 << 16; low++) {
+            long state = first << 16 | low;
+            if ((int) (((state * MULTIPLIER + ADDEND) & MASK) >>> 16) == second) {
+                Legacy legacy = new Legacy();
+                legacy.state = ((state - ADDEND) * INVERSE_MULTIPLIER) & MASK;
+                return legacy;
+            }
+        }
+        throw new IllegalStateException("Random does not use the standard generator");
+    }
+
+    /**
+     * Shuffles a list exactly like {@link java.util.Collections#shuffle(List, Random)}, but using any random generator
+     * @param list List to shuffle, ideally with constant time access
+     * @param random Random generator to shuffle with
+     */
+    public static <T> void shuffle(List<T> list, RandomGenerator random) {
+        for (int i = list.size(); i > 1; i--) {
+            int j = random.nextInt(i);
+            list.set(j, list.set(i - 1, list.get(j)));
+        }
+    }
+
+    /**
+     * Derives a new, independent stream from this one, advancing this stream once
+     * @return New stream
+     */
+    public GameRandom split() {
+        return new SplitMix(mix(nextLong() ^ GOLDEN_GAMMA));
+    }
+
+    /**
+     * Creates a stream in the same position as this one
+     * @return Copy of this stream
+     */
+    public abstract GameRandom copy();
+
+    /**
+     * Gets the position of the stream
+     * @return Internal state
+     */
+    public abstract long getState();
+
+    /**
+     * Moves the stream back or forward to a position read with {@link #getState()}
+     * @param state Internal state
+     */
+    public abstract void setState(long state);
+
+    /**
+     * Checks if the stream draws the same numbers as {@link Random}
+     * @return {@code true} for streams made by {@code legacy}, {@code false} for seeded streams
+     */
+    boolean isLegacy() {
+        return this instanceof Legacy;
+    }
+
+    /**
+     * Counts the numbers a seeded stream drew to get from one state to another
+     * @param from Earlier state
+     * @param to Later state
+     * @return Number of draws, which is huge or negative if the later state doesn't follow the earlier one
+     */
+    static long seededSteps(long from, long to) {
+        return (to - from) * INVERSE_GOLDEN_GAMMA;
+    }
+
+    /**
+     * Gets the state of a seeded stream after a number of draws
+     * @param state Earlier state
+     * @param steps Number of draws
+     * @return Later state
+     */
+    static long seededAdvance(long state, long steps) {
+        return state + steps * GOLDEN_GAMMA;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * SplitMix64 stream, the default for new games
+     */
+    private static final class SplitMix extends GameRandom {
+        private long state;
+
+        @Serial
+        final private static long serialVersionUID = 1L;
+
+        private SplitMix(long seed) {
+            state = seed;
+        }
+
+        @Override
+        public void setSeed(long seed) {
+            state = seed;
+        }
+
+        @Override
+        protected int next(int bits) {
+            return (int) (nextLong() >>> (64 - bits));
+        }
+
+        @Override
+        public long nextLong() {
+            return mix(state += GOLDEN_GAMMA);
+        }
+
+        @Override
+        public int nextInt() {
+            return (int) (nextLong() >>> 32);
+        }
+
+        @Override
+        public double nextDouble() {
+            return (nextLong() >>> 11) * 0x1.0p-53;
+        }
+
+        @Override
+        public GameRandom copy() {
+            return new SplitMix(state);
+        }
+
+        @Override
+        public long getState() {
+            return state;
+        }
+
+        @Override
+        public void setState(long state) {
+            this.state = state;
+        }
+    }
+
+    /**
+     * Linear congruential stream identical to {@link Random}, used by games created from files and
+     * by saved games so that they replay as they did before
+     */
+    private static final class Legacy extends GameRandom {
+        private long state;
+
+        @Serial
+        final private static long serialVersionUID = 1L;
+
+        @Override
+        public void setSeed(long seed) {
+            state = (seed ^ MULTIPLIER) & MASK;
+        }
+
+        @Override
+        protected int next(int bits) {
+            state = (state * MULTIPLIER + ADDEND) & MASK;
+            return (int) (state >>> (48 - bits));
+        }
+
+        @Override
+        public GameRandom copy() {
+            Legacy copy = new Legacy();
+            copy.state = state;
+            return copy;
+        }
+
+        @Override
+        public long getState() {
+            return state;
+        }
+
+        @Override
+        public void setState(long state) {
+            this.state = state & MASK;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package bakery;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cached answers to which layers a player can bake and which active orders they can fulfil or garnish
+ * <br/>
+ * Each half of the index remembers the versions of the hand, layer stock and customer row it was
+ * built from, and is only rebuilt when one of those has changed since.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+final class HandIndex {
+    private final Player player;
+    private int layerHandVersion = -1;
+    private int layerStockVersion = -1;
+    private int orderHandVersion = -1;
+    private int customerVersion = -1;
+    private List<Layer> bakeable;
+    private List<CustomerOrder> fulfillable;
+    private List<CustomerOrder> garnishable;
+
+    /**
+     * Initialises an empty index for a player
+     * @param player Player whose hand is indexed
+     */
+    HandIndex(Player player) {
+        this.player = player;
+    }
+
+    /**
+     * Returns the unique layers the player can bake
+     * @param layers Unique layers in stock
+     * @param stockVersion Version of the layer stock
+     * @return Unmodifiable list of bakeable layers
+     */
+    List<Layer> bakeable(Collection<Layer> layers, int stockVersion) {
+        if (layerHandVersion != player.getVersion() || layerStockVersion != stockVersion) {
+            List<Layer> _bakeable = new ArrayList<>(layers.size());
+            for (Layer layer: layers) {
+                if (layer.canBake(player)) _bakeable.add(layer);
+            }
+            bakeable = Collections.unmodifiableList(_bakeable);
+            layerHandVersion = player.getVersion();
+            layerStockVersion = stockVersion;
+        }
+        return bakeable;
+    }
+
+    /**
+     * Returns the active orders the player can fulfil
+     * @param customers Customers in the shop
+     * @return Unmodifiable list of fulfillable orders
+     */
+    List<CustomerOrder> fulfillable(Customers customers) {
+        refreshOrders(customers);
+        return fulfillable;
+    }
+
+    /**
+     * Returns the active orders the player can fulfil with garnish
+     * @param customers Customers in the shop
+     * @return Unmodifiable list of garnishable orders
+     */
+    List<CustomerOrder> garnishable(Customers customers) {
+        refreshOrders(customers);
+        return garnishable;
+    }
+
+    private void refreshOrders(Customers customers) {
+        if (orderHandVersion == player.getVersion() && customerVersion == customers.getVersion()) {
+            return;
+        }
+        List<CustomerOrder> _fulfillable = new ArrayList<>(3);
+        List<CustomerOrder> _garnishable = new ArrayList<>(3);
+        for (CustomerOrder customerOrder: customers.getActiveCustomers()) {
+            if (customerOrder != null && customerOrder.canFulfill(player)) {
+                _fulfillable.add(customerOrder);
+                if (customerOrder.canFulfillWithGarnish(player)) _garnishable.add(customerOrder);
+            }
+        }
+        fulfillable = Collections.unmodifiableList(_fulfillable);
+        garnishable = Collections.unmodifiableList(_garnishable);
+        orderHandVersion = player.getVersion();
+        customerVersion = customers.getVersion();
+    }
+}
@@ -13,10 +13,11 @@ import java.util.List;
  */
 public class Ingredient implements Comparable<Ingredient>, Serializable {
     private final String name;
+    private final transient int ordinal;
     /**
      * Helpful duck which can replace any ingredient
      */
-    static final public Ingredient HELPFUL_DUCK = new Ingredient("helpful duck \uD80C\uDD6D");
+    static final public Ingredient HELPFUL_DUCK = CardCatalog.ingredient("helpful duck \uD80C\uDD6D");
 
     @Serial
     static final private long serialVersionUID = 1L;
@@ -27,6 +28,7 @@ public class Ingredient implements Comparable<Ingredient>, Serializable {
      */
     public Ingredient(String name) {
         this.name = name;
+        this.ordinal = CardCatalog.ordinalOf(name);
     }
 
     /**
@@ -37,6 +39,14 @@ public class Ingredient implements Comparable<Ingredient>, Serializable {
         return name;
     }
 
+    /**
+     * Gets the catalog ordinal of the ingredient, shared by every card with the same name
+     * @return Ordinal of the ingredient
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
     /**
      * Returns a comma-separated list of ingredient names
      * @param ingredients List of ingredients
@@ -62,15 +72,15 @@ public class Ingredient implements Comparable<Ingredient>, Serializable {
             return false;
         }
 
-        return name.equals(((Ingredient) obj).getName());
+        return ordinal == ((Ingredient) obj).ordinal;
     }
 
     /**
-     * Gets the hash code, calculated from the ingredient name
+     * Gets the hash code, which is the catalog ordinal of the ingredient
      * @return Hash code of the ingredient
      */
     public int hashCode() {
-        return name.hashCode();
+        return ordinal;
     }
 
     /**
@@ -91,4 +101,13 @@ public class Ingredient implements Comparable<Ingredient>, Serializable {
     public int compareTo(Ingredient i) {
         return name.compareTo(i.name);
     }
+
+    /**
+     * Replaces a deserialized ingredient with the canonical catalog instance
+     * @return Canonical ingredient with the same name
+     */
+    @Serial
+    protected Object readResolve() {
+        return CardCatalog.resolve(this);
+    }
 }
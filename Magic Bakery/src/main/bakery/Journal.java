@@ -0,0 +1,417 @@
+package bakery;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of every action taken in a game, so that a game lost in a crash can be recovered
+ * <br/>
+ * A journal starts with the position it was started from, saved with {@link SaveFile} including the
+ * state of the random streams, and the names of the cards so that moves can be read back by a later
+ * run. After that come commits, each holding the moves applied, turns ended and operations undone
+ * since the previous one, and a CRC-32. Recording an action only copies it into memory. A background
+ * thread writes everything recorded so far as one commit and waits for the disk, holding back for a
+ * few milliseconds first so that actions in quick succession share a commit. A commit cut short by a
+ * crash is dropped when the journal is read back, along with anything after it.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public final class Journal implements Closeable {
+    static final int END_TURN = -1;
+    static final int UNDO = -2;
+
+    private static final int MAGIC = 0x4D424B4A;
+    private static final int VERSION = 1;
+    private static final int BATCH = 4096;
+    private static final long DEFAULT_COMMIT_MILLIS = 10;
+
+    private final MagicBakery game;
+    private final FileChannel channel;
+    private final long commitNanos;
+    private final Thread flusher;
+    private int[] pending = new int[BATCH];
+    private int pendingCount;
+    private long recorded;
+    private long durable;
+    private long commits;
+    private boolean syncRequested;
+    private boolean closed;
+    private IOException failure;
+
+    private Journal(MagicBakery game, FileChannel channel, long commitMillis) {
+        this.game = game;
+        this.channel = channel;
+        commitNanos = commitMillis * 1_000_000;
+        flusher = new Thread(this::flush, "journal");
+        flusher.setDaemon(true);
+        flusher.start();
+        game.setJournal(this);
+    }
+
+    /**
+     * Starts journaling a game from its current position, replacing the file if it exists
+     * <br/>
+     * The game's undo history is cleared, as a journal can't undo what happened before its start.
+     * @param file File to journal to
+     * @param game Game to journal, which records every action into the journal until it is closed
+     * @return Journal of the game
+     * @throws IOException If the file can't be written
+     */
+    public static Journal start(File file, MagicBakery game) throws IOException {
+        return start(file, game, DEFAULT_COMMIT_MILLIS);
+    }
+
+    /**
+     * Starts journaling a game from its current position, replacing the file if it exists
+     * <br/>
+     * The game's undo history is cleared, as a journal can't undo what happened before its start.
+     * @param file File to journal to
+     * @param game Game to journal, which records every action into the journal until it is closed
+     * @param commitMillis How long to hold back a commit for more actions to join it
+     * @return Journal of the game
+     * @throws IOException If the file can't be written
+     */
+    public static Journal start(File file, MagicBakery game, long commitMillis) throws IOException {
+        // The header replaces the file in one step, so an old journal survives a crash here
+        Path path = file.toPath();
+        SaveFile.writeAtomically(path, header(game));
+        game.clearUndoHistory();
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new Journal(game, channel, commitMillis);
+    }
+
+    /**
+     * Recovers the game of a journal and carries on journaling it, dropping any commit cut short by a crash
+     * @param file Journal to recover
+     * @return Journal of the recovered game, which is got with {@link #getGame()}
+     * @throws IOException If the journal can't be read, its start is damaged or a whole commit doesn't replay
+     */
+    public static Journal resume(File file) throws IOException {
+        Replay replay = read(Files.readAllBytes(file.toPath()));
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        try {
+            channel.truncate(replay.length);
+            channel.position(replay.length);
+            channel.force(true);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new Journal(replay.game, channel, DEFAULT_COMMIT_MILLIS);
+    }
+
+    /**
+     * Rebuilds the game of a journal by replaying every committed action from its start
+     * @param file Journal to replay
+     * @return Game in the position after the last committed action, with the undo history of the replay
+     * @throws IOException If the journal can't be read, its start is damaged or a whole commit doesn't replay
+     */
+    public static MagicBakery replay(File file) throws IOException {
+        return replay(Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * Rebuilds the game of a journal read into memory
+     * @param bytes Whole journal
+     * @return Game in the position after the last committed action, with the undo history of the replay
+     * @throws IOException If the start of the journal is damaged or a whole commit doesn't replay
+     */
+    public static MagicBakery replay(byte[] bytes) throws IOException {
+        return read(bytes).game;
+    }
+
+    /**
+     * Checks if a file is a journal, which is recovered with {@link #resume(File)} rather than loaded
+     * @param file File to check
+     * @return {@code true} if the file is a journal
+     * @throws IOException If the file can't be read
+     */
+    public static boolean isJournal(File file) throws IOException {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return isJournal(in.readNBytes(Integer.BYTES));
+        }
+    }
+
+    /**
+     * Checks if a file starts like a journal
+     * @param bytes Start of the file
+     * @return {@code true} if the file is a journal
+     */
+    static boolean isJournal(byte[] bytes) {
+        return bytes.length >= Integer.BYTES && ByteBuffer.wrap(bytes).getInt() == MAGIC;
+    }
+
+    /**
+     * Gets the game being journaled
+     * @return Game of the journal
+     */
+    public MagicBakery getGame() {
+        return game;
+    }
+
+    /**
+     * Gets the number of actions recorded since the journal was started or resumed
+     * @return Number of actions
+     */
+    public synchronized long getRecorded() {
+        return recorded;
+    }
+
+    /**
+     * Gets the number of commits written since the journal was started or resumed
+     * @return Number of commits, each of which waited for the disk once
+     */
+    public synchronized long getCommits() {
+        return commits;
+    }
+
+    /**
+     * Waits until every action recorded so far is on the disk
+     * @throws IOException If the journal couldn't be written
+     */
+    public synchronized void sync() throws IOException {
+        long target = recorded;
+        syncRequested = true;
+        notifyAll();
+        try {
+            while (durable < target && failure == null) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the journal");
+        }
+        if (failure != null)
+            throw new IOException("Journal couldn't be written", failure);
+    }
+
+    /**
+     * Writes every action recorded so far and stops journaling the game
+     * @throws IOException If the journal couldn't be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            notifyAll();
+        }
+        game.setJournal(null);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null)
+            throw new IOException("Journal couldn't be written", failure);
+    }
+
+    /**
+     * Records an action of the game, called by the game once the action has succeeded
+     * @param record Code of a move, {@link #END_TURN} or {@link #UNDO}
+     * @throws IllegalStateException If the journal couldn't be written
+     */
+    synchronized void record(int record) {
+        if (failure != null)
+            throw new IllegalStateException("Journal couldn't be written", failure);
+        if (closed)
+            throw new IllegalStateException("Journal is closed");
+        if (pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        }
+        pending[pendingCount++] = record;
+        recorded++;
+        if (pendingCount == 1 || pendingCount >= BATCH) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Writes commits in the background until the journal is closed
+     */
+    private void flush() {
+        int[] spare = new int[BATCH];
+        ByteBuffer buffer = ByteBuffer.allocate(BATCH * Integer.BYTES + 2 * Integer.BYTES);
+        while (true) {
+            int[] batch;
+            int count;
+            long target;
+            synchronized (this) {
+                try {
+                    while (pendingCount == 0 && !closed) {
+                        wait();
+                    }
+                    long deadline = System.nanoTime() + commitNanos;
+                    for (long left = commitNanos; left > 0 && pendingCount < BATCH && !syncRequested && !closed; left = deadline - System.nanoTime()) {
+                        wait(Math.max(1, left / 1_000_000));
+                    }
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+                if (pendingCount == 0) return;
+                batch = pending;
+                count = pendingCount;
+                target = recorded;
+                pending = spare.length >= batch.length ? spare : new int[batch.length];
+                pendingCount = 0;
+                syncRequested = false;
+            }
+            try {
+                if (buffer.capacity() < (count + 2) * Integer.BYTES) {
+                    buffer = ByteBuffer.allocate((count + 2) * Integer.BYTES);
+                }
+                buffer.clear();
+                buffer.putInt(count);
+                for (int i = 0; i < count; i++) {
+                    buffer.putInt(batch[i]);
+                }
+                CRC32 crc = new CRC32();
+                crc.update(buffer.array(), 0, buffer.position());
+                buffer.putInt((int) crc.getValue());
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+            spare = batch;
+            synchronized (this) {
+                durable = target;
+                commits++;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Builds the start of a journal: the names of the cards by ordinal and the saved position
+     */
+    private static byte[] header(MagicBakery game) {
+        byte[] position = SaveFile.toBytes(game);
+        int cards = CardCatalog.size();
+        byte[][] names = new byte[cards][];
+        int length = 4 * Integer.BYTES + position.length;
+        for (int ordinal = 0; ordinal < cards; ordinal++) {
+            names[ordinal] = CardCatalog.get(ordinal).getName().getBytes(StandardCharsets.UTF_8);
+            length += Integer.BYTES + names[ordinal].length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(length + Integer.BYTES);
+        out.putInt(MAGIC).putInt(VERSION).putInt(cards);
+        for (byte[] name: names) {
+            out.putInt(name.length).put(name);
+        }
+        out.putInt(position.length).put(position);
+        CRC32 crc = new CRC32();
+        crc.update(out.array(), 0, out.position());
+        out.putInt((int) crc.getValue());
+        return out.array();
+    }
+
+    /**
+     * Reads the start of a journal and applies every complete commit after it
+     */
+    private static Replay read(byte[] bytes) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        if (!isJournal(bytes))
+            throw new StreamCorruptedException("Not a journal");
+        in.getInt();
+        int version = in.getInt();
+        if (version > VERSION)
+            throw new IOException("Journal is version " + version + ", this game reads up to version " + VERSION);
+        String[] names;
+        byte[] position;
+        try {
+            names = new String[in.getInt()];
+            for (int ordinal = 0; ordinal < names.length; ordinal++) {
+                byte[] name = new byte[in.getInt()];
+                in.get(name);
+                names[ordinal] = new String(name, StandardCharsets.UTF_8);
+            }
+            position = new byte[in.getInt()];
+            in.get(position);
+        } catch (RuntimeException e) {
+            throw new StreamCorruptedException("Journal start is truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, in.position());
+        if (in.remaining() < Integer.BYTES || in.getInt() != (int) crc.getValue())
+            throw new StreamCorruptedException("Journal start is damaged");
+        MagicBakery game = SaveFile.fromBytes(position);
+
+        // Card ordinals of the run that wrote the journal, mapped to this run's
+        int[] ordinals = new int[names.length];
+        for (int ordinal = 0; ordinal < names.length; ordinal++) {
+            Ingredient card = CardCatalog.lookup(names[ordinal]);
+            ordinals[ordinal] = card == null ? -1 : card.getOrdinal();
+        }
+
+        int end = in.position();
+        for (int commit = 1; in.remaining() >= 2 * Integer.BYTES; commit++) {
+            int start = in.position();
+            int count = in.getInt();
+            if (count <= 0 || count > (in.remaining() - Integer.BYTES) / Integer.BYTES) break;
+            crc.reset();
+            crc.update(bytes, start, (count + 1) * Integer.BYTES);
+            if (in.getInt(start + (count + 1) * Integer.BYTES) != (int) crc.getValue()) break;
+            try {
+                for (int i = 0; i < count; i++) {
+                    apply(game, in.getInt(), ordinals);
+                }
+            } catch (RuntimeException e) {
+                // Whole, so not cut short by a crash, but written against another game or other cards
+                throw new StreamCorruptedException("Journal commit " + commit + " doesn't replay: " + e.getMessage());
+            }
+            in.getInt();
+            end = in.position();
+        }
+        return new Replay(game, end);
+    }
+
+    private static void apply(MagicBakery game, int record, int[] ordinals) throws StreamCorruptedException {
+        switch (record) {
+            case END_TURN -> game.endTurn();
+            case UNDO -> game.undo();
+            default -> {
+                int card = (record >>> 8) - 1;
+                if (card >= 0) {
+                    if (card >= ordinals.length || ordinals[card] < 0)
+                        throw new StreamCorruptedException("Journal refers to unknown card " + card);
+                    record = record & 0xFF | (ordinals[card] + 1) << 8;
+                }
+                game.apply(Move.decode(record));
+            }
+        }
+    }
+
+    /**
+     * Game rebuilt from a journal and the length of the journal that was used
+     */
+    private static final class Replay {
+        private final MagicBakery game;
+        private final long length;
+
+        private Replay(MagicBakery game, long length) {
+            this.game = game;
+            this.length = length;
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package bakery;
 
 import java.io.Serial;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -13,6 +12,7 @@ import java.util.List;
  */
 public class Layer extends Ingredient {
     private final List<Ingredient> recipe;
+    private final transient Requirement requirement;
 
     @Serial
     final static private long serialVersionUID = 1L;
@@ -29,6 +29,7 @@ public class Layer extends Ingredient {
         }
         this.recipe = recipe;
         Collections.sort(recipe);
+        requirement = new Requirement(recipe);
     }
 
     /**
@@ -37,12 +38,16 @@ public class Layer extends Ingredient {
      * @return {@code true} if ingredients include the recipe's required ingredients, {@code false} otherwise
      */
     public boolean canBake(List<Ingredient> ingredients) {
-        List<Ingredient> _recipe = new ArrayList<>(recipe);
-        for (Ingredient ingredient: ingredients) {
-            _recipe.remove(ingredient);
-        }
-        if (_recipe.isEmpty()) return true;
-        return _recipe.size() <= Collections.frequency(ingredients, Ingredient.HELPFUL_DUCK);
+        return requirement.missing(ingredients) <= Requirement.count(ingredients, HELPFUL_DUCK.getOrdinal());
+    }
+
+    /**
+     * Checks if the Layer can be baked using the player's hand
+     * @param player Player whose hand is used
+     * @return {@code true} if the hand includes the recipe's required ingredients, {@code false} otherwise
+     */
+    public boolean canBake(Player player) {
+        return requirement.missing(player) <= player.count(HELPFUL_DUCK.getOrdinal());
     }
 
     /**
@@ -60,12 +65,4 @@ public class Layer extends Ingredient {
     public String getRecipeDescription() {
         return Ingredient.getDescription(recipe);
     }
-
-    /**
-     * Gets the hash code, calculated from the recipe list
-     * @return Hash code of the layer
-     */
-    public int hashCode() {
-        return recipe.hashCode();
-    }
 }
@@ -1,22 +1,22 @@
 package bakery;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EmptyStackException;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.random.RandomGenerator;
 
 import util.CardUtils;
 import util.ConsoleUtils;
@@ -37,14 +37,36 @@ public class MagicBakery implements Serializable {
     private final Collection<Ingredient> pantry;
     private final Collection<Ingredient> pantryDeck;
     private final Collection<Ingredient> pantryDiscard;
-    private final Random random;
-    private final transient ConsoleUtils consoleUtils;
+    private Random random;
+    private Random customerRandom;
+    private transient ConsoleUtils consoleUtils;
+    private transient CardSet cardSet;
+    private transient int layerVersion;
+    private transient List<Layer> uniqueLayers;
+    private transient int[][] cardCounts;
+    private transient Layer[] stockLayers;
+    private transient long hash;
+    private transient Map<Player, HandIndex> handIndexes;
+    private transient UndoLog undoLog = new UndoLog();
+    private transient int pileVersion;
+    private transient DrawOdds drawOdds;
+    private transient int drawOddsVersion;
+    private transient Journal journal;
+    private transient Autosave autosave;
+
+    static final int PANTRY = 0;
+    static final int DECK = 1;
+    static final int DISCARD = 2;
+    static final int LAYERS = 3;
+    private static final int HAND = 4;
 
     @Serial
     final private static long serialVersionUID = 1L;
 
     /**
      * Magic Bakery Constructor
+     * <br/>
+     * The pantry and the customers share a single stream that draws the same numbers as {@code new Random(seed)}
      * @param seed Random seed to use throughout the game
      * @param ingredientDeckFile Path to ingredient file
      * @param layerDeckFile Path to layer file
@@ -56,8 +78,189 @@ public class MagicBakery implements Serializable {
         pantry = new ArrayList<>();
         pantryDiscard = new ArrayList<>();
         players = new ArrayList<>();
-        random = new Random(seed);
-        consoleUtils = new ConsoleUtils();
+        random = GameRandom.legacy(seed);
+        customerRandom = random;
+        rehash();
+    }
+
+    /**
+     * Magic Bakery Constructor using cards that have already been read
+     * <br/>
+     * Start the game with {@link #startGame(List)}. No console is needed unless {@link #doAction(ActionType)} is used.
+     * @param seed Random seed to use throughout the game
+     * @param cards Cards to play with
+     */
+    public MagicBakery(long seed, CardSet cards) {
+        this(GameRandom.seeded(seed), cards);
+    }
+
+    /**
+     * Magic Bakery Constructor using cards that have already been read and any random generator
+     * <br/>
+     * Separate streams for shuffling the pantry and the customer deck are derived from the generator
+     * up front, so the game only depends on the generator's first two numbers.
+     * @param random Random generator to derive the game's streams from
+     * @param cards Cards to play with
+     */
+    public MagicBakery(RandomGenerator random, CardSet cards) {
+        pantryDeck = new ArrayList<>(cards.getIngredients());
+        layers = new ArrayList<>(cards.getLayers());
+        pantry = new ArrayList<>();
+        pantryDiscard = new ArrayList<>();
+        players = new ArrayList<>();
+        this.random = GameRandom.seeded(random.nextLong());
+        customerRandom = GameRandom.seeded(random.nextLong());
+        cardSet = cards;
+        rehash();
+    }
+
+    /**
+     * Magic Bakery Constructor for a game read back from a save, which fills in the position afterwards
+     * @param random Stream to shuffle the pantry with
+     * @param customerRandom Stream to shuffle the customer deck with, which may be the same stream
+     */
+    MagicBakery(GameRandom random, GameRandom customerRandom) {
+        pantryDeck = new ArrayList<>();
+        layers = new ArrayList<>();
+        pantry = new ArrayList<>();
+        pantryDiscard = new ArrayList<>();
+        players = new ArrayList<>();
+        this.random = random;
+        this.customerRandom = customerRandom;
+        rehash();
+    }
+
+    /**
+     * Copies a Magic Bakery, sharing the card definitions but none of the game state
+     */
+    private MagicBakery(MagicBakery other) {
+        customers = other.customers == null ? null : new Customers(other.customers);
+        layers = new ArrayList<>(other.layers);
+        List<Player> playerList = new ArrayList<>(other.players.size());
+        for (Player player: other.players) {
+            Player copy = new Player(player);
+            playerList.add(copy);
+            if (player == other.currentPlayer) currentPlayer = copy;
+        }
+        players = playerList;
+        playerActionsRemaining = other.playerActionsRemaining;
+        pantry = new ArrayList<>(other.pantry);
+        pantryDeck = new ArrayList<>(other.pantryDeck);
+        pantryDiscard = new ArrayList<>(other.pantryDiscard);
+        random = ((GameRandom) other.random).copy();
+        customerRandom = other.customerRandom == other.random ? random : ((GameRandom) other.customerRandom).copy();
+        cardSet = other.cardSet;
+        layerVersion = other.layerVersion;
+        uniqueLayers = other.uniqueLayers;
+        cardCounts = new int[other.cardCounts.length][];
+        for (int list = 0; list < cardCounts.length; list++) {
+            cardCounts[list] = other.cardCounts[list].clone();
+        }
+        stockLayers = other.stockLayers.clone();
+        hash = other.hash;
+    }
+
+    /**
+     * Creates an independent copy of the game, for example to explore moves without changing this game
+     * <br/>
+     * Players, hands, pantry, decks, layer stock, customers and random streams are all copied, so the
+     * copy plays out exactly like this game would. Cards and recipes are shared.
+     * @return Copy of the game
+     */
+    public MagicBakery copy() {
+        return new MagicBakery(this);
+    }
+
+    /**
+     * Replaces everything no player can know with one random guess at it
+     * <br/>
+     * The order of the pantry deck and of the customer deck are shuffled, and the pantry stream is
+     * reseeded so that later reshuffles are unknown too. Meant for copies made with {@link #copy()}
+     * that are played out by a search, as it can't be undone and changes how the game continues.
+     * @param random Random generator to make the guess with
+     */
+    public void determinize(RandomGenerator random) {
+        GameRandom.shuffle((ArrayList<Ingredient>) pantryDeck, random);
+        if (customers != null) {
+            customers.shuffleDeck(random);
+        }
+        ((GameRandom) this.random).setState(random.nextLong());
+    }
+
+    /**
+     * Counts the copies of a card left in the pantry deck
+     * <br/>
+     * Every player can work this out from the cards they have seen, so it isn't hidden information
+     * @param card Card to count
+     * @return Number of copies in the pantry deck
+     */
+    public int getPantryDeckCount(Ingredient card) {
+        int ordinal = card.getOrdinal();
+        return ordinal < cardCounts[DECK].length ? cardCounts[DECK][ordinal] : 0;
+    }
+
+    /**
+     * Gets the number of cards left in the pantry deck
+     * @return Size of the pantry deck
+     */
+    public int getPantryDeckSize() {
+        return pantryDeck.size();
+    }
+
+    /**
+     * Counts the copies of a card in the pantry discard pile
+     * @param card Card to count
+     * @return Number of copies in the discard pile
+     */
+    public int getPantryDiscardCount(Ingredient card) {
+        int ordinal = card.getOrdinal();
+        return ordinal < cardCounts[DISCARD].length ? cardCounts[DISCARD][ordinal] : 0;
+    }
+
+    /**
+     * Gets the exact odds of drawing cards from the pantry deck as it is now
+     * <br/>
+     * The odds are kept until a card enters or leaves the deck or discard pile, so asking the same
+     * question of the same position is answered from a table.
+     * @return Odds of the current pantry deck and discard pile
+     */
+    public DrawOdds getDrawOdds() {
+        if (drawOdds == null || drawOddsVersion != pileVersion) {
+            drawOdds = new DrawOdds(cardCounts[DECK], cardCounts[DISCARD]);
+            drawOddsVersion = pileVersion;
+        }
+        return drawOdds;
+    }
+
+    /**
+     * Copies the game with a copy of a card swapped to the top of the pantry deck, so that the copy's
+     * next draw from the deck gets it
+     * <br/>
+     * Like {@link #determinize(RandomGenerator)}, this is meant for searches that follow one outcome
+     * of a draw. This game isn't changed.
+     * @param card Card to put on top
+     * @return Copy of the game with the card on top of its pantry deck
+     * @throws WrongIngredientsException If the pantry deck has no copy of the card
+     */
+    public MagicBakery copyWithTopOfPantryDeck(Ingredient card) {
+        MagicBakery copy = copy();
+        copy.putOnTopOfPantryDeck(card);
+        return copy;
+    }
+
+    /**
+     * Swaps a copy of a card to the top of the pantry deck, so that the next draw from the deck gets it
+     * <br/>
+     * It can't be undone and isn't journaled, so it is only used on copies. It doesn't change the hash.
+     * @param card Card to put on top
+     * @throws WrongIngredientsException If the pantry deck has no copy of the card
+     */
+    void putOnTopOfPantryDeck(Ingredient card) {
+        List<Ingredient> deck = (List<Ingredient>) pantryDeck;
+        int index = deck.lastIndexOf(card);
+        if (index < 0)
+            throw new WrongIngredientsException("Ingredient isn't in pantry deck");
+        Collections.swap(deck, index, deck.size() - 1);
     }
 
     /**
@@ -79,61 +282,177 @@ public class MagicBakery implements Serializable {
     public void bakeLayer(Layer layer) {
         if (playerActionsRemaining == 0)
             throw new TooManyActionsException();
-        if (!layer.canBake(currentPlayer.getHand()))
+        if (!layer.canBake(currentPlayer))
             throw new WrongIngredientsException("Layer can't be baked with given ingredients");
-        playerActionsRemaining -= 1;
+        undoLog.begin();
+        spendAction();
         for (Ingredient ingredient: layer.getRecipe()) {
             if (currentPlayer.hasIngredient(ingredient)) {
-                currentPlayer.removeFromHand(ingredient);
-                pantryDiscard.add(ingredient);
+                takeCard(currentPlayer, ingredient);
+                append(DISCARD, ingredient);
             }
             else {
-                currentPlayer.removeFromHand(Ingredient.HELPFUL_DUCK);
-                pantryDiscard.add(Ingredient.HELPFUL_DUCK);
+                takeCard(currentPlayer, Ingredient.HELPFUL_DUCK);
+                append(DISCARD, Ingredient.HELPFUL_DUCK);
             }
         }
-        layers.remove(layer);
-        currentPlayer.addToHand(layer);
+        int index = ((List<Layer>) layers).indexOf(layer);
+        if (index >= 0) {
+            removeAt(LAYERS, index);
+        }
+        layersChanged();
+        giveCard(currentPlayer, layer);
+        if (journal != null) {
+            journal.record(Move.bakeLayer(layer).encode());
+        }
     }
 
     /**
-     * Completes a specific action
+     * Completes a specific action, prompting the player for its arguments on the console
      * @param action Action to complete
      * @throws IOException If file write fails
      */
     public void doAction(ActionType action) throws IOException {
+        ConsoleUtils consoleUtils = getConsoleUtils();
         switch (action) {
-            case REFRESH_PANTRY -> refreshPantry();
-            case BAKE_LAYER -> bakeLayer((Layer) consoleUtils.promptForIngredient("Select layer: ", new ArrayList<>(getBakeableLayers())));
+            case REFRESH_PANTRY -> apply(Move.refreshPantry());
+            case BAKE_LAYER -> apply(Move.bakeLayer((Layer) consoleUtils.promptForIngredient("Select layer: ", new ArrayList<>(getBakeableLayers()))));
             case FULFIL_ORDER -> {
                 CustomerOrder customerOrder = consoleUtils.promptForCustomer("Select order to fulfill: ", getFulfillableCustomers());
                 boolean willGarnish = false;
-                if (customerOrder.canGarnish(currentPlayer.getHand())) {
+                if (customerOrder.canFulfillWithGarnish(currentPlayer)) {
                     willGarnish = consoleUtils.promptForYesNo("With garnish?");
                 }
-                fulfillOrder(customerOrder, willGarnish);
+                apply(Move.fulfillOrder(((List<CustomerOrder>) customers.getActiveCustomers()).indexOf(customerOrder), willGarnish));
             }
             case DRAW_INGREDIENT -> {
                 if (consoleUtils.promptForYesNo("Draw from current pantry ingredients (Yes), or top card from deck (No)?")) {
-                    drawFromPantry(consoleUtils.promptForIngredient("Select pantry ingredient:", pantry));
+                    apply(Move.drawFromPantry(consoleUtils.promptForIngredient("Select pantry ingredient:", pantry)));
                 } else {
-                    drawFromPantryDeck();
+                    apply(Move.drawFromPantryDeck());
                 }
             }
-            case PASS_INGREDIENT -> passCard(consoleUtils.promptForIngredient("Select ingredient to pass:", currentPlayer.getHand()), consoleUtils.promptForExistingPlayer("Select player to pass card to:", this));
+            case PASS_INGREDIENT -> {
+                Ingredient ingredient = consoleUtils.promptForIngredient("Select ingredient to pass:", currentPlayer.getHand());
+                Player recipient = consoleUtils.promptForExistingPlayer("Select player to pass card to:", this);
+                apply(Move.passCard(ingredient, ((List<Player>) players).indexOf(recipient)));
+            }
             case SAVE_GAME -> saveState(consoleUtils.promptForFilePath("Enter path to save game state:"));
         }
     }
 
+    /**
+     * Applies a fully specified move for the current player
+     * @param move Move to apply
+     */
+    public void apply(Move move) {
+        switch (move.getAction()) {
+            case DRAW_INGREDIENT -> {
+                if (move.getCard() == null) {
+                    drawFromPantryDeck();
+                } else {
+                    drawFromPantry(move.getCard());
+                }
+            }
+            case PASS_INGREDIENT -> passCard(move.getCard(), ((List<Player>) players).get(move.getTarget()));
+            case BAKE_LAYER -> bakeLayer((Layer) move.getCard());
+            case FULFIL_ORDER -> fulfillOrder(((List<CustomerOrder>) customers.getActiveCustomers()).get(move.getTarget()), move.isGarnish());
+            case REFRESH_PANTRY -> refreshPantry();
+            case SAVE_GAME -> throw new IllegalArgumentException("Saving is not a game move");
+        }
+    }
+
+    /**
+     * Lists every legal move for the current player
+     * <br/>
+     * Identical moves, such as drawing either of two copies of the same pantry card, are listed once
+     * @return List of legal moves, empty if the current player has no actions remaining
+     */
+    public List<Move> getLegalMoves() {
+        MoveBuffer buffer = new MoveBuffer();
+        generateMoves(buffer);
+        return buffer.toList();
+    }
+
+    /**
+     * Writes every legal move for the current player into a buffer, replacing its contents
+     * <br/>
+     * Moves are listed in the same order as {@link #getLegalMoves()}: pantry draws, the deck draw,
+     * refreshing the pantry, bakes, fulfils, then passes. Identical moves are listed once, and nothing
+     * is allocated once the buffer and the layer stock counts have grown to size.
+     * @param buffer Buffer to write the moves into
+     * @return Number of legal moves, 0 if the current player has no actions remaining
+     */
+    public int generateMoves(MoveBuffer buffer) {
+        buffer.clear();
+        if (playerActionsRemaining == 0) {
+            return 0;
+        }
+        List<Ingredient> _pantry = (List<Ingredient>) pantry;
+        for (int i = 0; i < _pantry.size(); i++) {
+            if (_pantry.indexOf(_pantry.get(i)) == i) {
+                buffer.add(Move.drawFromPantry(_pantry.get(i)));
+            }
+        }
+        if (!pantryDeck.isEmpty() || !pantryDiscard.isEmpty()) {
+            buffer.add(Move.drawFromPantryDeck());
+        }
+        buffer.add(Move.refreshPantry());
+        int[] stock = cardCounts[LAYERS];
+        for (int ordinal = 0; ordinal < stock.length; ordinal++) {
+            if (stock[ordinal] > 0 && stockLayers[ordinal].canBake(currentPlayer)) {
+                buffer.add(Move.bakeLayer(stockLayers[ordinal]));
+            }
+        }
+        List<CustomerOrder> activeCustomers = (List<CustomerOrder>) customers.getActiveCustomers();
+        for (int slot = 0; slot < activeCustomers.size(); slot++) {
+            CustomerOrder customerOrder = activeCustomers.get(slot);
+            if (customerOrder != null && customerOrder.canFulfill(currentPlayer)) {
+                buffer.add(Move.fulfillOrder(slot, false));
+                if (customerOrder.canFulfillWithGarnish(currentPlayer)) {
+                    buffer.add(Move.fulfillOrder(slot, true));
+                }
+            }
+        }
+        List<Player> playerList = (List<Player>) players;
+        for (int ordinal = 0, size = CardCatalog.size(); ordinal < size; ordinal++) {
+            if (currentPlayer.count(ordinal) > 0) {
+                Ingredient ingredient = CardCatalog.get(ordinal);
+                for (int seat = 0; seat < playerList.size(); seat++) {
+                    if (playerList.get(seat) != currentPlayer) {
+                        buffer.add(Move.passCard(ingredient, seat));
+                    }
+                }
+            }
+        }
+        return buffer.size();
+    }
+
+    /**
+     * Gets the console used by {@link #doAction(ActionType)}, opening it on first use
+     * @return Console utilities
+     */
+    private ConsoleUtils getConsoleUtils() {
+        if (consoleUtils == null) {
+            consoleUtils = new ConsoleUtils();
+        }
+        return consoleUtils;
+    }
+
     /**
      * Moves the topmost ingredient in the pantry deck to the player's hand
      * @return the topmost ingredient in the pantry deck
      */
-    private Ingredient drawFromPantryDeck() {
+    public Ingredient drawFromPantryDeck() {
         if (playerActionsRemaining == 0)
             throw new TooManyActionsException();
+        undoLog.begin();
         Ingredient newCard = getCardFromDeck();
-        currentPlayer.addToHand(newCard);
+        spendAction();
+        giveCard(currentPlayer, newCard);
+        if (journal != null) {
+            journal.record(Move.drawFromPantryDeck().encode());
+        }
         return newCard;
     }
 
@@ -142,8 +461,7 @@ public class MagicBakery implements Serializable {
      * @param ingredientName Ingredient name to draw from the pantry
      */
     public void drawFromPantry(String ingredientName) {
-        Ingredient ingredient = new Ingredient(ingredientName);
-        drawFromPantry(ingredient);
+        drawFromPantry(CardCatalog.lookup(ingredientName));
     }
 
     /**
@@ -153,15 +471,19 @@ public class MagicBakery implements Serializable {
     public void drawFromPantry(Ingredient ingredient) {
         if (playerActionsRemaining == 0)
             throw new TooManyActionsException();
-        boolean removed = pantry.remove(ingredient);
-        if (!removed) {
+        int index = ((List<Ingredient>) pantry).indexOf(ingredient);
+        if (index < 0) {
             throw new WrongIngredientsException("Ingredient isn't in pantry");
         }
-        playerActionsRemaining -= 1;
-        currentPlayer.addToHand(ingredient);
-        Ingredient newCard = getCardFromDeck();
-        if (newCard != null) {
-            pantry.add(newCard);
+        undoLog.begin();
+        removeAt(PANTRY, index);
+        spendAction();
+        giveCard(currentPlayer, ingredient);
+        if (!pantryDeck.isEmpty() || !pantryDiscard.isEmpty()) {
+            append(PANTRY, getCardFromDeck());
+        }
+        if (journal != null) {
+            journal.record(Move.drawFromPantry(ingredient).encode());
         }
     }
 
@@ -171,14 +493,16 @@ public class MagicBakery implements Serializable {
      */
     private Ingredient getCardFromDeck() {
         try {
-            return ((ArrayList<Ingredient>)pantryDeck).remove(pantryDeck.size()-1);
+            return removeAt(DECK, pantryDeck.size()-1);
         } catch (EmptyPantryException | IndexOutOfBoundsException e) {
             if (pantryDiscard.isEmpty())
                 throw new EmptyPantryException("Pantry deck and discard are both empty", e);
-            pantryDeck.addAll(pantryDiscard);
-            pantryDiscard.clear();
-            Collections.shuffle((ArrayList<Ingredient>)pantryDeck, random);
-            return ((ArrayList<Ingredient>)pantryDeck).remove(pantryDeck.size()-1);
+            undoLog.push(UndoLog.LIST_RESTORE, DISCARD, pantryDiscard.toArray(new Ingredient[0]));
+            undoLog.push(UndoLog.LIST_TRUNCATE, DECK, 0);
+            undoLog.push(UndoLog.RANDOM, ((GameRandom) random).getState());
+            moveAll(DISCARD, DECK);
+            GameRandom.shuffle((ArrayList<Ingredient>)pantryDeck, random);
+            return removeAt(DECK, pantryDeck.size()-1);
         }
     }
 
@@ -187,20 +511,29 @@ public class MagicBakery implements Serializable {
      * @return {@code true} if the game has ended
      */
     public boolean endTurn() {
-        playerActionsRemaining = getActionsPermitted();
+        undoLog.begin();
+        undoLog.push(UndoLog.ACTIONS, playerActionsRemaining, 0);
         List<Player> playerList = (ArrayList<Player>) players;
         int index = playerList.indexOf(currentPlayer);
-        currentPlayer = playerList.get((index+1)%playerList.size());
+        undoLog.push(UndoLog.CURRENT_PLAYER, index, 0);
+        setTurn(playerList.get((index+1)%playerList.size()), getActionsPermitted());
         if (index==playerList.size()-1) {
+            undoLog.push(UndoLog.CUSTOMERS, 0, customers.snapshot());
+            hash ^= customersKey();
             try {
                 customers.addCustomerOrder();
             } catch (EmptyStackException ignored) {
 
             }
+            hash ^= customersKey();
         }
-        ArrayList<CustomerOrder> _customers = new ArrayList<>(customers.getActiveCustomers());
-        boolean isActiveCustomersEmpty = _customers.get(0) == null && _customers.get(1) == null && _customers.get(2) == null;
-        return isActiveCustomersEmpty && customers.getCustomerDeck().isEmpty();
+        if (journal != null) {
+            journal.record(Journal.END_TURN);
+        }
+        if (autosave != null) {
+            autosave.offer();
+        }
+        return customers.isEmpty() && customers.getCustomerDeck().isEmpty();
     }
 
     /**
@@ -212,24 +545,31 @@ public class MagicBakery implements Serializable {
     public List<Ingredient> fulfillOrder(CustomerOrder customer, boolean garnish) {
         if (playerActionsRemaining == 0)
             throw new TooManyActionsException();
-        playerActionsRemaining -= 1;
+        if (!customer.canFulfill(currentPlayer))
+            throw new WrongIngredientsException("Order can't be fulfilled with given ingredients");
+        int slot = ((List<CustomerOrder>) customers.getActiveCustomers()).indexOf(customer);
+        undoLog.begin();
+        undoLog.push(UndoLog.CUSTOMERS, 0, customers.snapshot());
+        hash ^= customersKey();
+        spendAction();
         List<Ingredient> used = customer.fulfill(currentPlayer.getHand(), garnish);
         for (Ingredient usedIngredient: used) {
-            currentPlayer.removeFromHand(usedIngredient);
-            if (usedIngredient instanceof Layer) {
-                layers.add((Layer) usedIngredient);
-            } else {
-                pantryDiscard.add(usedIngredient);
-            }
+            takeCard(currentPlayer, usedIngredient);
+            append(usedIngredient instanceof Layer ? LAYERS : DISCARD, usedIngredient);
         }
-        customer.setStatus(CustomerOrder.CustomerOrderStatus.FULFILLED);
-        if (garnish) {
-            currentPlayer.addToHand(customer.getGarnish());
-            customer.setStatus(CustomerOrder.CustomerOrderStatus.GARNISHED);
+        boolean garnished = customer.getStatus() == CustomerOrder.CustomerOrderStatus.GARNISHED;
+        if (garnished) {
+            for (Ingredient ingredient: customer.getGarnish()) {
+                giveCard(currentPlayer, ingredient);
+            }
         }
         customers.remove(customer);
         customers.setImpatient();
-        if (garnish) {
+        hash ^= customersKey();
+        if (journal != null) {
+            journal.record(Move.fulfillOrder(slot, garnish).encode());
+        }
+        if (garnished) {
             return customer.getGarnish();
         } else {
             return new ArrayList<>();
@@ -264,14 +604,7 @@ public class MagicBakery implements Serializable {
      * @return layers than can be baked using ingredients from the current player's hand
      */
     public Collection<Layer> getBakeableLayers() {
-        List<Layer> _layers = getLayers().stream().toList();
-        Collection<Layer> bakeableLayers = new ArrayList<>();
-        for (Layer layer: _layers) {
-            if (layer.canBake(currentPlayer.getHand())){
-                bakeableLayers.add(layer);
-            }
-        }
-        return bakeableLayers;
+        return handIndex(currentPlayer).bakeable(getLayers(), layerVersion);
     }
 
     /**
@@ -295,15 +628,7 @@ public class MagicBakery implements Serializable {
      * @return customers than can be fulfilled using the player's hand
      */
     public Collection<CustomerOrder> getFulfillableCustomers() {
-        List<CustomerOrder> customerOrders = customers.getActiveCustomers().stream().toList();
-        Collection<CustomerOrder> fulfillableCustomers = new ArrayList<>();
-        for (int i=0; i<3; i++) {
-            CustomerOrder customerOrder = customerOrders.get(i);
-            if (customerOrder != null && customerOrder.canFulfill(currentPlayer.getHand())) {
-                fulfillableCustomers.add(customerOrder);
-            }
-        }
-        return fulfillableCustomers;
+        return handIndex(currentPlayer).fulfillable(customers);
     }
 
     /**
@@ -311,15 +636,7 @@ public class MagicBakery implements Serializable {
      * @return customers than can be garnished using the player's hand
      */
     public Collection<CustomerOrder> getGarnishableCustomers() {
-        List<CustomerOrder> customerOrders = customers.getActiveCustomers().stream().toList();
-        Collection<CustomerOrder> garnishableCustomers = new ArrayList<>();
-        for (int i=0; i<3; i++) {
-            CustomerOrder customerOrder = customerOrders.get(i);
-            if (customerOrder != null && customerOrder.canGarnish(currentPlayer.getHand()) && customerOrder.canFulfill(currentPlayer.getHand())) {
-                garnishableCustomers.add(customerOrder);
-            }
-        }
-        return garnishableCustomers;
+        return handIndex(currentPlayer).garnishable(customers);
     }
 
     /**
@@ -327,7 +644,35 @@ public class MagicBakery implements Serializable {
      * @return Unique Layers collection
      */
     public Collection<Layer> getLayers() {
-        return new ArrayList<>(new HashSet<>(layers));
+        if (uniqueLayers == null) {
+            int[] stock = cardCounts[LAYERS];
+            List<Layer> _layers = new ArrayList<>();
+            for (int ordinal = 0; ordinal < stock.length; ordinal++) {
+                if (stock[ordinal] > 0) _layers.add(stockLayers[ordinal]);
+            }
+            uniqueLayers = Collections.unmodifiableList(_layers);
+        }
+        return uniqueLayers;
+    }
+
+    /**
+     * Drops the cached unique layers and invalidates every player's bakeable layers
+     */
+    private void layersChanged() {
+        layerVersion++;
+        uniqueLayers = null;
+    }
+
+    /**
+     * Gets the bakeable and fulfillable index of a player, creating it on first use
+     * @param player Player to get the index for
+     * @return Index of the player's hand
+     */
+    private HandIndex handIndex(Player player) {
+        if (handIndexes == null) {
+            handIndexes = new IdentityHashMap<>();
+        }
+        return handIndexes.computeIfAbsent(player, HandIndex::new);
     }
 
     /**
@@ -348,30 +693,40 @@ public class MagicBakery implements Serializable {
 
     /**
      * Loads saved bakery state from a file
+     * <br/>
+     * Files saved with Java serialization by earlier versions of the game are still read, and so are
+     * journals, which are replayed to recover a game after a crash.
      * @param file File to load bakery state from
      * @return Magic Bakery stored in file
-     * @throws IOException If file read fails
-     * @throws ClassNotFoundException If file doesn't contain Magic Bakery
+     * @throws IOException If file read fails or the file is damaged
+     * @throws ClassNotFoundException If an old file doesn't contain Magic Bakery
+     * @see SaveFile
      */
     public static MagicBakery loadState(File file) throws IOException, ClassNotFoundException {
-        try (ObjectInputStream is = new ObjectInputStream(new FileInputStream(file))) {
-            return (MagicBakery) is.readObject();
-        }
+        return SaveFile.read(file);
     }
 
     /**
      * Passes an ingredient card from one player to another
      * @param ingredient Card from the giving player
      * @param recipient Player to receive the card
+     * @throws IllegalArgumentException If the recipient isn't playing this game
      */
     public void passCard(Ingredient ingredient, Player recipient) {
         if (playerActionsRemaining == 0)
             throw new TooManyActionsException();
         if (!currentPlayer.hasIngredient(ingredient))
             throw new WrongIngredientsException("Player's hand doesn't contain ingredient");
-        playerActionsRemaining -= 1;
-        currentPlayer.removeFromHand(ingredient);
-        recipient.addToHand(ingredient);
+        int seat = ((List<Player>) players).indexOf(recipient);
+        if (seat < 0)
+            throw new IllegalArgumentException("Recipient isn't playing this game");
+        undoLog.begin();
+        spendAction();
+        takeCard(currentPlayer, ingredient);
+        giveCard(seat, ingredient);
+        if (journal != null) {
+            journal.record(Move.passCard(ingredient, seat).encode());
+        }
     }
 
     /**
@@ -414,25 +769,358 @@ public class MagicBakery implements Serializable {
     public void refreshPantry() {
         if (playerActionsRemaining == 0)
             throw new TooManyActionsException();
-        playerActionsRemaining -= 1;
-        pantryDiscard.addAll(pantry);
-        pantry.clear();
+        undoLog.begin();
+        spendAction();
+        undoLog.push(UndoLog.LIST_TRUNCATE, DISCARD, pantryDiscard.size());
+        undoLog.push(UndoLog.LIST_RESTORE, PANTRY, pantry.toArray(new Ingredient[0]));
+        moveAll(PANTRY, DISCARD);
         for (int i=0; i<Math.min(5, pantryDeck.size()); i++) {
-            pantry.add(getCardFromDeck());
+            append(PANTRY, getCardFromDeck());
+        }
+        if (journal != null) {
+            journal.record(Move.refreshPantry().encode());
+        }
+    }
+
+    /**
+     * Undoes the most recent game operation, putting the game back exactly as it was before it
+     * <br/>
+     * Every move, pass, bake, fulfil, pantry refresh and end of turn since the game started can be
+     * undone, most recent first, including reshuffles of the pantry deck and customers moving along.
+     * @throws IllegalStateException If there is nothing left to undo
+     */
+    public void undo() {
+        if (undoLog.operations() == 0)
+            throw new IllegalStateException("Nothing to undo");
+        List<Player> playerList = (List<Player>) players;
+        for (long entry = undoLog.pop(); UndoLog.kind(entry) != UndoLog.MARK; entry = undoLog.pop()) {
+            int a = UndoLog.a(entry);
+            int b = UndoLog.b(entry);
+            switch (UndoLog.kind(entry)) {
+                case UndoLog.ACTIONS -> setTurn(currentPlayer, a);
+                case UndoLog.CURRENT_PLAYER -> setTurn(playerList.get(a), playerActionsRemaining);
+                case UndoLog.HAND_ADD -> changeHand(a, CardCatalog.get(b), -1);
+                case UndoLog.HAND_REMOVE -> changeHand(a, CardCatalog.get(b), 1);
+                case UndoLog.LIST_TRUNCATE -> truncate(a, b);
+                case UndoLog.LIST_INSERT -> insert(a & 0xF, a >>> 4, (Ingredient) undoLog.popRef());
+                case UndoLog.LIST_RESTORE -> {
+                    truncate(a, 0);
+                    for (Ingredient card: (Ingredient[]) undoLog.popRef()) {
+                        insert(a, list(a).size(), card);
+                    }
+                }
+                case UndoLog.RANDOM -> ((GameRandom) random).setState(undoLog.popValue());
+                case UndoLog.CUSTOMERS -> {
+                    hash ^= customersKey();
+                    customers.restore((Customers.Snapshot) undoLog.popRef());
+                    hash ^= customersKey();
+                }
+            }
+        }
+        if (journal != null) {
+            journal.record(Journal.UNDO);
+        }
+    }
+
+    /**
+     * Gets the number of operations that {@link #undo()} can still undo
+     * @return Number of operations
+     */
+    public int getUndoDepth() {
+        return undoLog.operations();
+    }
+
+    /**
+     * Spends one of the current player's actions
+     */
+    private void spendAction() {
+        undoLog.push(UndoLog.ACTIONS, playerActionsRemaining, 0);
+        setTurn(currentPlayer, playerActionsRemaining - 1);
+    }
+
+    /**
+     * Adds a card to a player's hand
+     */
+    private void giveCard(Player player, Ingredient card) {
+        giveCard(((List<Player>) players).indexOf(player), card);
+    }
+
+    /**
+     * Adds a card to the hand of the player in a seat
+     */
+    private void giveCard(int seat, Ingredient card) {
+        changeHand(seat, card, 1);
+        undoLog.push(UndoLog.HAND_ADD, seat, card.getOrdinal());
+    }
+
+    /**
+     * Removes a card from a player's hand
+     */
+    private void takeCard(Player player, Ingredient card) {
+        int seat = ((List<Player>) players).indexOf(player);
+        changeHand(seat, card, -1);
+        undoLog.push(UndoLog.HAND_REMOVE, seat, card.getOrdinal());
+    }
+
+    /**
+     * Adds a card to the end of the pantry, deck, discard pile or layer stock
+     */
+    private void append(int list, Ingredient card) {
+        int size = list(list).size();
+        undoLog.push(UndoLog.LIST_TRUNCATE, list, size);
+        insert(list, size, card);
+    }
+
+    /**
+     * Removes the card at an index of the pantry, deck, discard pile or layer stock
+     */
+    private Ingredient removeAt(int list, int index) {
+        Ingredient card = delete(list, index);
+        undoLog.push(UndoLog.LIST_INSERT, list | index << 4, card);
+        return card;
+    }
+
+    /*
+     * The methods below change the game without recording anything to undo, keeping the card counts
+     * and the hash up to date. They are shared by the recording methods above and by undo().
+     */
+
+    private void setTurn(Player player, int actions) {
+        List<Player> playerList = (List<Player>) players;
+        hash ^= Zobrist.turn(playerList.indexOf(currentPlayer), playerActionsRemaining) ^ Zobrist.turn(playerList.indexOf(player), actions);
+        currentPlayer = player;
+        playerActionsRemaining = actions;
+    }
+
+    private void changeHand(int seat, Ingredient card, int delta) {
+        Player player = ((List<Player>) players).get(seat);
+        int ordinal = card.getOrdinal();
+        int count = player.count(ordinal);
+        if (delta > 0) {
+            player.addToHand(card);
+        } else {
+            player.removeFromHand(card);
+        }
+        hash ^= Zobrist.card(HAND, seat, ordinal, count) ^ Zobrist.card(HAND, seat, ordinal, count + delta);
+    }
+
+    private void insert(int list, int index, Ingredient card) {
+        list(list).add(index, card);
+        count(list, card, 1);
+    }
+
+    private Ingredient delete(int list, int index) {
+        Ingredient card = list(list).remove(index);
+        count(list, card, -1);
+        return card;
+    }
+
+    private void truncate(int list, int size) {
+        List<Ingredient> _list = list(list);
+        for (int i = _list.size() - 1; i >= size; i--) {
+            delete(list, i);
+        }
+    }
+
+    private void moveAll(int from, int to) {
+        List<Ingredient> _from = list(from);
+        for (Ingredient card: _from) {
+            count(from, card, -1);
+            count(to, card, 1);
+        }
+        list(to).addAll(_from);
+        _from.clear();
+    }
+
+    /**
+     * Adjusts the number of copies of a card in the pantry, deck, discard pile or layer stock
+     */
+    private void count(int list, Ingredient card, int delta) {
+        int ordinal = card.getOrdinal();
+        if (ordinal >= cardCounts[list].length) {
+            growCounts(ordinal + 1);
         }
+        int count = cardCounts[list][ordinal];
+        cardCounts[list][ordinal] = count + delta;
+        hash ^= Zobrist.card(list, 0, ordinal, count) ^ Zobrist.card(list, 0, ordinal, count + delta);
+        if (list == DECK || list == DISCARD) {
+            pileVersion++;
+        }
+        if (list == LAYERS) {
+            if (count == 0) stockLayers[ordinal] = (Layer) card;
+            layersChanged();
+        }
+    }
+
+    private void growCounts(int size) {
+        size = Math.max(size, CardCatalog.size());
+        for (int list = 0; list < cardCounts.length; list++) {
+            cardCounts[list] = Arrays.copyOf(cardCounts[list], size);
+        }
+        stockLayers = Arrays.copyOf(stockLayers, size);
+    }
+
+    /**
+     * Gets the combined key of the customers in the active row
+     */
+    private long customersKey() {
+        if (customers == null) return 0;
+        long key = 0;
+        int slot = 0;
+        for (CustomerOrder customerOrder: customers.getActiveCustomers()) {
+            key ^= Zobrist.customer(slot++, customerOrder);
+        }
+        return key;
+    }
+
+    /**
+     * Recounts the cards in every pile and recomputes the hash from scratch
+     */
+    private void rehash() {
+        int size = CardCatalog.size();
+        cardCounts = new int[HAND][size];
+        stockLayers = new Layer[size];
+        drawOdds = null;
+        hash = 0;
+        for (int list = PANTRY; list <= LAYERS; list++) {
+            for (Ingredient card: list(list)) {
+                count(list, card, 1);
+            }
+        }
+        List<Player> playerList = (List<Player>) players;
+        for (int seat = 0; seat < playerList.size(); seat++) {
+            Player player = playerList.get(seat);
+            for (int ordinal = 0; ordinal < size; ordinal++) {
+                hash ^= Zobrist.card(HAND, seat, ordinal, player.count(ordinal));
+            }
+        }
+        hash ^= Zobrist.turn(playerList.indexOf(currentPlayer), playerActionsRemaining);
+        hash ^= customersKey();
+    }
+
+    /**
+     * Gets the Zobrist hash of the position
+     * <br/>
+     * The hash covers every hand, the pantry, the layer stock, which cards are in the deck and the
+     * discard pile (but not their order), the active customers with their statuses, the current
+     * player and their actions remaining. It is kept up to date by every change the game makes,
+     * including {@link #undo()}, so reading it is free. Changes made to a player or the customers
+     * directly, rather than through the game, are not seen.
+     * @return 64-bit hash of the position
+     */
+    public long getZobristHash() {
+        return hash;
+    }
+
+    /**
+     * Gets the pantry, deck, discard pile or layer stock
+     * @param list One of {@link #PANTRY}, {@link #DECK}, {@link #DISCARD} or {@link #LAYERS}
+     * @return The pile itself, in order
+     */
+    @SuppressWarnings("unchecked")
+    List<Ingredient> list(int list) {
+        return switch (list) {
+            case PANTRY -> (List<Ingredient>) pantry;
+            case DECK -> (List<Ingredient>) pantryDeck;
+            case DISCARD -> (List<Ingredient>) pantryDiscard;
+            default -> (List<Ingredient>) (List<? extends Ingredient>) layers;
+        };
     }
 
 
+    /**
+     * Sets the journal that actions taken, ended turns and undone operations are recorded into, whether
+     * they come through {@link #apply(Move)} or the action methods themselves
+     * @param journal Journal of this game, or {@code null} to stop recording
+     */
+    void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Forgets every operation that could be undone, so that {@link #undo()} can't go back past this point
+     */
+    void clearUndoHistory() {
+        undoLog.clear();
+    }
+
+    /**
+     * Sets the autosave that is offered a copy of the game at the end of every turn
+     * @param autosave Autosave of this game, or {@code null} to stop autosaving
+     */
+    void setAutosave(Autosave autosave) {
+        this.autosave = autosave;
+    }
+
+    /**
+     * Gets the seat of the current player
+     * @return Index of the current player in {@link #getPlayers()}
+     */
+    int getSeat() {
+        return ((List<Player>) players).indexOf(currentPlayer);
+    }
+
+    /**
+     * Gets one of the game's random streams
+     * @param customer {@code true} for the stream that shuffled the customer deck, {@code false} for the pantry stream
+     * @return Random stream, which is the same for both in games created from files
+     */
+    GameRandom getRandom(boolean customer) {
+        return (GameRandom) (customer ? customerRandom : random);
+    }
+
+    /**
+     * Replaces the whole position, keeping the cards and the kind of random streams
+     * <br/>
+     * The undo history is dropped, as it no longer leads to this position.
+     * @param hands Players with their hands, by seat
+     * @param seat Seat of the current player
+     * @param actions Actions the current player has left
+     * @param piles Pantry, deck, discard pile and layer stock, in that order
+     * @param customers Customers of the position
+     * @param randomState State of the pantry stream
+     * @param customerRandomState State of the customer stream, ignored if the streams are shared
+     */
+    void setPosition(List<Player> hands, int seat, int actions, List<List<Ingredient>> piles, Customers customers, long randomState, long customerRandomState) {
+        players.clear();
+        players.addAll(hands);
+        currentPlayer = hands.isEmpty() ? null : hands.get(seat);
+        playerActionsRemaining = actions;
+        for (int list = PANTRY; list <= LAYERS; list++) {
+            list(list).clear();
+            list(list).addAll(piles.get(list));
+        }
+        this.customers = customers;
+        ((GameRandom) random).setState(randomState);
+        if (customerRandom != random) {
+            ((GameRandom) customerRandom).setState(customerRandomState);
+        }
+        handIndexes = null;
+        layersChanged();
+        rehash();
+        undoLog.clear();
+    }
+
     /**
      * Saves bakery state to a file
      * @param file File to save bakery state to
      * @throws IOException If file write fails
+     * @see SaveFile
      */
     public void saveState(File file) throws IOException {
-        FileOutputStream fos = new FileOutputStream(file);
-        ObjectOutputStream os = new ObjectOutputStream(fos);
-        os.writeObject(this);
-        os.close();
+        SaveFile.write(this, file);
+    }
+
+    @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        undoLog = new UndoLog();
+        // Games saved before the streams were split share one plain Random with their customers
+        if (customerRandom == null || customerRandom == random) {
+            random = GameRandom.legacy(random);
+            customerRandom = random;
+        }
+        rehash();
     }
 
     /**
@@ -442,6 +1130,20 @@ public class MagicBakery implements Serializable {
      * @throws FileNotFoundException If customer file is not found
      */
     public void startGame(List<String> playerNames, String customerDeckFile) throws FileNotFoundException {
+        startGame(playerNames, CardUtils.readCustomerFile(customerDeckFile, layers));
+    }
+
+    /**
+     * Starts the game with the customers of the card set the bakery was created with
+     * @param playerNames List of player names
+     */
+    public void startGame(List<String> playerNames) {
+        if (cardSet == null)
+            throw new IllegalStateException("Bakery was not created from a card set");
+        startGame(playerNames, cardSet.newCustomerOrders());
+    }
+
+    private void startGame(List<String> playerNames, List<CustomerOrder> customerOrders) {
         // Initialise players
         int numOfPlayers= playerNames.size();
 
@@ -458,13 +1160,13 @@ public class MagicBakery implements Serializable {
             playerActionsRemaining = 2;
         }
         // Initialise customers
-        customers = new Customers(customerDeckFile, random, layers, numOfPlayers);
+        customers = new Customers(customerOrders, customerRandom, numOfPlayers);
         customers.addCustomerOrder();
         if (numOfPlayers == 3 || numOfPlayers == 5) {
             customers.addCustomerOrder();
         }
         // Shuffle pantry
-        Collections.shuffle((ArrayList<Ingredient>)pantryDeck, random);
+        GameRandom.shuffle((ArrayList<Ingredient>)pantryDeck, random);
 
         // Initialise pantry
         for (int i=0; i<5; i++) {
@@ -477,5 +1179,7 @@ public class MagicBakery implements Serializable {
             ((ArrayList<Player>) players).get(i).addToHand(getCardFromDeck());
             ((ArrayList<Player>) players).get(i).addToHand(getCardFromDeck());
         }
+        rehash();
+        undoLog.clear();
     }
 }
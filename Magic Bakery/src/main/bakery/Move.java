@@ -0,0 +1,220 @@
+package bakery;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import bakery.MagicBakery.ActionType;
+
+/**
+ * Represents a fully specified action a player can take, including its arguments
+ * <br/>
+ * Customers are referred to by their slot in the active row and players by their seat, so a move
+ * stays valid when applied to a copy of the same game. Moves are immutable, and the moves for
+ * canonical cards are cached so that listing legal moves doesn't allocate them over and over.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public final class Move {
+    private final ActionType action;
+    private final Ingredient card;
+    private final int target;
+    private final boolean garnish;
+
+    private static final ActionType[] ACTIONS = ActionType.values();
+    private static final int CACHED_SEATS = 5;
+    private static final Move DRAW_FROM_DECK = new Move(ActionType.DRAW_INGREDIENT, null, -1, false);
+    private static final Move REFRESH_PANTRY = new Move(ActionType.REFRESH_PANTRY, null, -1, false);
+    private static final Move[] FULFIL_ORDER = {
+        new Move(ActionType.FULFIL_ORDER, null, 0, false), new Move(ActionType.FULFIL_ORDER, null, 0, true),
+        new Move(ActionType.FULFIL_ORDER, null, 1, false), new Move(ActionType.FULFIL_ORDER, null, 1, true),
+        new Move(ActionType.FULFIL_ORDER, null, 2, false), new Move(ActionType.FULFIL_ORDER, null, 2, true)
+    };
+    // Draw, bake, then one row per recipient seat, each indexed by card ordinal
+    private static final Move[][] cardMoves = new Move[2 + CACHED_SEATS][0];
+
+    private Move(ActionType action, Ingredient card, int target, boolean garnish) {
+        this.action = action;
+        this.card = card;
+        this.target = target;
+        this.garnish = garnish;
+    }
+
+    /**
+     * Creates a move that takes an ingredient from the pantry
+     * @param ingredient Ingredient to take
+     * @return Draw move
+     */
+    public static Move drawFromPantry(Ingredient ingredient) {
+        return cardMove(0, ActionType.DRAW_INGREDIENT, ingredient, -1);
+    }
+
+    /**
+     * Creates a move that takes the top card of the pantry deck
+     * @return Draw move
+     */
+    public static Move drawFromPantryDeck() {
+        return DRAW_FROM_DECK;
+    }
+
+    /**
+     * Creates a move that passes an ingredient to another player
+     * @param ingredient Ingredient to pass
+     * @param recipient Seat of the receiving player
+     * @return Pass move
+     */
+    public static Move passCard(Ingredient ingredient, int recipient) {
+        if (recipient < 0 || recipient >= CACHED_SEATS) {
+            return new Move(ActionType.PASS_INGREDIENT, ingredient, recipient, false);
+        }
+        return cardMove(2 + recipient, ActionType.PASS_INGREDIENT, ingredient, recipient);
+    }
+
+    /**
+     * Creates a move that bakes a layer
+     * @param layer Layer to bake
+     * @return Bake move
+     */
+    public static Move bakeLayer(Layer layer) {
+        return cardMove(1, ActionType.BAKE_LAYER, layer, -1);
+    }
+
+    /**
+     * Creates a move that fulfills an active customer order
+     * @param slot Slot of the customer in the active row
+     * @param garnish Fulfill including the garnish or not
+     * @return Fulfil move
+     */
+    public static Move fulfillOrder(int slot, boolean garnish) {
+        if (slot < 0 || slot > 2) {
+            return new Move(ActionType.FULFIL_ORDER, null, slot, garnish);
+        }
+        return FULFIL_ORDER[slot * 2 + (garnish ? 1 : 0)];
+    }
+
+    /**
+     * Creates a move that refreshes the pantry
+     * @return Refresh move
+     */
+    public static Move refreshPantry() {
+        return REFRESH_PANTRY;
+    }
+
+    /**
+     * Returns the cached move for a card, creating it if the cache has no move for that exact card
+     */
+    private static Move cardMove(int row, ActionType action, Ingredient card, int target) {
+        Move[] cache = cardMoves[row];
+        int ordinal = card.getOrdinal();
+        if (ordinal < cache.length && cache[ordinal] != null && cache[ordinal].card == card) {
+            return cache[ordinal];
+        }
+        Move move = new Move(action, card, target, false);
+        if (card == CardCatalog.get(ordinal)) {
+            synchronized (cardMoves) {
+                cache = cardMoves[row];
+                if (ordinal >= cache.length) {
+                    cache = Arrays.copyOf(cache, Math.max(ordinal + 1, CardCatalog.size()));
+                }
+                cache[ordinal] = move;
+                cardMoves[row] = cache;
+            }
+        }
+        return move;
+    }
+
+    /**
+     * Packs the move into an int, so that moves can be stored in arrays and compared as numbers
+     * <br/>
+     * The action takes the lowest three bits, then one bit for the garnish, four bits for the target
+     * plus one, and the rest for the card ordinal plus one.
+     * @return Code of the move, unique among moves of canonical cards
+     */
+    public int encode() {
+        return action.ordinal() | (garnish ? 1 << 3 : 0) | (target + 1) << 4 | (card == null ? 0 : card.getOrdinal() + 1) << 8;
+    }
+
+    /**
+     * Unpacks a move packed by {@link #encode()}
+     * @param code Code of the move
+     * @return Move with the canonical card
+     */
+    public static Move decode(int code) {
+        Ingredient card = code >>> 8 == 0 ? null : CardCatalog.get((code >>> 8) - 1);
+        int target = (code >>> 4 & 0xF) - 1;
+        return switch (ACTIONS[code & 0x7]) {
+            case DRAW_INGREDIENT -> card == null ? drawFromPantryDeck() : drawFromPantry(card);
+            case PASS_INGREDIENT -> passCard(card, target);
+            case BAKE_LAYER -> bakeLayer((Layer) card);
+            case FULFIL_ORDER -> fulfillOrder(target, (code & 1 << 3) != 0);
+            case REFRESH_PANTRY -> refreshPantry();
+            case SAVE_GAME -> throw new IllegalArgumentException("Saving is not a game move");
+        };
+    }
+
+    /**
+     * Gets the kind of action
+     * @return Action type
+     */
+    public ActionType getAction() {
+        return action;
+    }
+
+    /**
+     * Gets the card the move draws, passes or bakes
+     * @return Card, or {@code null} for moves without one and for drawing from the deck
+     */
+    public Ingredient getCard() {
+        return card;
+    }
+
+    /**
+     * Gets the recipient seat of a pass, or the customer slot of a fulfil
+     * @return Target index, or -1 for moves without a target
+     */
+    public int getTarget() {
+        return target;
+    }
+
+    /**
+     * Checks if a fulfil move includes the garnish
+     * @return {@code true} if the garnish is included
+     */
+    public boolean isGarnish() {
+        return garnish;
+    }
+
+    /**
+     * Checks if a given object is the same move
+     * @param obj Reference object to compare with
+     * @return {@code true} if {@code obj} is the same move, {@code false} otherwise
+     */
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (!(obj instanceof Move)) return false;
+        Move move = (Move) obj;
+        return action == move.action && Objects.equals(card, move.card) && target == move.target && garnish == move.garnish;
+    }
+
+    /**
+     * Gets the hash code, calculated from the action and its arguments
+     * @return Hash code of the move
+     */
+    public int hashCode() {
+        return Objects.hash(action, card, target, garnish);
+    }
+
+    /**
+     * Gets a short description of the move
+     * @return Description of the move
+     */
+    public String toString() {
+        return switch (action) {
+            case DRAW_INGREDIENT -> card == null ? "draw from deck" : "draw " + card;
+            case PASS_INGREDIENT -> "pass " + card + " to player " + target;
+            case BAKE_LAYER -> "bake " + card;
+            case FULFIL_ORDER -> "fulfil slot " + target + (garnish ? " with garnish" : "");
+            case REFRESH_PANTRY -> "refresh pantry";
+            case SAVE_GAME -> "save game";
+        };
+    }
+}
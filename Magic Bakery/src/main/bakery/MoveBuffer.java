@@ -0,0 +1,77 @@
+package bakery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reusable list of moves that {@link MagicBakery#generateMoves(MoveBuffer)} writes into
+ * <br/>
+ * The buffer only grows, so a bot that keeps one buffer per thread lists moves without allocating.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public final class MoveBuffer {
+    private Move[] moves;
+    private int size;
+
+    /**
+     * Initialises an empty buffer with room for a typical turn's moves
+     */
+    public MoveBuffer() {
+        moves = new Move[64];
+    }
+
+    /**
+     * Removes every move from the buffer, keeping its capacity
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Adds a move to the end of the buffer
+     * @param move Move to add
+     */
+    public void add(Move move) {
+        if (size == moves.length) {
+            moves = Arrays.copyOf(moves, size * 2);
+        }
+        moves[size++] = move;
+    }
+
+    /**
+     * Gets a move from the buffer
+     * @param index Index of the move
+     * @return Move at the given index
+     */
+    public Move get(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException(index);
+        return moves[index];
+    }
+
+    /**
+     * Gets the number of moves in the buffer
+     * @return Number of moves
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if the buffer has no moves
+     * @return {@code true} if the buffer is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Copies the moves into a new list
+     * @return Modifiable list of the moves
+     */
+    public List<Move> toList() {
+        return new ArrayList<>(Arrays.asList(moves).subList(0, size));
+    }
+}
@@ -1,5 +1,9 @@
 package bakery;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -10,42 +14,81 @@ import util.StringUtils;
 
 /**
  * Represents a Player
+ * <br/>
+ * The hand is stored as a count per card ordinal, so adding, removing and checking for a card are
+ * constant time. The sorted list returned by {@link #getHand()} is built lazily and cached until the
+ * hand changes.
  * @author Ali Almuhtaseb
 
  * @version 1
  */
 public class Player implements Serializable {
-    private final List<Ingredient> hand;
-    private final String name;
+    private transient int[] counts;
+    private transient int size;
+    private transient List<Ingredient> handView;
+    private transient int version;
+    private String name;
 
     @Serial
     final private static long serialVersionUID = 1L;
 
+    /**
+     * The hand is saved as a sorted list of cards so that existing saved games keep loading
+     */
+    @Serial
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("hand", List.class),
+        new ObjectStreamField("name", String.class)
+    };
+
     /**
      * Initialises a Player with a given name and an empty hand
      * @param name Name of the player
      */
     public Player(String name) {
         this.name = name;
-        hand = new ArrayList<>();
+        counts = new int[CardCatalog.size()];
+    }
+
+    /**
+     * Copies a Player, including their hand
+     * @param other Player to copy
+     */
+    Player(Player other) {
+        name = other.name;
+        counts = other.counts.clone();
+        size = other.size;
+        handView = other.handView;
+        version = other.version;
     }
 
     /**
-     * Adds a list of ingredients to the player's hand and sorts the new list
+     * Adds a list of ingredients to the player's hand
      * @param ingredients The ingredients to add to the player's hand
      */
     public void addToHand(List<Ingredient> ingredients) {
-        hand.addAll(ingredients);
-        Collections.sort(hand);
+        for (Ingredient ingredient: ingredients) {
+            addToHand(ingredient);
+        }
     }
 
     /**
-     * Add a single ingredient to the player's hand and sorts the new list
+     * Add a single ingredient to the player's hand
      * @param ingredient The ingredient to add to the player's hand
      */
     public void addToHand(Ingredient ingredient) {
-        hand.add(ingredient);
-        Collections.sort(hand);
+        int ordinal = ingredient.getOrdinal();
+        if (ordinal >= counts.length) {
+            int[] grown = new int[Math.max(ordinal + 1, CardCatalog.size())];
+            System.arraycopy(counts, 0, grown, 0, counts.length);
+            counts = grown;
+        }
+        // Hands keep only counts, so the card must be found again by its ordinal
+        CardCatalog.register(ingredient);
+        counts[ordinal]++;
+        size++;
+        version++;
+        handView = null;
     }
 
     /**
@@ -54,7 +97,41 @@ public class Player implements Serializable {
      * @return true if player's hand contains ingredient
      */
     public boolean hasIngredient(Ingredient ingredient) {
-        return hand.contains(ingredient);
+        return count(ingredient.getOrdinal()) > 0;
+    }
+
+    /**
+     * Gets the number of copies of an ingredient in the player's hand
+     * @param ingredient Ingredient to count
+     * @return Number of copies in the player's hand
+     */
+    public int getCount(Ingredient ingredient) {
+        return count(ingredient.getOrdinal());
+    }
+
+    /**
+     * Gets the number of cards with a given ordinal in the player's hand
+     * @param ordinal Card ordinal
+     * @return Number of copies in the player's hand
+     */
+    int count(int ordinal) {
+        return ordinal < counts.length ? counts[ordinal] : 0;
+    }
+
+    /**
+     * Gets the number of cards in the player's hand
+     * @return Number of cards in the player's hand
+     */
+    public int getHandSize() {
+        return size;
+    }
+
+    /**
+     * Gets a counter that changes every time the player's hand changes
+     * @return Hand version
+     */
+    int getVersion() {
+        return version;
     }
 
     /**
@@ -62,17 +139,31 @@ public class Player implements Serializable {
      * @param ingredient Ingredient to remove
      */
     public void removeFromHand(Ingredient ingredient) {
-        if (!hand.remove(ingredient)) {
+        int ordinal = ingredient.getOrdinal();
+        if (count(ordinal) == 0) {
             throw new WrongIngredientsException("Ingredients list doesn't contain ingredient");
         }
+        counts[ordinal]--;
+        size--;
+        version++;
+        handView = null;
     }
 
     /**
-     * Gets the current ingredients in the player's hand
-     * @return List of ingredients
+     * Gets the current ingredients in the player's hand, sorted by name
+     * @return Unmodifiable list of ingredients
      */
     public List<Ingredient> getHand() {
-        return hand;
+        if (handView == null) {
+            List<Ingredient> hand = new ArrayList<>(size);
+            for (int ordinal: CardCatalog.ordinalsByName()) {
+                for (int i = count(ordinal); i > 0; i--) {
+                    hand.add(CardCatalog.get(ordinal));
+                }
+            }
+            handView = Collections.unmodifiableList(hand);
+        }
+        return handView;
     }
 
     /**
@@ -80,42 +171,22 @@ public class Player implements Serializable {
      * @return Comma-separated string of ingredient names
      */
     public String getHandStr() {
-        if (hand.isEmpty()) return "";
-        Collections.sort(hand);
-        Ingredient.getDescription(hand);
-        String getHandStr = "";
+        List<Ingredient> hand = getHand();
+        StringBuilder handStr = new StringBuilder();
         int index = 0;
-        int counter = 1;
-        while (index < hand.size() - 1) {
-            if (hand.get(index) == hand.get(index+1)) {
-                counter++;
-            } else {
-                if (counter > 1) {
-                    getHandStr = getHandStr
-                            .concat(StringUtils.toTitleCase(hand.get(index).getName()))
-                            .concat(" (x")
-                            .concat(Integer.toString(counter))
-                            .concat("), ");
-                } else {
-                    getHandStr = getHandStr
-                            .concat(StringUtils.toTitleCase(hand.get(index).getName())).concat(", ");
-                }
-                counter = 1;
+        while (index < hand.size()) {
+            Ingredient ingredient = hand.get(index);
+            int counter = count(ingredient.getOrdinal());
+            if (handStr.length() > 0) {
+                handStr.append(", ");
             }
-            index++;
-        }
-        if (counter > 1) {
-            getHandStr = getHandStr
-                    .concat(StringUtils.toTitleCase(hand.get(index).getName()))
-                    .concat(" (x")
-                    .concat(Integer.toString(counter))
-                    .concat("), ");
-        } else {
-            getHandStr = getHandStr
-                    .concat(StringUtils.toTitleCase(hand.get(index).getName()))
-                    .concat(", ");
+            handStr.append(StringUtils.toTitleCase(ingredient.getName()));
+            if (counter > 1) {
+                handStr.append(" (x").append(counter).append(')');
+            }
+            index += counter;
         }
-        return getHandStr.substring(0, getHandStr.length()-2);
+        return handStr.toString();
     }
 
     /**
@@ -125,4 +196,24 @@ public class Player implements Serializable {
     public String toString() {
         return name;
     }
+
+    @Serial
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("hand", new ArrayList<>(getHand()));
+        fields.put("name", name);
+        out.writeFields();
+    }
+
+    @Serial
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        name = (String) fields.get("name", null);
+        counts = new int[CardCatalog.size()];
+        List<Ingredient> hand = (List<Ingredient>) fields.get("hand", null);
+        if (hand != null) {
+            addToHand(hand);
+        }
+    }
 }
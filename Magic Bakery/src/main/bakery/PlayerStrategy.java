@@ -0,0 +1,17 @@
+package bakery;
+
+/**
+ * Chooses the moves for a player without any console interaction
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public interface PlayerStrategy {
+    /**
+     * Chooses the next move for the current player
+     * <br/>
+     * Called only while the current player has actions remaining
+     * @param bakery Game to choose a move in
+     * @return One of the game's legal moves
+     */
+    Move chooseMove(MagicBakery bakery);
+}
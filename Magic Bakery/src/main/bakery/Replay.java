@@ -0,0 +1,228 @@
+package bakery;
+
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Replay of a finished game that can jump to any move or turn without playing the game from the start
+ * <br/>
+ * Making a replay plays the game through once, keeping the move codes and a position packed by
+ * {@link StateCodec} at the start of every few turns. The packed positions share one array, and a
+ * table of the moves they were taken at is searched by binary search, so reaching any position takes
+ * one unpack and at most the moves of a few turns. Going back a little, as when stepping backwards or
+ * scrubbing, undoes moves on the game already reached instead, as far back as the position it was
+ * unpacked at.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public final class Replay {
+    /**
+     * Turns between packed positions unless another number is given
+     */
+    public static final int DEFAULT_EVERY = 4;
+
+    private final StateCodec codec;
+    private final int[] moves;
+    private final int[] turnStarts;
+    private final int[] snapshotMoves;
+    private final int[] snapshotOffsets;
+    private final long[] snapshots;
+    private MagicBakery game;
+    private int position;
+    private int base;
+
+    /**
+     * Plays a game through, packing its position every few turns
+     * @param started Game as it was just after {@link MagicBakery#startGame(List)}, which isn't changed
+     * @param moves Every move played in the game, in order, each turn ending when the player has no actions left
+     * @param every Turns between packed positions
+     * @throws IllegalArgumentException If every is not positive, or the moves continue after the game ended
+     */
+    public Replay(MagicBakery started, List<Move> moves, int every) {
+        if (every < 1)
+            throw new IllegalArgumentException("Packed positions must be at least a turn apart");
+        codec = new StateCodec(started);
+        this.moves = new int[moves.size()];
+        int[] turns = new int[moves.size() + 1];
+        int turnCount = 1;
+        int[] positions = new int[moves.size() / every + 2];
+        int[] offsets = new int[positions.length + 1];
+        long[] packed = new long[positions.length * 16];
+        int count = 0;
+
+        game = started.copy();
+        boolean over = false;
+        for (int i = 0; ; i++) {
+            if (i == turns[turnCount - 1] && (turnCount - 1) % every == 0) {
+                long[] snapshot = codec.encode(game);
+                if (offsets[count] + snapshot.length > packed.length) {
+                    packed = Arrays.copyOf(packed, Math.max(packed.length * 2, offsets[count] + snapshot.length));
+                }
+                System.arraycopy(snapshot, 0, packed, offsets[count], snapshot.length);
+                positions[count] = i;
+                offsets[count + 1] = offsets[count] + snapshot.length;
+                count++;
+            }
+            if (i == moves.size()) break;
+            if (over)
+                throw new IllegalArgumentException("Moves continue after the game ended");
+            Move move = moves.get(i);
+            this.moves[i] = move.encode();
+            game.apply(move);
+            if (game.getActionsRemaining() == 0) {
+                over = game.endTurn();
+                turns[turnCount++] = i + 1;
+            }
+        }
+        turnStarts = Arrays.copyOf(turns, turnCount);
+        snapshotMoves = Arrays.copyOf(positions, count);
+        snapshotOffsets = Arrays.copyOf(offsets, count + 1);
+        snapshots = Arrays.copyOf(packed, offsets[count]);
+        game = null;
+    }
+
+    /**
+     * Makes a replay of an archived game
+     * @param archive Archive holding the game
+     * @param game Number of the game, from 0
+     * @param cards Cards the game was played with
+     * @param every Turns between packed positions
+     * @return Replay at the start of the game
+     * @throws StreamCorruptedException If the game's record is damaged or doesn't play through
+     */
+    public static Replay of(GameArchive archive, int game, CardSet cards, int every) throws StreamCorruptedException {
+        MagicBakery started = new MagicBakery(archive.getSeed(game), cards);
+        started.startGame(archive.getPlayers(game));
+        try {
+            return new Replay(started, archive.getMoves(game), every);
+        } catch (IllegalArgumentException e) {
+            throw new StreamCorruptedException("Archived game " + game + " doesn't play through: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the number of moves in the game
+     * @return Number of moves
+     */
+    public int getMoveCount() {
+        return moves.length;
+    }
+
+    /**
+     * Gets the number of turns played in the game, counting one that was cut short
+     * @return Number of turns
+     */
+    public int getTurnCount() {
+        return moves.length > turnStarts[turnStarts.length - 1] ? turnStarts.length : turnStarts.length - 1;
+    }
+
+    /**
+     * Gets the number of packed positions kept
+     * @return Number of packed positions
+     */
+    public int getSnapshotCount() {
+        return snapshotMoves.length;
+    }
+
+    /**
+     * Gets the number of longs the packed positions take together
+     * @return Number of longs
+     */
+    public int getSnapshotLongs() {
+        return snapshots.length;
+    }
+
+    /**
+     * Gets the number of moves played to reach the current position
+     * @return Position, from 0 at the start of the game to {@link #getMoveCount()} at the end
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Gets the turn the current position is in
+     * @return Turn, from 0
+     */
+    public int getTurn() {
+        int turn = Arrays.binarySearch(turnStarts, position);
+        return turn >= 0 ? turn : -turn - 2;
+    }
+
+    /**
+     * Gets the game in the current position
+     * <br/>
+     * The game is changed by later seeks and steps, so copy it to keep a position.
+     * @return Game in the current position
+     */
+    public MagicBakery getGame() {
+        if (game == null) seek(position);
+        return game;
+    }
+
+    /**
+     * Moves to the start of a turn
+     * @param turn Turn, from 0 up to and including {@link #getTurnCount()}
+     * @return Game at the start of the turn, or at the end of the game for the turn after the last
+     * @throws IndexOutOfBoundsException If there is no such turn
+     */
+    public MagicBakery seekTurn(int turn) {
+        if (turn == getTurnCount()) return seek(moves.length);
+        if (turn < 0 || turn >= turnStarts.length)
+            throw new IndexOutOfBoundsException(turn);
+        return seek(turnStarts[turn]);
+    }
+
+    /**
+     * Moves forwards one move
+     * @return Game after the move
+     * @throws IllegalStateException If the game is at its end
+     */
+    public MagicBakery stepForward() {
+        if (position == moves.length)
+            throw new IllegalStateException("Replay is at the end of the game");
+        return seek(position + 1);
+    }
+
+    /**
+     * Moves backwards one move
+     * @return Game before the move
+     * @throws IllegalStateException If the game is at its start
+     */
+    public MagicBakery stepBack() {
+        if (position == 0)
+            throw new IllegalStateException("Replay is at the start of the game");
+        return seek(position - 1);
+    }
+
+    /**
+     * Moves to the position after a number of moves, undoing moves when it is a little way back, playing
+     * on when it is ahead before the next packed position, and otherwise unpacking the last packed
+     * position before it and playing on from there
+     * @param target Number of moves played, from 0 up to and including {@link #getMoveCount()}
+     * @return Game in the position
+     * @throws IndexOutOfBoundsException If the game has fewer moves
+     */
+    public MagicBakery seek(int target) {
+        if (target < 0 || target > moves.length)
+            throw new IndexOutOfBoundsException(target);
+        int snapshot = Arrays.binarySearch(snapshotMoves, target);
+        if (snapshot < 0) snapshot = -snapshot - 2;
+        boolean undo = target <= position && target >= base && position - target <= target - snapshotMoves[snapshot];
+        boolean playOn = target > position && snapshotMoves[snapshot] <= position;
+        if (game == null || !undo && !playOn) {
+            game = codec.decode(Arrays.copyOfRange(snapshots, snapshotOffsets[snapshot], snapshotOffsets[snapshot + 1]));
+            position = base = snapshotMoves[snapshot];
+        }
+        for (; position > target; position--) {
+            if (Arrays.binarySearch(turnStarts, position) > 0) game.undo();
+            game.undo();
+        }
+        for (; position < target; position++) {
+            game.apply(Move.decode(moves[position]));
+            if (game.getActionsRemaining() == 0) game.endTurn();
+        }
+        return game;
+    }
+}
@@ -0,0 +1,153 @@
+package bakery;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A list of cards compiled into a requirement vector
+ * <br/>
+ * Each distinct card ordinal is stored once together with the number of copies needed, so checking
+ * a hand against a recipe is a short subtract-and-sum with no allocation.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+final class Requirement {
+    private final int[] ordinals;
+    private final int[] amounts;
+    private final int total;
+
+    /**
+     * Compiles a list of cards into a requirement vector
+     * @param cards Cards that are required
+     */
+    Requirement(List<Ingredient> cards) {
+        int[] _ordinals = new int[cards.size()];
+        int[] _amounts = new int[cards.size()];
+        int distinct = 0;
+        for (Ingredient card: cards) {
+            int index = 0;
+            while (index < distinct && _ordinals[index] != card.getOrdinal()) {
+                index++;
+            }
+            if (index == distinct) {
+                _ordinals[distinct++] = card.getOrdinal();
+            }
+            _amounts[index]++;
+        }
+        ordinals = Arrays.copyOf(_ordinals, distinct);
+        amounts = Arrays.copyOf(_amounts, distinct);
+        total = cards.size();
+    }
+
+    /**
+     * Returns the number of required cards a player's hand is missing
+     * @param player Player whose hand is checked
+     * @return Number of required cards not in the hand
+     */
+    int missing(Player player) {
+        int missing = 0;
+        for (int i = 0; i < ordinals.length; i++) {
+            missing += Math.max(0, amounts[i] - player.count(ordinals[i]));
+        }
+        return missing;
+    }
+
+    /**
+     * Returns the number of required cards a player's hand is missing once another requirement has
+     * taken what it can from the hand
+     * @param player Player whose hand is checked
+     * @param before Requirement that is served from the hand first
+     * @return Number of required cards not left in the hand
+     */
+    int missing(Player player, Requirement before) {
+        int missing = 0;
+        for (int i = 0; i < ordinals.length; i++) {
+            int left = Math.max(0, player.count(ordinals[i]) - before.amountOf(ordinals[i]));
+            missing += Math.max(0, amounts[i] - left);
+        }
+        return missing;
+    }
+
+    /**
+     * Returns the number of required cards a list of cards is missing
+     * @param cards Cards that are checked
+     * @return Number of required cards not in the list
+     */
+    int missing(List<Ingredient> cards) {
+        int missing = 0;
+        for (int i = 0; i < ordinals.length; i++) {
+            missing += Math.max(0, amounts[i] - count(cards, ordinals[i]));
+        }
+        return missing;
+    }
+
+    /**
+     * Returns the number of cards with a given ordinal in a list
+     * @param cards Cards to count
+     * @param ordinal Card ordinal to count
+     * @return Number of matching cards
+     */
+    static int count(List<Ingredient> cards, int ordinal) {
+        int count = 0;
+        for (int i = 0, size = cards.size(); i < size; i++) {
+            if (cards.get(i).getOrdinal() == ordinal) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of copies of a card required
+     * @param ordinal Card ordinal
+     * @return Number of copies required, 0 if the card isn't required
+     */
+    int amountOf(int ordinal) {
+        int index = indexOf(ordinal);
+        return index < 0 ? 0 : amounts[index];
+    }
+
+    /**
+     * Returns the index of a card among the distinct required card types
+     * @param ordinal Card ordinal
+     * @return Index of the card type, or -1 if the card isn't required
+     */
+    int indexOf(int ordinal) {
+        for (int i = 0; i < ordinals.length; i++) {
+            if (ordinals[i] == ordinal) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of distinct card types required
+     * @return Number of distinct card types
+     */
+    int distinct() {
+        return ordinals.length;
+    }
+
+    /**
+     * Returns the ordinal of a distinct required card type
+     * @param index Index of the card type
+     * @return Card ordinal
+     */
+    int ordinal(int index) {
+        return ordinals[index];
+    }
+
+    /**
+     * Returns the number of copies of a distinct required card type
+     * @param index Index of the card type
+     * @return Number of copies required
+     */
+    int amount(int index) {
+        return amounts[index];
+    }
+
+    /**
+     * Returns the total number of cards required
+     * @return Total number of cards
+     */
+    int total() {
+        return total;
+    }
+}
@@ -0,0 +1,440 @@
+package bakery;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import bakery.CustomerOrder.CustomerOrderStatus;
+
+/**
+ * Versioned binary format for saved games
+ * <br/>
+ * A save starts with a 16 byte header: the magic number {@code MBKS}, the format version, flags, the
+ * length of the body and a CRC-32 of the body. The body holds everything needed to play on, with
+ * no reference to the card files:
+ * <ul>
+ *     <li>every card used by the game, by name, with the recipe of each layer</li>
+ *     <li>the kind and state of each random stream</li>
+ *     <li>the players and their hands, the current seat and the actions remaining</li>
+ *     <li>the pantry, deck, discard pile and layer stock, in order</li>
+ *     <li>every customer once, followed by the customer deck, active row and inactive customers as
+ *     indexes with a status each</li>
+ * </ul>
+ * Counts are variable-length numbers and cards are written as indexes into the first list, so each
+ * card takes a single byte. Games saved with Java serialization can still be read, and are written in this format when saved again.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public final class SaveFile {
+    /**
+     * Current version of the format, written into every save
+     */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x4D424B53;
+    private static final short SERIAL_MAGIC = (short) 0xACED;
+    private static final int HEADER_BYTES = 16;
+    private static final CustomerOrderStatus[] STATUSES = CustomerOrderStatus.values();
+
+    private static final int LEGACY_RANDOM = 1;
+    private static final int SHARED_RANDOM = 2;
+    private static final int LEGACY_CUSTOMER_RANDOM = 4;
+
+    private SaveFile() {}
+
+    /**
+     * Saves a game to a file, replacing the file if it exists
+     * <br/>
+     * The file is replaced in one step, so it holds either the old save or the new one even after a crash.
+     * @param game Game to save
+     * @param file File to save to
+     * @throws IOException If the file can't be written
+     */
+    public static void write(MagicBakery game, File file) throws IOException {
+        writeAtomically(file.toPath(), toBytes(game));
+    }
+
+    /**
+     * Writes a file by writing a temporary file next to it, waiting for the disk and moving it over the file
+     * @param path File to write
+     * @param bytes Whole content of the file
+     * @throws IOException If the file can't be written
+     */
+    static void writeAtomically(Path path, byte[] bytes) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a game from a file in this format, saved with Java serialization, journaled by {@link Journal}
+     * or checkpointed by {@link Checkpoints}
+     * @param file File to load from
+     * @return Game in the saved position, with no undo history
+     * @throws IOException If the file can't be read or is damaged
+     * @throws ClassNotFoundException If a file saved with Java serialization holds unknown classes
+     */
+    public static MagicBakery read(File file) throws IOException, ClassNotFoundException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        if (bytes.length >= 2 && ByteBuffer.wrap(bytes).getShort() == SERIAL_MAGIC) {
+            try (ObjectInputStream is = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                return (MagicBakery) is.readObject();
+            }
+        }
+        if (Journal.isJournal(bytes)) {
+            return Journal.replay(bytes);
+        }
+        if (Checkpoints.isCheckpoints(bytes)) {
+            return Checkpoints.fromBytes(bytes);
+        }
+        return fromBytes(bytes);
+    }
+
+    /**
+     * Rewrites a game saved with Java serialization in this format
+     * @param from File saved by an earlier version of the game
+     * @param to File to save to, which may be the same file
+     * @throws IOException If either file can't be read or written
+     * @throws ClassNotFoundException If the old file holds unknown classes
+     */
+    public static void importLegacy(File from, File to) throws IOException, ClassNotFoundException {
+        write(read(from), to);
+    }
+
+    /**
+     * Saves a game into an array
+     * @param game Game to save
+     * @return Header and body of the save
+     */
+    public static byte[] toBytes(MagicBakery game) {
+        Writer body = new Writer();
+        writeBody(game, body);
+        int length = body.buffer.position();
+        CRC32 crc = new CRC32();
+        crc.update(body.buffer.array(), 0, length);
+
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + length);
+        out.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0);
+        out.putInt(length).putInt((int) crc.getValue());
+        out.put(body.buffer.array(), 0, length);
+        return out.array();
+    }
+
+    /**
+     * Loads a game saved by {@link #toBytes(MagicBakery)}
+     * @param bytes Header and body of the save
+     * @return Game in the saved position, with no undo history
+     * @throws IOException If the save is damaged or made by a newer version of the format
+     */
+    public static MagicBakery fromBytes(byte[] bytes) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        if (bytes.length < HEADER_BYTES || in.getInt() != MAGIC)
+            throw new StreamCorruptedException("Not a saved game");
+        int version = in.getShort();
+        if (version > VERSION)
+            throw new IOException("Saved game is version " + version + ", this game reads up to version " + VERSION);
+        int flags = in.getShort();
+        if (flags != 0)
+            throw new IOException("Saved game uses features this game doesn't know: " + Integer.toHexString(flags));
+        int length = in.getInt();
+        int checksum = in.getInt();
+        if (length != bytes.length - HEADER_BYTES)
+            throw new StreamCorruptedException("Saved game is truncated");
+        CRC32 crc = new CRC32();
+        crc.update(bytes, HEADER_BYTES, length);
+        if ((int) crc.getValue() != checksum)
+            throw new StreamCorruptedException("Saved game is damaged: checksum doesn't match");
+        in.position(HEADER_BYTES);
+        try {
+            return readBody(in);
+        } catch (BufferUnderflowException e) {
+            throw new StreamCorruptedException("Saved game is truncated");
+        }
+    }
+
+    private static void writeBody(MagicBakery game, Writer out) {
+        // Every card, recipes before the layers made from them
+        Dictionary cards = new Dictionary();
+        List<Player> players = (List<Player>) game.getPlayers();
+        for (int list = MagicBakery.PANTRY; list <= MagicBakery.LAYERS; list++) {
+            cards.addAll(game.list(list));
+        }
+        for (Player player: players) {
+            cards.addAll(player.getHand());
+        }
+        List<CustomerOrder> roster = new ArrayList<>();
+        Map<String, Integer> rosterIndexes = new HashMap<>();
+        Customers customers = game.getCustomers();
+        if (customers != null) {
+            addOrders(customers.getCustomerDeck(), roster, rosterIndexes);
+            addOrders(customers.getActiveCustomers(), roster, rosterIndexes);
+            addOrders(customers.getInactiveCustomers(), roster, rosterIndexes);
+            for (CustomerOrder customerOrder: roster) {
+                cards.addAll(customerOrder.getRecipe());
+                cards.addAll(customerOrder.getGarnish());
+            }
+        }
+        out.count(cards.list.size());
+        for (Ingredient card: cards.list) {
+            out.string(card.getName());
+            out.buffer.put((byte) (card instanceof Layer ? 1 : 0));
+            if (card instanceof Layer) {
+                writeCards(out, ((Layer) card).getRecipe(), cards);
+            }
+        }
+
+        GameRandom random = game.getRandom(false);
+        GameRandom customerRandom = game.getRandom(true);
+        int kind = (random.isLegacy() ? LEGACY_RANDOM : 0) | (customerRandom.isLegacy() ? LEGACY_CUSTOMER_RANDOM : 0);
+        out.ensure(2 * Long.BYTES + 1);
+        out.buffer.put((byte) (random == customerRandom ? kind | SHARED_RANDOM : kind));
+        out.buffer.putLong(random.getState());
+        if (random != customerRandom) {
+            out.buffer.putLong(customerRandom.getState());
+        }
+
+        out.count(players.size());
+        out.count(players.isEmpty() ? 0 : game.getSeat());
+        out.count(game.getActionsRemaining());
+        for (Player player: players) {
+            out.string(player.toString());
+            out.count(player.getHandSize());
+            for (Ingredient card: cards.list) {
+                for (int i = player.count(card.getOrdinal()); i > 0; i--) {
+                    out.count(cards.indexOf(card));
+                }
+            }
+        }
+        for (int list = MagicBakery.PANTRY; list <= MagicBakery.LAYERS; list++) {
+            writeCards(out, game.list(list), cards);
+        }
+
+        out.count(customers == null ? 0 : 1);
+        if (customers == null) return;
+        out.count(roster.size());
+        for (CustomerOrder customerOrder: roster) {
+            out.string(customerOrder.toString());
+            out.count(customerOrder.getLevel());
+            writeCards(out, customerOrder.getRecipe(), cards);
+            writeCards(out, customerOrder.getGarnish(), cards);
+        }
+        writeOrders(out, customers.getCustomerDeck(), rosterIndexes);
+        writeOrders(out, customers.getActiveCustomers(), rosterIndexes);
+        writeOrders(out, customers.getInactiveCustomers(), rosterIndexes);
+    }
+
+    private static MagicBakery readBody(ByteBuffer in) throws StreamCorruptedException {
+        List<Ingredient> cards = new ArrayList<>();
+        for (int i = readCount(in); i > 0; i--) {
+            String name = readString(in);
+            cards.add(in.get() != 0 ? CardCatalog.layer(name, readCards(in, cards)) : CardCatalog.ingredient(name));
+        }
+
+        int kind = in.get();
+        GameRandom random = stream((kind & LEGACY_RANDOM) != 0, in.getLong());
+        GameRandom customerRandom = (kind & SHARED_RANDOM) != 0
+                ? random : stream((kind & LEGACY_CUSTOMER_RANDOM) != 0, in.getLong());
+
+        int players = readCount(in);
+        int seat = readCount(in);
+        int actions = readCount(in);
+        if (players > 0 && seat >= players)
+            throw new StreamCorruptedException("Saved game has no player in seat " + seat);
+        List<Player> hands = new ArrayList<>(players);
+        for (int i = 0; i < players; i++) {
+            Player player = new Player(readString(in));
+            player.addToHand(readCards(in, cards));
+            hands.add(player);
+        }
+        List<List<Ingredient>> piles = new ArrayList<>();
+        for (int list = MagicBakery.PANTRY; list <= MagicBakery.LAYERS; list++) {
+            piles.add(readCards(in, cards));
+        }
+
+        Customers customers = null;
+        if (readCount(in) != 0) {
+            CustomerOrder[] roster = new CustomerOrder[readCount(in)];
+            for (int i = 0; i < roster.length; i++) {
+                String name = readString(in);
+                int level = readCount(in);
+                roster[i] = new CustomerOrder(name, readCards(in, cards), readCards(in, cards), level);
+            }
+            List<CustomerOrder> deck = readOrders(in, roster);
+            List<CustomerOrder> active = readOrders(in, roster);
+            customers = new Customers(active, deck, readOrders(in, roster));
+        }
+
+        MagicBakery game = new MagicBakery(random, customerRandom);
+        game.setPosition(hands, seat, actions, piles, customers, random.getState(), customerRandom.getState());
+        return game;
+    }
+
+    static GameRandom stream(boolean legacy, long state) {
+        GameRandom random = legacy ? GameRandom.legacy(0) : GameRandom.seeded(0);
+        random.setState(state);
+        return random;
+    }
+
+    private static void addOrders(Collection<CustomerOrder> source, List<CustomerOrder> roster, Map<String, Integer> rosterIndexes) {
+        for (CustomerOrder customerOrder: source) {
+            if (customerOrder != null && rosterIndexes.putIfAbsent(customerOrder.toString(), roster.size()) == null) {
+                roster.add(customerOrder);
+            }
+        }
+    }
+
+    private static void writeCards(Writer out, Collection<? extends Ingredient> source, Dictionary cards) {
+        out.count(source.size());
+        for (Ingredient card: source) {
+            out.count(cards.indexOf(card));
+        }
+    }
+
+    private static List<Ingredient> readCards(ByteBuffer in, List<Ingredient> cards) throws StreamCorruptedException {
+        int size = readCount(in);
+        if (size > in.remaining())
+            throw new StreamCorruptedException("Saved game is truncated");
+        List<Ingredient> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int index = readCount(in);
+            if (index >= cards.size())
+                throw new StreamCorruptedException("Saved game refers to unknown card " + index);
+            result.add(cards.get(index));
+        }
+        return result;
+    }
+
+    private static void writeOrders(Writer out, Collection<CustomerOrder> customerOrders, Map<String, Integer> rosterIndexes) {
+        out.count(customerOrders.size());
+        for (CustomerOrder customerOrder: customerOrders) {
+            out.count(customerOrder == null ? 0 : rosterIndexes.get(customerOrder.toString()) + 1);
+            if (customerOrder != null) {
+                out.count(customerOrder.getStatus().ordinal());
+            }
+        }
+    }
+
+    private static List<CustomerOrder> readOrders(ByteBuffer in, CustomerOrder[] roster) throws StreamCorruptedException {
+        int size = readCount(in);
+        if (size > in.remaining())
+            throw new StreamCorruptedException("Saved game is truncated");
+        List<CustomerOrder> customerOrders = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int index = readCount(in);
+            if (index == 0) {
+                customerOrders.add(null);
+                continue;
+            }
+            if (index > roster.length)
+                throw new StreamCorruptedException("Saved game refers to unknown customer " + index);
+            int status = readCount(in);
+            if (status >= STATUSES.length)
+                throw new StreamCorruptedException("Saved game has unknown customer status " + status);
+            CustomerOrder customerOrder = new CustomerOrder(roster[index - 1]);
+            customerOrder.setStatus(STATUSES[status]);
+            customerOrders.add(customerOrder);
+        }
+        return customerOrders;
+    }
+
+    static int readCount(ByteBuffer in) throws StreamCorruptedException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new StreamCorruptedException("Saved game has a malformed number");
+    }
+
+    private static String readString(ByteBuffer in) throws StreamCorruptedException {
+        int length = readCount(in);
+        if (length > in.remaining())
+            throw new StreamCorruptedException("Saved game is truncated");
+        String string = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return string;
+    }
+
+    /**
+     * Cards of a game in the order they are written, each with its index
+     */
+    private static final class Dictionary {
+        private final List<Ingredient> list = new ArrayList<>();
+        private int[] indexes = new int[0];
+
+        private void addAll(Collection<? extends Ingredient> cards) {
+            for (Ingredient card: cards) {
+                int ordinal = card.getOrdinal();
+                if (ordinal < indexes.length && indexes[ordinal] != 0) continue;
+                if (card instanceof Layer) {
+                    addAll(((Layer) card).getRecipe());
+                }
+                if (ordinal >= indexes.length) {
+                    indexes = Arrays.copyOf(indexes, Math.max(ordinal + 1, CardCatalog.size()));
+                }
+                list.add(card);
+                indexes[ordinal] = list.size();
+            }
+        }
+
+        private int indexOf(Ingredient card) {
+            return indexes[card.getOrdinal()] - 1;
+        }
+    }
+
+    /**
+     * Growing buffer for the body of a save, with counts and indexes as variable-length numbers
+     * that take a single byte below 128
+     */
+    static final class Writer {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+        void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                buffer = larger.put(buffer);
+            }
+        }
+
+        void count(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) (value & 0x7F | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void string(String string) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            count(bytes.length);
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package bakery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import bakery.CustomerOrder.CustomerOrderStatus;
+
+/**
+ * Packs the positions of a game into a few longs and unpacks them again
+ * <br/>
+ * A codec is made from one started game and works for every position of that game and of its
+ * copies. Everything that doesn't change during the game, such as player names, recipes and which
+ * customers take part, comes from that game. The rest is packed into a bit stream:
+ * <ul>
+ *     <li>the current seat, the actions remaining and the state of each random stream</li>
+ *     <li>the pantry, deck, discard pile and layer stock as card ordinals, in order</li>
+ *     <li>each hand as card ordinals, in ordinal order</li>
+ *     <li>the customer deck, active row and inactive customers as indexes into the game's
+ *     customers, each with its status</li>
+ * </ul>
+ * Every field takes only as many bits as the game needs, so a position of a game with the
+ * standard cards packs into about 80 bytes. Two equal positions always pack into equal arrays.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public final class StateCodec {
+    private static final CustomerOrderStatus[] STATUSES = CustomerOrderStatus.values();
+    private static final int STATUS_BITS = bits(STATUSES.length - 1);
+    private static final int ACTION_BITS = 3;
+
+    private final MagicBakery template;
+    private final int players;
+    private final int ordinalBits;
+    private final int lengthBits;
+    private final int seatBits;
+    private final boolean sharedRandom;
+    private final CustomerOrder[] roster;
+    private final Map<String, Integer> rosterIndexes = new HashMap<>();
+    private final int rosterBits;
+
+    /**
+     * Initialises a StateCodec for a game
+     * @param game Started game, kept as the template that decoded positions are built from
+     */
+    public StateCodec(MagicBakery game) {
+        if (game.getCustomers() == null)
+            throw new IllegalStateException("Game has not started");
+        template = game.copy();
+        players = game.getPlayers().size();
+        seatBits = bits(players - 1);
+        ordinalBits = bits(CardCatalog.size() - 1);
+        int cards = 0;
+        for (int list = MagicBakery.PANTRY; list <= MagicBakery.LAYERS; list++) {
+            cards += game.list(list).size();
+        }
+        for (Player player: game.getPlayers()) {
+            cards += player.getHandSize();
+        }
+        lengthBits = bits(cards);
+        sharedRandom = game.getRandom(true) == game.getRandom(false);
+
+        Customers customers = game.getCustomers();
+        List<CustomerOrder> orders = new ArrayList<>(customers.getCustomerDeck());
+        orders.addAll(customers.getInactiveCustomers());
+        for (CustomerOrder customerOrder: customers.getActiveCustomers()) {
+            if (customerOrder != null) orders.add(customerOrder);
+        }
+        orders.sort(Comparator.comparingInt(CustomerOrder::getLevel).thenComparing(CustomerOrder::toString));
+        roster = orders.toArray(new CustomerOrder[0]);
+        for (int i = roster.length - 1; i >= 0; i--) {
+            rosterIndexes.put(roster[i].toString(), i);
+        }
+        rosterBits = bits(roster.length);
+    }
+
+    /**
+     * Packs the position of a game
+     * @param game Game made by the same cards and players as this codec's game
+     * @return Packed position
+     * @throws IllegalArgumentException If the game doesn't fit this codec
+     */
+    public long[] encode(MagicBakery game) {
+        if (game.getPlayers().size() != players)
+            throw new IllegalArgumentException("Game has " + game.getPlayers().size() + " players, expected " + players);
+        BitWriter out = new BitWriter();
+        out.write(game.getSeat(), seatBits);
+        out.write(game.getActionsRemaining(), ACTION_BITS);
+        out.write(game.getRandom(false).getState(), 64);
+        if (!sharedRandom) {
+            out.write(game.getRandom(true).getState(), 64);
+        }
+        for (int list = MagicBakery.PANTRY; list <= MagicBakery.LAYERS; list++) {
+            List<Ingredient> cards = game.list(list);
+            out.write(cards.size(), lengthBits);
+            for (Ingredient card: cards) {
+                out.write(ordinal(card), ordinalBits);
+            }
+        }
+        for (Player player: game.getPlayers()) {
+            out.write(player.getHandSize(), lengthBits);
+            for (int ordinal = 0; ordinal < CardCatalog.size(); ordinal++) {
+                for (int i = player.count(ordinal); i > 0; i--) {
+                    out.write(ordinal(CardCatalog.get(ordinal)), ordinalBits);
+                }
+            }
+        }
+        Customers customers = game.getCustomers();
+        writeOrders(out, customers.getCustomerDeck());
+        for (CustomerOrder customerOrder: customers.getActiveCustomers()) {
+            writeOrder(out, customerOrder);
+        }
+        writeOrders(out, customers.getInactiveCustomers());
+        return out.toArray();
+    }
+
+    /**
+     * Unpacks a position into a new game
+     * <br/>
+     * The new game plays on exactly like the game the position was packed from, but has no undo history.
+     * @param packed Position packed by {@link #encode(MagicBakery)}
+     * @return New game in the packed position
+     */
+    public MagicBakery decode(long[] packed) {
+        BitReader in = new BitReader(packed);
+        int seat = (int) in.read(seatBits);
+        int actions = (int) in.read(ACTION_BITS);
+        long randomState = in.read(64);
+        long customerRandomState = sharedRandom ? randomState : in.read(64);
+        List<List<Ingredient>> piles = new ArrayList<>();
+        for (int list = MagicBakery.PANTRY; list <= MagicBakery.LAYERS; list++) {
+            int size = (int) in.read(lengthBits);
+            List<Ingredient> cards = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                cards.add(card(in));
+            }
+            piles.add(cards);
+        }
+        List<Player> hands = new ArrayList<>(players);
+        for (Player player: template.getPlayers()) {
+            Player hand = new Player(player.toString());
+            for (int i = (int) in.read(lengthBits); i > 0; i--) {
+                hand.addToHand(card(in));
+            }
+            hands.add(hand);
+        }
+        List<CustomerOrder> deck = readOrders(in);
+        List<CustomerOrder> active = new ArrayList<>(3);
+        for (int slot = 0; slot < 3; slot++) {
+            active.add(readOrder(in));
+        }
+        List<CustomerOrder> inactive = readOrders(in);
+
+        MagicBakery game = template.copy();
+        game.setPosition(hands, seat, actions, piles, new Customers(active, deck, inactive), randomState, customerRandomState);
+        return game;
+    }
+
+    private int ordinal(Ingredient card) {
+        int ordinal = card.getOrdinal();
+        if (ordinal >= 1 << ordinalBits)
+            throw new IllegalArgumentException(card + " was not known when the codec was made");
+        return ordinal;
+    }
+
+    private Ingredient card(BitReader in) {
+        return CardCatalog.get((int) in.read(ordinalBits));
+    }
+
+    private void writeOrders(BitWriter out, Collection<CustomerOrder> customerOrders) {
+        out.write(customerOrders.size(), lengthBits);
+        for (CustomerOrder customerOrder: customerOrders) {
+            writeOrder(out, customerOrder);
+        }
+    }
+
+    private void writeOrder(BitWriter out, CustomerOrder customerOrder) {
+        if (customerOrder == null) {
+            out.write(0, rosterBits + STATUS_BITS);
+            return;
+        }
+        Integer index = rosterIndexes.get(customerOrder.toString());
+        if (index == null)
+            throw new IllegalArgumentException(customerOrder + " is not a customer of this game");
+        out.write(index + 1, rosterBits);
+        out.write(customerOrder.getStatus().ordinal(), STATUS_BITS);
+    }
+
+    private List<CustomerOrder> readOrders(BitReader in) {
+        int size = (int) in.read(lengthBits);
+        List<CustomerOrder> customerOrders = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            customerOrders.add(readOrder(in));
+        }
+        return customerOrders;
+    }
+
+    private CustomerOrder readOrder(BitReader in) {
+        int index = (int) in.read(rosterBits);
+        CustomerOrderStatus status = STATUSES[(int) in.read(STATUS_BITS)];
+        if (index == 0) return null;
+        CustomerOrder customerOrder = new CustomerOrder(roster[index - 1]);
+        customerOrder.setStatus(status);
+        return customerOrder;
+    }
+
+    /**
+     * Gets the number of bits needed to hold values up to a maximum
+     */
+    private static int bits(int max) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(max));
+    }
+
+    /**
+     * Appends fields of any width to a growing array of longs, lowest bits first
+     */
+    private static final class BitWriter {
+        private long[] words = new long[8];
+        private int position;
+
+        private void write(long value, int bits) {
+            int word = position >>> 6;
+            int offset = position & 63;
+            if (word + 1 >= words.length) {
+                words = Arrays.copyOf(words, words.length * 2);
+            }
+            if (bits < 64) {
+                value &= (1L << bits) - 1;
+            }
+            words[word] |= value << offset;
+            if (offset + bits > 64) {
+                words[word + 1] |= value >>> (64 - offset);
+            }
+            position += bits;
+        }
+
+        private long[] toArray() {
+            return Arrays.copyOf(words, (position + 63) >>> 6);
+        }
+    }
+
+    /**
+     * Reads fields back in the order a {@link BitWriter} wrote them
+     */
+    private static final class BitReader {
+        private final long[] words;
+        private int position;
+
+        private BitReader(long[] words) {
+            this.words = words;
+        }
+
+        private long read(int bits) {
+            int word = position >>> 6;
+            int offset = position & 63;
+            long value = words[word] >>> offset;
+            if (offset + bits > 64) {
+                value |= words[word + 1] << (64 - offset);
+            }
+            position += bits;
+            return bits == 64 ? value : value & (1L << bits) - 1;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package bakery;
+
+import java.util.Arrays;
+
+/**
+ * Trail of the changes made by each game operation, so that operations can be undone in reverse order
+ * <br/>
+ * Every change is packed into a single long holding its kind and two small arguments. The few
+ * changes that need more, such as the contents of a list before it was cleared, also push a
+ * reference. A mark separates the changes of one operation from those of the one before it. The mark
+ * is only written when the operation records its first change, so operations that fail before
+ * changing anything leave no trace.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+final class UndoLog {
+    static final int MARK = 0;
+    static final int ACTIONS = 1;
+    static final int CURRENT_PLAYER = 2;
+    static final int HAND_ADD = 3;
+    static final int HAND_REMOVE = 4;
+    static final int LIST_TRUNCATE = 5;
+    static final int LIST_INSERT = 6;
+    static final int LIST_RESTORE = 7;
+    static final int RANDOM = 8;
+    static final int CUSTOMERS = 9;
+
+    private long[] entries = new long[64];
+    private int size;
+    private Object[] refs = new Object[8];
+    private int refSize;
+    private int operations;
+    private boolean pending;
+
+    /**
+     * Starts a new operation
+     */
+    void begin() {
+        pending = true;
+    }
+
+    /**
+     * Records a change of the current operation
+     * @param kind Kind of change
+     * @param a First argument, at most 24 bits
+     * @param b Second argument
+     */
+    void push(int kind, int a, int b) {
+        open();
+        add(kind | (long) a << 8 | (long) b << 32);
+    }
+
+    /**
+     * Records a change that also needs a reference
+     * @param kind Kind of change
+     * @param a First argument, at most 24 bits
+     * @param ref Reference needed to undo the change
+     */
+    void push(int kind, int a, Object ref) {
+        if (refSize == refs.length) {
+            refs = Arrays.copyOf(refs, refSize * 2);
+        }
+        refs[refSize++] = ref;
+        push(kind, a, 0);
+    }
+
+    /**
+     * Records a change that also needs a full long, such as a random stream state
+     * @param kind Kind of change
+     * @param value Value needed to undo the change
+     */
+    void push(int kind, long value) {
+        open();
+        add(value);
+        add(kind);
+    }
+
+    private void open() {
+        if (pending) {
+            pending = false;
+            operations++;
+            add(MARK);
+        }
+    }
+
+    private void add(long entry) {
+        if (size == entries.length) {
+            entries = Arrays.copyOf(entries, size * 2);
+        }
+        entries[size++] = entry;
+    }
+
+    /**
+     * Removes the most recent change, returning {@link #MARK} once an operation has been fully popped
+     * @return Packed change
+     */
+    long pop() {
+        long entry = entries[--size];
+        if (kind(entry) == MARK) operations--;
+        return entry;
+    }
+
+    /**
+     * Removes the value pushed with the most recent change
+     * @return Value of the change
+     */
+    long popValue() {
+        return entries[--size];
+    }
+
+    /**
+     * Removes the reference pushed with the most recent change
+     * @return Reference of the change
+     */
+    Object popRef() {
+        Object ref = refs[--refSize];
+        refs[refSize] = null;
+        return ref;
+    }
+
+    /**
+     * Gets the number of operations that can be undone
+     * @return Number of operations
+     */
+    int operations() {
+        return operations;
+    }
+
+    /**
+     * Forgets every recorded operation
+     */
+    void clear() {
+        size = 0;
+        Arrays.fill(refs, 0, refSize, null);
+        refSize = 0;
+        operations = 0;
+        pending = false;
+    }
+
+    static int kind(long entry) {
+        return (int) entry & 0xFF;
+    }
+
+    static int a(long entry) {
+        return (int) (entry >>> 8) & 0xFFFFFF;
+    }
+
+    static int b(long entry) {
+        return (int) (entry >>> 32);
+    }
+}
@@ -0,0 +1,63 @@
+package bakery;
+
+/**
+ * Zobrist keys for the features of a game position
+ * <br/>
+ * The hash of a position is the XOR of the keys of all its features, so a change to one feature
+ * updates the hash with two XORs: one to remove the old key and one to add the new one. Keys are
+ * derived from the feature with the SplitMix64 finaliser rather than read from a table, so there is
+ * no limit on the number of players, cards or copies of a card. A multiset of cards contributes one
+ * key per card type, chosen by how many copies there are, and nothing for card types with no copies.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+final class Zobrist {
+    static final int TURN = 16;
+    static final int CUSTOMER = 17;
+
+    private Zobrist() {}
+
+    /**
+     * Gets the key of holding a number of copies of a card
+     * @param place Pile or hand holding the cards
+     * @param owner Seat of the player holding the cards, or 0 for shared piles
+     * @param ordinal Ordinal of the card
+     * @param count Number of copies held
+     * @return Key, 0 if there are no copies
+     */
+    static long card(int place, int owner, int ordinal, int count) {
+        return count == 0 ? 0 : key(place, owner, ordinal, count);
+    }
+
+    /**
+     * Gets the key of whose turn it is and how many actions they have left
+     * @param seat Seat of the current player
+     * @param actions Actions remaining
+     * @return Key
+     */
+    static long turn(int seat, int actions) {
+        return key(TURN, seat, actions, 0);
+    }
+
+    /**
+     * Gets the key of an active customer
+     * @param slot Slot of the customer in the active row
+     * @param customerOrder Customer in the slot
+     * @return Key, 0 for an empty slot
+     */
+    static long customer(int slot, CustomerOrder customerOrder) {
+        if (customerOrder == null) return 0;
+        return key(CUSTOMER, slot, customerOrder.toString().hashCode(), customerOrder.getStatus().ordinal());
+    }
+
+    private static long key(int feature, int a, int b, int c) {
+        return mix(mix((long) feature << 32 | a & 0xFFFFFFFFL) + ((long) b << 32 | c & 0xFFFFFFFFL));
+    }
+
+    private static long mix(long z) {
+        z += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,144 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import bakery.ArchiveWriter;
+import bakery.CardSet;
+import bakery.CustomerOrder.CustomerOrderStatus;
+import bakery.Customers;
+import bakery.GameArchive;
+import bakery.MagicBakery;
+import sim.GameResult;
+import sim.GameRunner;
+import sim.RandomStrategy;
+
+/**
+ * Benchmark comparing a {@link GameArchive} against a save file per game, after checking that archived
+ * games keep their outcomes and replay to them
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public class ArchiveBenchmark {
+    private static final int GAMES = 20_000;
+    private static final int FILES = 2_000;
+    private static final int REPLAYED = 2_000;
+    private static final int FETCHES = 100_000;
+
+    private ArchiveBenchmark() {}
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        CardSet cards = CardSet.load("io/ingredients.csv", "io/layers.csv", "io/customers.csv");
+        List<String> playerNames = List.of("Player 1", "Player 2", "Player 3");
+        File file = File.createTempFile("bakery", ".archive");
+        file.deleteOnExit();
+        File directory = Files.createTempDirectory("bakery").toFile();
+        directory.deleteOnExit();
+
+        // The same games archived, and the first few also saved a file each
+        List<GameResult> results = new ArrayList<>();
+        try (ArchiveWriter archive = ArchiveWriter.create(file)) {
+            for (int game = 0; game < GAMES; game++) {
+                results.add(GameRunner.play(game, cards, playerNames, List.of(new RandomStrategy(new Random(~game))), archive));
+            }
+        }
+        long saveBytes = 0;
+        for (int game = 0; game < FILES; game++) {
+            MagicBakery bakery = new MagicBakery(game, cards);
+            bakery.startGame(playerNames);
+            GameRunner.play(bakery, List.of(new RandomStrategy(new Random(~game))));
+            File save = saveFile(directory, game);
+            save.deleteOnExit();
+            bakery.saveState(save);
+            saveBytes += save.length();
+        }
+
+        GameArchive archive = GameArchive.open(file);
+        for (int game = 0; game < GAMES; game++) {
+            GameResult result = results.get(game);
+            if (archive.getFulfilled(game) != result.getFulfilled() || archive.getGarnished(game) != result.getGarnished()
+                    || archive.getGivenUp(game) != result.getGivenUp() || archive.getSeed(game) != game
+                    || !archive.getPlayers(game).equals(playerNames)) {
+                throw new IllegalStateException("Archived game " + game + " doesn't match the game played");
+            }
+        }
+        for (int game = 0; game < GAMES; game += GAMES / REPLAYED) {
+            Customers customers = archive.replay(game, cards).getCustomers();
+            if (customers.countInactiveCustomersWithStatus(CustomerOrderStatus.GIVEN_UP) != archive.getGivenUp(game)
+                    || customers.countInactiveCustomersWithStatus(CustomerOrderStatus.FULFILLED) != archive.getFulfilled(game)) {
+                throw new IllegalStateException("Archived game " + game + " replays to a different outcome");
+            }
+        }
+
+        long sum = 0;
+        for (int warmup = 0; warmup < 5; warmup++) {
+            sum += scanArchive(archive) + scanFiles(directory);
+        }
+        long start = System.nanoTime();
+        for (int round = 0; round < 10; round++) {
+            sum += scanArchive(GameArchive.open(file));
+        }
+        double archiveScan = (System.nanoTime() - start) / (10.0 * GAMES);
+        start = System.nanoTime();
+        sum += scanFiles(directory);
+        double fileScan = (double) (System.nanoTime() - start) / FILES;
+
+        SplittableRandom random = new SplittableRandom(123);
+        double archiveFetch = 0;
+        double fileFetch = 0;
+        for (int round = 0; round < 3; round++) {
+            start = System.nanoTime();
+            for (int i = 0; i < FETCHES; i++) {
+                int game = random.nextInt(GAMES);
+                sum += archive.getPlayers(game).size() + archive.getMoves(game).size();
+            }
+            archiveFetch = (double) (System.nanoTime() - start) / FETCHES;
+            start = System.nanoTime();
+            for (int i = 0; i < FILES; i++) {
+                sum += MagicBakery.loadState(saveFile(directory, random.nextInt(FILES))).getActionsRemaining();
+            }
+            fileFetch = (double) (System.nanoTime() - start) / FILES;
+        }
+        if (sum == 42) System.out.println();
+
+        System.out.printf("%d games archived with their outcomes, %d replayed to the same outcome%n", GAMES, REPLAYED);
+        System.out.printf("Archive:       %4.0f bytes/game with every move, scan outcomes %8.0f ns/game, fetch a game %8.0f ns%n",
+                (double) file.length() / GAMES, archiveScan, archiveFetch);
+        System.out.printf("File per game: %4.0f bytes/game, final position, scan outcomes %8.0f ns/game, load a game  %8.0f ns%n",
+                (double) saveBytes / FILES, fileScan, fileFetch);
+    }
+
+    /**
+     * Adds up the outcomes of every archived game
+     */
+    private static long scanArchive(GameArchive archive) {
+        long sum = 0;
+        for (int game = 0; game < archive.size(); game++) {
+            sum += archive.getFulfilled(game) + archive.getGarnished(game) + archive.getGivenUp(game);
+        }
+        return sum;
+    }
+
+    /**
+     * Adds up the outcomes of every game saved a file each
+     */
+    private static long scanFiles(File directory) throws IOException, ClassNotFoundException {
+        long sum = 0;
+        for (int game = 0; game < FILES; game++) {
+            Customers customers = MagicBakery.loadState(saveFile(directory, game)).getCustomers();
+            for (CustomerOrderStatus status: List.of(CustomerOrderStatus.FULFILLED, CustomerOrderStatus.GARNISHED, CustomerOrderStatus.GIVEN_UP)) {
+                sum += customers.countInactiveCustomersWithStatus(status);
+            }
+        }
+        return sum;
+    }
+
+    private static File saveFile(File directory, int game) {
+        return new File(directory, "game" + game + ".save");
+    }
+}
@@ -0,0 +1,144 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import bakery.ArchiveQuery;
+import bakery.ArchiveQuery.Column;
+import bakery.ArchiveWriter;
+import bakery.CardSet;
+import bakery.CustomerOrder;
+import bakery.CustomerOrder.CustomerOrderStatus;
+import bakery.GameArchive;
+import bakery.MagicBakery;
+import bakery.Move;
+import sim.RandomStrategy;
+
+/**
+ * Benchmark of {@link ArchiveQuery} answering questions about archived games from the archive's
+ * indexes, after checking its answers against the games as they were played, and against answering
+ * the same question by replaying the games
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public class ArchiveQueryBenchmark {
+    private static final int GAMES = 50_000;
+    private static final int REPLAYED = 500;
+    private static final String CUSTOMER = "showstopper cake (2 tiered)";
+    private static final int ROUNDS = 20;
+
+    private ArchiveQueryBenchmark() {}
+
+    public static void main(String[] args) throws IOException {
+        CardSet cards = CardSet.load("io/ingredients.csv", "io/layers.csv", "io/customers.csv");
+        File file = File.createTempFile("bakery", ".archive");
+        file.deleteOnExit();
+
+        // Answers gathered from the games as they are played
+        List<Integer> givenUp = new ArrayList<>();
+        long fourPlayerTurns = 0;
+        int fourPlayerGames = 0;
+        long ducks = 0;
+        int happyFive = 0;
+        try (ArchiveWriter writer = ArchiveWriter.create(file)) {
+            for (int game = 0; game < GAMES; game++) {
+                int players = 2 + game % 4;
+                List<String> names = new ArrayList<>();
+                for (int seat = 1; seat <= players; seat++) {
+                    names.add("Player " + seat);
+                }
+                MagicBakery bakery = new MagicBakery(game, cards);
+                bakery.startGame(names);
+                RandomStrategy strategy = new RandomStrategy(new Random(~game));
+                List<Move> moves = new ArrayList<>();
+                int turns = 0;
+                boolean over = false;
+                while (!over) {
+                    while (bakery.getActionsRemaining() != 0) {
+                        Move move = strategy.chooseMove(bakery);
+                        bakery.apply(move);
+                        moves.add(move);
+                    }
+                    over = bakery.endTurn();
+                    turns++;
+                }
+                writer.add(game, bakery, moves);
+
+                for (CustomerOrder customer: bakery.getCustomers().getInactiveCustomersWithStatus(CustomerOrderStatus.GIVEN_UP)) {
+                    if (customer.toString().equals(CUSTOMER)) {
+                        givenUp.add(game);
+                        break;
+                    }
+                }
+                for (CustomerOrder customer: bakery.getCustomers().getInactiveCustomersWithStatus(CustomerOrderStatus.GARNISHED)) {
+                    ducks += customer.getGarnishDucks();
+                }
+                if (players == 4) {
+                    fourPlayerTurns += turns;
+                    fourPlayerGames++;
+                }
+                if (bakery.getCustomers().countInactiveCustomersWithStatus(CustomerOrderStatus.FULFILLED)
+                        + bakery.getCustomers().countInactiveCustomersWithStatus(CustomerOrderStatus.GARNISHED) == 5) {
+                    happyFive++;
+                }
+            }
+        }
+
+        GameArchive archive = GameArchive.open(file);
+        ArchiveQuery all = ArchiveQuery.all(archive);
+        int[] expected = givenUp.stream().mapToInt(Integer::intValue).toArray();
+        if (!Arrays.equals(all.withCustomer(CUSTOMER, CustomerOrderStatus.GIVEN_UP).games(), expected))
+            throw new IllegalStateException("Query finds different games where the customer gave up");
+        if (all.withPlayers(4).count() != fourPlayerGames || all.withPlayers(4).sum(Column.TURNS) != fourPlayerTurns)
+            throw new IllegalStateException("Query finds different turns for four players");
+        if (all.sum(Column.GARNISH_DUCKS) != ducks)
+            throw new IllegalStateException("Query finds a different number of ducks used as garnish");
+        if (all.withHappy(5).count() != happyFive)
+            throw new IllegalStateException("Query finds a different number of games with five happy customers");
+        for (int game = 0; game < GAMES; game += 997) {
+            if (!Arrays.equals(all.withSeed(game).games(), new int[] {game}))
+                throw new IllegalStateException("Query doesn't find game " + game + " by its seed");
+        }
+
+        // Best of a few rounds of each query, opening the archive every time
+        double[] best = new double[4];
+        Arrays.fill(best, Double.MAX_VALUE);
+        long sum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            ArchiveQuery query = ArchiveQuery.all(GameArchive.open(file));
+            sum += query.withCustomer(CUSTOMER, CustomerOrderStatus.GIVEN_UP).count();
+            best[0] = Math.min(best[0], (System.nanoTime() - start) / 1e6);
+            start = System.nanoTime();
+            sum += (long) query.withPlayers(4).average(Column.TURNS);
+            best[1] = Math.min(best[1], (System.nanoTime() - start) / 1e6);
+            start = System.nanoTime();
+            sum += query.sum(Column.GARNISH_DUCKS);
+            best[2] = Math.min(best[2], (System.nanoTime() - start) / 1e6);
+            start = System.nanoTime();
+            sum += query.withPlayers(3).withHappy(1).withCustomer(CUSTOMER, CustomerOrderStatus.GIVEN_UP).count();
+            best[3] = Math.min(best[3], (System.nanoTime() - start) / 1e6);
+        }
+
+        // The first question answered by replaying a sample of the games
+        long start = System.nanoTime();
+        for (int game = 0; game < REPLAYED; game++) {
+            sum += archive.replay(game, cards).getCustomers().getInactiveCustomersWithStatus(CustomerOrderStatus.GIVEN_UP).size();
+        }
+        double replay = (System.nanoTime() - start) / 1e6 * GAMES / REPLAYED;
+        if (sum == 42) System.out.println();
+
+        System.out.printf("%d games archived, %d bytes/game with indexes, every answer matching the games played%n",
+                GAMES, file.length() / GAMES);
+        System.out.printf("Games where %s gave up:      %6d in %7.2f ms, including opening the archive%n", CUSTOMER, expected.length, best[0]);
+        System.out.printf("Average turns with 4 players:                       %6.1f in %7.2f ms%n", (double) fourPlayerTurns / fourPlayerGames, best[1]);
+        System.out.printf("Ducks used as garnish:                              %6d in %7.2f ms%n", ducks, best[2]);
+        System.out.printf("3 players, 1 happy and the showstopper gave up:     %6d in %7.2f ms%n",
+                all.withPlayers(3).withHappy(1).withCustomer(CUSTOMER, CustomerOrderStatus.GIVEN_UP).count(), best[3]);
+        System.out.printf("First question by replaying every game:           about %7.0f ms%n", replay);
+    }
+}
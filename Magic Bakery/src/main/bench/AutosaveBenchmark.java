@@ -0,0 +1,92 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import bakery.Autosave;
+import bakery.CardSet;
+import bakery.MagicBakery;
+import bakery.StateCodec;
+import sim.RandomStrategy;
+
+/**
+ * Benchmark of how long ending a turn takes with and without {@link Autosave}, checking that the
+ * autosave holds the final position once flushed
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public class AutosaveBenchmark {
+    private static final int GAMES = 300;
+
+    private AutosaveBenchmark() {}
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        CardSet cards = CardSet.load("io/ingredients.csv", "io/layers.csv", "io/customers.csv");
+        File file = File.createTempFile("autosave", ".save");
+        file.deleteOnExit();
+
+        for (int warmup = 0; warmup < 3; warmup++) {
+            run(cards, null);
+            run(cards, file);
+        }
+        long[] off = run(cards, null);
+        long[] on = run(cards, file);
+
+        System.out.printf("Autosave off: %6.0f ns/end of turn (99th percentile %6d ns)%n", mean(off), percentile(off, 99));
+        System.out.printf("Autosave on:  %6.0f ns/end of turn (99th percentile %6d ns)%n", mean(on), percentile(on, 99));
+    }
+
+    /**
+     * Plays random games, timing every end of turn, and checks the autosave if there is one
+     */
+    private static long[] run(CardSet cards, File file) throws IOException, ClassNotFoundException {
+        SplittableRandom random = new SplittableRandom(123);
+        long[] times = new long[GAMES * 64];
+        int turns = 0;
+        long offered = 0;
+        long written = 0;
+        for (int i = 0; i < GAMES; i++) {
+            MagicBakery bakery = new MagicBakery(random.nextLong(), cards);
+            bakery.startGame(List.of("A", "B", "C"));
+            Autosave autosave = file == null ? null : Autosave.start(file, bakery);
+            RandomStrategy strategy = new RandomStrategy(random.split());
+            boolean over = false;
+            while (!over) {
+                while (bakery.getActionsRemaining() != 0) {
+                    bakery.apply(strategy.chooseMove(bakery));
+                }
+                long start = System.nanoTime();
+                over = bakery.endTurn();
+                long elapsed = System.nanoTime() - start;
+                if (turns == times.length) times = Arrays.copyOf(times, turns * 2);
+                times[turns++] = elapsed;
+            }
+            if (autosave != null) {
+                autosave.close();
+                offered += autosave.getOffered();
+                written += autosave.getWritten();
+                StateCodec codec = new StateCodec(bakery);
+                if (!Arrays.equals(codec.encode(bakery), codec.encode(MagicBakery.loadState(file)))) {
+                    throw new IllegalStateException("Autosave of game " + i + " isn't the final position");
+                }
+            }
+        }
+        if (file != null) {
+            System.out.printf("%d games autosaved: %d turns ended, %d saves written, the rest skipped for newer ones%n", GAMES, offered, written);
+        }
+        return Arrays.copyOf(times, turns);
+    }
+
+    private static double mean(long[] times) {
+        return Arrays.stream(times).average().orElse(0);
+    }
+
+    private static long percentile(long[] times, int percent) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+    }
+}
@@ -0,0 +1,123 @@
+package bench;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+
+import bakery.Ingredient;
+import bakery.Layer;
+import bakery.Player;
+import util.CardUtils;
+
+/**
+ * Benchmark comparing the list-copying recipe check with the compiled requirement vectors in Layer
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public class BakeBenchmark {
+    private static final int HANDS = 4096;
+    private static final int ROUNDS = 200;
+
+    private BakeBenchmark() {}
+
+    public static void main(String[] args) throws FileNotFoundException {
+        List<Ingredient> deck = CardUtils.readIngredientFile("io/ingredients.csv");
+        List<Layer> layers = new ArrayList<>(new LinkedHashSet<>(CardUtils.readLayerFile("io/layers.csv")));
+
+        // Random hands of up to eight cards, as both lists and players
+        Random random = new Random(123);
+        List<List<Ingredient>> hands = new ArrayList<>();
+        List<Player> players = new ArrayList<>();
+        for (int i = 0; i < HANDS; i++) {
+            Collections.shuffle(deck, random);
+            List<Ingredient> hand = new ArrayList<>(deck.subList(0, random.nextInt(9)));
+            Collections.sort(hand);
+            Player player = new Player("bench");
+            player.addToHand(hand);
+            hands.add(hand);
+            players.add(player);
+        }
+
+        // Both implementations must agree on every hand and layer
+        for (int i = 0; i < HANDS; i++) {
+            for (Layer layer: layers) {
+                boolean expected = legacyCanBake(layer, hands.get(i));
+                if (layer.canBake(hands.get(i)) != expected || layer.canBake(players.get(i)) != expected) {
+                    throw new IllegalStateException("Mismatch for " + layer + " with " + hands.get(i));
+                }
+            }
+        }
+
+        for (int warmup = 0; warmup < 3; warmup++) {
+            runLegacy(layers, hands);
+            runList(layers, hands);
+            runPlayer(layers, players);
+        }
+        long legacy = runLegacy(layers, hands);
+        long list = runList(layers, hands);
+        long player = runPlayer(layers, players);
+        long checks = (long) ROUNDS * HANDS * layers.size();
+        System.out.printf("List copy (before):   %6.1f ns/check%n", (double) legacy / checks);
+        System.out.printf("Vector over list:     %6.1f ns/check (%.1fx)%n", (double) list / checks, (double) legacy / list);
+        System.out.printf("Vector over counts:   %6.1f ns/check (%.1fx)%n", (double) player / checks, (double) legacy / player);
+    }
+
+    private static long runLegacy(List<Layer> layers, List<List<Ingredient>> hands) {
+        int bakeable = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (List<Ingredient> hand: hands) {
+                for (Layer layer: layers) {
+                    if (legacyCanBake(layer, hand)) bakeable++;
+                }
+            }
+        }
+        return consume(System.nanoTime() - start, bakeable);
+    }
+
+    private static long runList(List<Layer> layers, List<List<Ingredient>> hands) {
+        int bakeable = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (List<Ingredient> hand: hands) {
+                for (Layer layer: layers) {
+                    if (layer.canBake(hand)) bakeable++;
+                }
+            }
+        }
+        return consume(System.nanoTime() - start, bakeable);
+    }
+
+    private static long runPlayer(List<Layer> layers, List<Player> players) {
+        int bakeable = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (Player player: players) {
+                for (Layer layer: layers) {
+                    if (layer.canBake(player)) bakeable++;
+                }
+            }
+        }
+        return consume(System.nanoTime() - start, bakeable);
+    }
+
+    /**
+     * The recipe check as it was before requirement vectors, kept as the baseline
+     */
+    private static boolean legacyCanBake(Layer layer, List<Ingredient> ingredients) {
+        List<Ingredient> _recipe = new ArrayList<>(layer.getRecipe());
+        for (Ingredient ingredient: ingredients) {
+            _recipe.remove(ingredient);
+        }
+        if (_recipe.isEmpty()) return true;
+        return _recipe.size() <= Collections.frequency(ingredients, Ingredient.HELPFUL_DUCK);
+    }
+
+    private static long consume(long elapsed, int result) {
+        if (result == -1) System.out.println();
+        return elapsed;
+    }
+}
@@ -0,0 +1,106 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import bakery.CardSet;
+import bakery.Checkpoints;
+import bakery.MagicBakery;
+import bakery.SaveFile;
+import bakery.StateCodec;
+import sim.RandomStrategy;
+
+/**
+ * Benchmark comparing a {@link Checkpoints} file against a full {@link SaveFile} save at the end of
+ * every turn, after checking that the checkpoint file loads at every turn, and at the turn before when
+ * its last checkpoint is cut short
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public class CheckpointBenchmark {
+    private static final int GAMES = 200;
+
+    private CheckpointBenchmark() {}
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        CardSet cards = CardSet.load("io/ingredients.csv", "io/layers.csv", "io/customers.csv");
+        File saveFile = File.createTempFile("bakery", ".save");
+        File checkpointFile = File.createTempFile("bakery", ".checkpoints");
+        saveFile.deleteOnExit();
+        checkpointFile.deleteOnExit();
+
+        SplittableRandom random = new SplittableRandom(123);
+        long turns = 0;
+        long fullSaves = 0;
+        long saveBytes = 0;
+        long checkpointBytes = 0;
+        long fullBytes = 0;
+        long saveTime = 0;
+        long checkpointTime = 0;
+        for (int i = 0; i < GAMES; i++) {
+            MagicBakery bakery = new MagicBakery(random.nextLong(), cards);
+            bakery.startGame(List.of("A", "B", "C"));
+            StateCodec codec = new StateCodec(bakery);
+            RandomStrategy strategy = new RandomStrategy(random.split());
+            long[] before = null;
+            boolean over = false;
+            try (Checkpoints checkpoints = Checkpoints.create(checkpointFile)) {
+                while (!over) {
+                    while (bakery.getActionsRemaining() != 0) {
+                        bakery.apply(strategy.chooseMove(bakery));
+                    }
+                    over = bakery.endTurn();
+
+                    long start = System.nanoTime();
+                    SaveFile.write(bakery, saveFile);
+                    saveTime += System.nanoTime() - start;
+                    start = System.nanoTime();
+                    long deltas = checkpoints.getDeltas();
+                    checkpoints.write(bakery);
+                    checkpointTime += System.nanoTime() - start;
+                    turns++;
+                    if (checkpoints.getDeltas() == deltas) fullBytes += checkpointFile.length();
+
+                    long[] position = codec.encode(bakery);
+                    if (!Arrays.equals(position, codec.encode(MagicBakery.loadState(checkpointFile)))) {
+                        throw new IllegalStateException("Checkpoint of game " + i + " doesn't load at turn " + turns);
+                    }
+                    if (checkpoints.getDeltas() != deltas && !Arrays.equals(before, codec.encode(cutShort(checkpointFile)))) {
+                        throw new IllegalStateException("Checkpoint of game " + i + " cut short doesn't load at the turn before");
+                    }
+                    saveBytes += saveFile.length();
+                    before = position;
+                }
+                fullSaves += checkpoints.getFullSaves();
+                checkpointBytes += checkpoints.getBytesWritten();
+            }
+        }
+
+        System.out.printf("%d games checkpointed over %d turns, loading at every turn, %d full saves%n", GAMES, turns, fullSaves);
+        System.out.printf("Full save every turn:  %6.0f bytes/turn, %8.0f ns/turn%n", (double) saveBytes / turns, (double) saveTime / turns);
+        System.out.printf("Checkpoint every turn: %6.0f bytes/turn, %8.0f ns/turn%n", (double) checkpointBytes / turns, (double) checkpointTime / turns);
+        System.out.printf("                       %5.1fx fewer bytes written, %.0f bytes/delta between full saves%n",
+                (double) saveBytes / checkpointBytes, (double) (checkpointBytes - fullBytes) / (turns - fullSaves));
+    }
+
+    /**
+     * Loads a checkpoint file with the last byte missing, as if the last checkpoint was cut short by a crash
+     */
+    private static MagicBakery cutShort(File file) throws IOException, ClassNotFoundException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        File torn = File.createTempFile("torn", ".checkpoints");
+        try {
+            Files.write(torn.toPath(), Arrays.copyOf(bytes, bytes.length - 1));
+            return MagicBakery.loadState(torn);
+        } catch (StreamCorruptedException e) {
+            throw new IllegalStateException("Checkpoint file cut short can't be loaded", e);
+        } finally {
+            Files.delete(torn.toPath());
+        }
+    }
+}
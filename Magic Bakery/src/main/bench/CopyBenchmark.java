@@ -0,0 +1,129 @@
+package bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import bakery.CardSet;
+import bakery.CustomerOrder;
+import bakery.MagicBakery;
+import bakery.Player;
+import sim.RandomStrategy;
+
+/**
+ * Benchmark comparing {@link MagicBakery#copy()} with copying a game through a serialization round-trip
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public class CopyBenchmark {
+    private static final int GAMES = 256;
+    private static final int ROUNDS = 50;
+
+    private CopyBenchmark() {}
+
+    public static void main(String[] args) throws FileNotFoundException, IOException, ClassNotFoundException {
+        CardSet cards = CardSet.load("io/ingredients.csv", "io/layers.csv", "io/customers.csv");
+
+        // Games part of the way through, with a few turns of random moves played
+        SplittableRandom random = new SplittableRandom(123);
+        List<MagicBakery> games = new ArrayList<>();
+        for (int i = 0; i < GAMES; i++) {
+            MagicBakery bakery = new MagicBakery(random.nextLong(), cards);
+            bakery.startGame(List.of("A", "B", "C"));
+            playTurns(bakery, new RandomStrategy(random.split()), 1 + random.nextInt(8));
+            games.add(bakery);
+        }
+
+        // A copy must play out exactly like a deserialized copy
+        for (MagicBakery bakery: games) {
+            MagicBakery copy = bakery.copy();
+            MagicBakery roundTrip = roundTrip(bakery);
+            playTurns(copy, new RandomStrategy(new SplittableRandom(7)), 20);
+            playTurns(roundTrip, new RandomStrategy(new SplittableRandom(7)), 20);
+            if (!describe(copy).equals(describe(roundTrip))) {
+                throw new IllegalStateException("Copy diverged from round-trip");
+            }
+        }
+
+        for (int warmup = 0; warmup < 3; warmup++) {
+            runCopy(games);
+            runRoundTrip(games);
+        }
+        long copy = runCopy(games);
+        long roundTrip = runRoundTrip(games);
+        long copies = (long) ROUNDS * GAMES;
+        System.out.printf("Serialization round-trip (before): %9.0f ns/copy%n", (double) roundTrip / copies);
+        System.out.printf("copy():                            %9.0f ns/copy (%.0fx)%n", (double) copy / copies, (double) roundTrip / copy);
+    }
+
+    private static long runCopy(List<MagicBakery> games) {
+        int players = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (MagicBakery bakery: games) {
+                players += bakery.copy().getPlayers().size();
+            }
+        }
+        return consume(System.nanoTime() - start, players);
+    }
+
+    private static long runRoundTrip(List<MagicBakery> games) throws IOException, ClassNotFoundException {
+        int players = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (MagicBakery bakery: games) {
+                players += roundTrip(bakery).getPlayers().size();
+            }
+        }
+        return consume(System.nanoTime() - start, players);
+    }
+
+    /**
+     * Copies a game the way it had to be done before {@link MagicBakery#copy()}
+     */
+    private static MagicBakery roundTrip(MagicBakery bakery) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream os = new ObjectOutputStream(bytes)) {
+            os.writeObject(bakery);
+        }
+        try (ObjectInputStream is = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (MagicBakery) is.readObject();
+        }
+    }
+
+    private static void playTurns(MagicBakery bakery, RandomStrategy strategy, int turns) {
+        for (int turn = 0; turn < turns; turn++) {
+            while (bakery.getActionsRemaining() != 0) {
+                bakery.apply(strategy.chooseMove(bakery));
+            }
+            if (bakery.endTurn()) return;
+        }
+    }
+
+    private static String describe(MagicBakery bakery) {
+        StringBuilder description = new StringBuilder();
+        for (Player player: bakery.getPlayers()) {
+            description.append(player).append(": ").append(player.getHandStr()).append('\n');
+        }
+        description.append(bakery.getCurrentPlayer()).append(' ').append(bakery.getActionsRemaining()).append('\n');
+        description.append(bakery.getPantry()).append(bakery.getLayers()).append('\n');
+        for (CustomerOrder customerOrder: bakery.getCustomers().getActiveCustomers()) {
+            description.append(customerOrder == null ? "-" : customerOrder + " " + customerOrder.getStatus()).append('\n');
+        }
+        for (CustomerOrder.CustomerOrderStatus status: CustomerOrder.CustomerOrderStatus.values()) {
+            description.append(status).append(' ').append(bakery.getCustomers().getInactiveCustomersWithStatus(status).size()).append('\n');
+        }
+        return description.toString();
+    }
+
+    private static long consume(long elapsed, int result) {
+        if (result == -1) System.out.println();
+        return elapsed;
+    }
+}
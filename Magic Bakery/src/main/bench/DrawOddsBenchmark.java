@@ -0,0 +1,146 @@
+package bench;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import bakery.CardSet;
+import bakery.DrawOdds;
+import bakery.Ingredient;
+import bakery.Layer;
+import bakery.MagicBakery;
+import bakery.StateCodec;
+import sim.RandomStrategy;
+
+/**
+ * Benchmark of {@link DrawOdds}, checking the tracked deck against a recount and the odds against
+ * shuffling the deck many times, then timing the first and the repeated answer to each question
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public class DrawOddsBenchmark {
+    private static final int GAMES = 100;
+    private static final int CHECKED = 20;
+    private static final int SHUFFLES = 5_000;
+
+    private DrawOddsBenchmark() {}
+
+    public static void main(String[] args) throws FileNotFoundException {
+        CardSet cards = CardSet.load("io/ingredients.csv", "io/layers.csv", "io/customers.csv");
+        List<List<Ingredient>> questions = new ArrayList<>();
+        for (Layer layer: cards.getLayers()) {
+            questions.add(layer.getRecipe());
+        }
+        for (Ingredient ingredient: new ArrayList<>(cards.getIngredients())) {
+            if (!questions.contains(List.of(ingredient))) questions.add(List.of(ingredient));
+        }
+
+        // Every position of a few random games, with the tracked deck checked against a recount
+        SplittableRandom random = new SplittableRandom(123);
+        List<MagicBakery> positions = new ArrayList<>();
+        for (int i = 0; i < GAMES; i++) {
+            MagicBakery bakery = new MagicBakery(random.nextLong(), cards);
+            bakery.startGame(List.of("A", "B", "C"));
+            StateCodec codec = new StateCodec(bakery);
+            RandomStrategy strategy = new RandomStrategy(random.split());
+            boolean over = false;
+            while (!over) {
+                DrawOdds tracked = bakery.getDrawOdds();
+                DrawOdds recounted = codec.decode(codec.encode(bakery)).getDrawOdds();
+                for (List<Ingredient> question: questions) {
+                    Ingredient card = question.get(0);
+                    if (tracked.getDeckCount(card) != recounted.getDeckCount(card)
+                            || tracked.getDiscardCount(card) != recounted.getDiscardCount(card)) {
+                        throw new IllegalStateException("Tracked count of " + card + " is wrong");
+                    }
+                }
+                positions.add(bakery.copy());
+                bakery.apply(strategy.chooseMove(bakery));
+                if (bakery.getActionsRemaining() == 0) over = bakery.endTurn();
+            }
+        }
+
+        // The odds must agree with drawing from shuffled decks of the same cards
+        double worst = 0;
+        for (int i = 0; i < positions.size(); i += positions.size() / CHECKED) {
+            DrawOdds odds = positions.get(i).getDrawOdds();
+            int[] draws = {1, odds.getRefreshDraws(), odds.getDeckSize() + 3};
+            for (List<Ingredient> question: questions) {
+                for (int k: draws) {
+                    double exact = odds.probability(question, k);
+                    double sampled = sample(odds, cards.getIngredients(), question, k, random);
+                    double error = Math.abs(exact - sampled) / Math.sqrt(Math.max(exact * (1 - exact), 1e-4) / SHUFFLES);
+                    if (error > 5) {
+                        throw new IllegalStateException("Odds of " + question + " in " + k + " draws are " + exact + ", sampled " + sampled);
+                    }
+                    worst = Math.max(worst, error);
+                }
+            }
+        }
+
+        long first = 0;
+        long repeated = 0;
+        int asked = 0;
+        for (MagicBakery position: positions) {
+            DrawOdds odds = position.getDrawOdds();
+            for (List<Ingredient> question: questions) {
+                for (int k = 1; k <= 5; k++) {
+                    asked++;
+                    first += time(odds, question, k);
+                }
+            }
+        }
+        for (int round = 0; round < 5; round++) {
+            repeated = 0;
+            for (MagicBakery position: positions) {
+                DrawOdds odds = position.getDrawOdds();
+                for (List<Ingredient> question: questions) {
+                    for (int k = 1; k <= 5; k++) {
+                        repeated += time(odds, question, k);
+                    }
+                }
+            }
+        }
+
+        System.out.printf("%d positions tracked, odds within %.1f standard errors of %d shuffles%n", positions.size(), worst, SHUFFLES);
+        System.out.printf("First answer:    %6.0f ns/question%n", (double) first / asked);
+        System.out.printf("Repeated answer: %6.0f ns/question%n", (double) repeated / asked);
+    }
+
+    /**
+     * Estimates the odds by shuffling the deck and discard pile and drawing the way the game does
+     */
+    private static double sample(DrawOdds odds, List<Ingredient> ingredients, List<Ingredient> question, int draws, SplittableRandom random) {
+        List<Ingredient> deck = new ArrayList<>();
+        List<Ingredient> discard = new ArrayList<>();
+        for (Ingredient card: ingredients) {
+            if (deck.contains(card) || discard.contains(card)) continue;
+            deck.addAll(Collections.nCopies(odds.getDeckCount(card), card));
+            discard.addAll(Collections.nCopies(odds.getDiscardCount(card), card));
+        }
+        int hits = 0;
+        for (int shuffle = 0; shuffle < SHUFFLES; shuffle++) {
+            Collections.shuffle(deck, new Random(random.nextLong()));
+            Collections.shuffle(discard, new Random(random.nextLong()));
+            List<Ingredient> drawn = new ArrayList<>(deck.subList(0, Math.min(draws, deck.size())));
+            drawn.addAll(discard.subList(0, Math.min(Math.max(0, draws - deck.size()), discard.size())));
+            boolean hit = true;
+            for (Ingredient card: question) {
+                hit &= drawn.remove(card);
+            }
+            if (hit) hits++;
+        }
+        return (double) hits / SHUFFLES;
+    }
+
+    private static long time(DrawOdds odds, List<Ingredient> question, int draws) {
+        long start = System.nanoTime();
+        double probability = odds.probability(question, draws);
+        long elapsed = System.nanoTime() - start;
+        if (probability > 1) System.out.println();
+        return elapsed;
+    }
+}
@@ -0,0 +1,145 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import bakery.CardSet;
+import bakery.Journal;
+import bakery.MagicBakery;
+import bakery.StateCodec;
+import sim.RandomStrategy;
+
+/**
+ * Benchmark of {@link Journal}, journaling random games with the odd undo, checking that replaying
+ * each journal recovers the game, including after a crash cut the last commit short, and timing replay
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public class JournalBenchmark {
+    private static final int GAMES = 200;
+    private static final int ROUNDS = 5;
+
+    private JournalBenchmark() {}
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        CardSet cards = CardSet.load("io/ingredients.csv", "io/layers.csv", "io/customers.csv");
+        File directory = Files.createTempDirectory("journal").toFile();
+        directory.deleteOnExit();
+
+        // Random games, each journaled to its own file as it is played
+        SplittableRandom random = new SplittableRandom(123);
+        List<File> files = new ArrayList<>();
+        List<MagicBakery> games = new ArrayList<>();
+        long actions = 0;
+        long commits = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < GAMES; i++) {
+            MagicBakery bakery = new MagicBakery(random.nextLong(), cards);
+            bakery.startGame(List.of("A", "B", "C"));
+            File file = new File(directory, i + ".journal");
+            file.deleteOnExit();
+            try (Journal journal = Journal.start(file, bakery)) {
+                RandomStrategy strategy = new RandomStrategy(random.split());
+                boolean over = false;
+                while (!over) {
+                    bakery.apply(strategy.chooseMove(bakery));
+                    if (random.nextInt(20) == 0) bakery.undo();
+                    if (bakery.getActionsRemaining() == 0) over = bakery.endTurn();
+                }
+                journal.sync();
+                actions += journal.getRecorded();
+                commits += journal.getCommits();
+            }
+            files.add(file);
+            games.add(bakery);
+        }
+        long recording = System.nanoTime() - start;
+
+        // Replaying a journal must recover the game, and a torn last commit must only lose that commit
+        for (int i = 0; i < GAMES; i++) {
+            MagicBakery bakery = games.get(i);
+            StateCodec codec = new StateCodec(bakery);
+            MagicBakery replayed = MagicBakery.loadState(files.get(i));
+            if (replayed.getZobristHash() != bakery.getZobristHash() || !Arrays.equals(codec.encode(bakery), codec.encode(replayed))) {
+                throw new IllegalStateException("Journal " + i + " replayed to a different position");
+            }
+        }
+        File torn = new File(directory, "torn.journal");
+        torn.deleteOnExit();
+        MagicBakery bakery = new MagicBakery(7, cards);
+        bakery.startGame(List.of("A", "B"));
+        RandomStrategy strategy = new RandomStrategy(new SplittableRandom(7));
+        MagicBakery beforeLastCommit;
+        try (Journal journal = Journal.start(torn, bakery, 0)) {
+            for (int turn = 0; turn < 5; turn++) {
+                while (bakery.getActionsRemaining() != 0) {
+                    bakery.apply(strategy.chooseMove(bakery));
+                }
+                bakery.endTurn();
+            }
+            journal.sync();
+            beforeLastCommit = bakery.copy();
+            bakery.apply(strategy.chooseMove(bakery));
+            journal.sync();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(torn, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        try (Journal journal = Journal.resume(torn)) {
+            if (journal.getGame().getZobristHash() != beforeLastCommit.getZobristHash()) {
+                throw new IllegalStateException("Torn journal recovered the wrong position");
+            }
+            journal.getGame().apply(strategy.chooseMove(journal.getGame()));
+        }
+        Journal.replay(torn);
+
+        List<byte[]> journals = new ArrayList<>();
+        for (File file: files) {
+            journals.add(Files.readAllBytes(file.toPath()));
+        }
+        for (int warmup = 0; warmup < 3; warmup++) {
+            runReplay(journals);
+            runReplayFiles(files);
+        }
+        long replay = Long.MAX_VALUE;
+        long replayFiles = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            replay = Math.min(replay, runReplay(journals));
+            replayFiles = Math.min(replayFiles, runReplayFiles(files));
+        }
+
+        System.out.printf("%d games recovered from their journals, torn commit dropped%n", GAMES);
+        System.out.printf("Record: %d actions in %d commits, %.0f ns/action including play%n", actions, commits, (double) recording / actions);
+        System.out.printf("Replay: %.2f million actions/s, %.0f us per game, %.0f us including reading the file%n",
+                actions / (replay / 1e3), replay / 1e3 / GAMES, replayFiles / 1e3 / GAMES);
+    }
+
+    private static long runReplay(List<byte[]> journals) throws IOException {
+        int players = 0;
+        long start = System.nanoTime();
+        for (byte[] journal: journals) {
+            players += Journal.replay(journal).getPlayers().size();
+        }
+        return consume(System.nanoTime() - start, players);
+    }
+
+    private static long runReplayFiles(List<File> files) throws IOException {
+        int players = 0;
+        long start = System.nanoTime();
+        for (File file: files) {
+            players += Journal.replay(file).getPlayers().size();
+        }
+        return consume(System.nanoTime() - start, players);
+    }
+
+    private static long consume(long elapsed, long result) {
+        if (result == 42) System.out.println();
+        return elapsed;
+    }
+}
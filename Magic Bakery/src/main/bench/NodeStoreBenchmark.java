@@ -0,0 +1,177 @@
+package bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import search.HeapNodeStore;
+import search.NodeStore;
+import search.OffHeapNodeStore;
+
+/**
+ * Benchmark building large search trees in each node store, with a tree of one object per node for comparison
+ * <br/>
+ * Usage: {@code NodeStoreBenchmark [nodes] [rounds]}
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public class NodeStoreBenchmark {
+    private NodeStoreBenchmark() {}
+
+    public static void main(String[] args) {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 4_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        List<NodeStore> stores = List.of(new ObjectNodeStore(nodes), new HeapNodeStore(nodes), new OffHeapNodeStore(nodes));
+        for (NodeStore store: stores) {
+            build(store, nodes);
+        }
+        System.out.println("store        nodes/sec   GC count   GC time");
+        for (NodeStore store: stores) {
+            System.gc();
+            long gcCount = gcCount();
+            long gcMillis = gcMillis();
+            long start = System.nanoTime();
+            long checksum = 0;
+            for (int round = 0; round < rounds; round++) {
+                checksum += build(store, nodes);
+            }
+            long elapsed = System.nanoTime() - start;
+            if (checksum == 42) System.out.println();
+            System.out.printf("%-9s %12.0f %10d %7dms%n", store.getClass().getSimpleName().replace("NodeStore", ""),
+                    (double) nodes * rounds / (elapsed / 1e9), gcCount() - gcCount, gcMillis() - gcMillis);
+        }
+    }
+
+    /**
+     * Fills a store the way a search does, adding each node under a random earlier node and backing up a reward
+     */
+    private static long build(NodeStore store, int nodes) {
+        SplittableRandom random = new SplittableRandom(1);
+        store.reset();
+        for (int i = 1; i < nodes; i++) {
+            int parent = random.nextInt(store.size());
+            int child = store.allocate(i);
+            store.addChild(parent, store.firstChild(parent), child);
+            store.addVirtualLoss(parent);
+            store.addVirtualLoss(child);
+            long reward = random.nextInt((int) NodeStore.ONE);
+            store.update(child, reward);
+            store.update(parent, reward);
+        }
+        long checksum = 0;
+        for (int child = store.firstChild(NodeStore.ROOT); child != NodeStore.NONE; child = store.nextSibling(child)) {
+            checksum += store.reward(child) + store.visits(child);
+        }
+        return checksum;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += gc.getCollectionCount();
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += gc.getCollectionTime();
+        }
+        return millis;
+    }
+
+    /**
+     * Single-threaded store with one object per node, as a tree of node objects would be
+     */
+    private static final class ObjectNodeStore implements NodeStore {
+        private final int capacity;
+        private final List<Node> nodes;
+
+        private ObjectNodeStore(int capacity) {
+            this.capacity = capacity;
+            nodes = new ArrayList<>(capacity);
+            reset();
+        }
+
+        public void reset() {
+            nodes.clear();
+            allocate(0);
+        }
+
+        public int allocate(int move) {
+            if (nodes.size() == capacity) return NONE;
+            Node node = new Node();
+            node.move = move;
+            nodes.add(node);
+            return nodes.size() - 1;
+        }
+
+        public int size() {
+            return nodes.size();
+        }
+
+        public int capacity() {
+            return capacity;
+        }
+
+        public int move(int node) {
+            return nodes.get(node).move;
+        }
+
+        public int firstChild(int node) {
+            Node child = nodes.get(node).child;
+            return child == null ? NONE : child.index;
+        }
+
+        public int nextSibling(int node) {
+            Node sibling = nodes.get(node).sibling;
+            return sibling == null ? NONE : sibling.index;
+        }
+
+        public boolean addChild(int node, int expected, int child) {
+            Node parent = nodes.get(node);
+            Node added = nodes.get(child);
+            added.sibling = parent.child;
+            added.index = child;
+            parent.child = added;
+            return true;
+        }
+
+        public int visits(int node) {
+            return nodes.get(node).visits;
+        }
+
+        public long reward(int node) {
+            return nodes.get(node).reward;
+        }
+
+        public int virtualLoss(int node) {
+            return nodes.get(node).virtualLoss;
+        }
+
+        public void addVirtualLoss(int node) {
+            nodes.get(node).virtualLoss++;
+        }
+
+        public void update(int node, long reward) {
+            Node updated = nodes.get(node);
+            updated.reward += reward;
+            updated.visits++;
+            updated.virtualLoss--;
+        }
+
+        private static final class Node {
+            private int index;
+            private int move;
+            private int visits;
+            private int virtualLoss;
+            private long reward;
+            private Node child;
+            private Node sibling;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import bakery.ArchiveWriter;
+import bakery.CardSet;
+import bakery.GameArchive;
+import bakery.MagicBakery;
+import bakery.Move;
+import bakery.Replay;
+import bakery.StateCodec;
+import sim.GameRunner;
+import sim.RandomStrategy;
+
+/**
+ * Benchmark comparing a {@link Replay} against playing an archived game from the start to reach a
+ * position, after checking that seeking, stepping backwards and scrubbing reach the same position as
+ * playing from the start
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public class ReplayBenchmark {
+    private static final int GAMES = 200;
+    private static final int SEEKS = 200;
+
+    private ReplayBenchmark() {}
+
+    public static void main(String[] args) throws IOException {
+        CardSet cards = CardSet.load("io/ingredients.csv", "io/layers.csv", "io/customers.csv");
+        List<String> playerNames = List.of("Player 1", "Player 2", "Player 3", "Player 4", "Player 5");
+        File file = File.createTempFile("bakery", ".archive");
+        file.deleteOnExit();
+        try (ArchiveWriter archive = ArchiveWriter.create(file)) {
+            for (int game = 0; game < GAMES; game++) {
+                GameRunner.play(game, cards, playerNames, List.of(new RandomStrategy(new Random(~game))), archive);
+            }
+        }
+        GameArchive archive = GameArchive.open(file);
+
+        SplittableRandom random = new SplittableRandom(123);
+        long moves = 0;
+        long snapshotLongs = 0;
+        long seeks = 0;
+        long replayTime = 0;
+        long fromStartTime = 0;
+        long stepTime = 0;
+        long steps = 0;
+        long sum = 0;
+        for (int game = 0; game < GAMES; game++) {
+            // Every position of the game, played from the start
+            MagicBakery bakery = new MagicBakery(archive.getSeed(game), cards);
+            bakery.startGame(archive.getPlayers(game));
+            StateCodec codec = new StateCodec(bakery);
+            List<Move> played = archive.getMoves(game);
+            List<long[]> positions = new ArrayList<>();
+            positions.add(codec.encode(bakery));
+            for (Move move: played) {
+                bakery.apply(move);
+                if (bakery.getActionsRemaining() == 0) bakery.endTurn();
+                positions.add(codec.encode(bakery));
+            }
+
+            Replay replay = Replay.of(archive, game, cards, Replay.DEFAULT_EVERY);
+            moves += replay.getMoveCount();
+            snapshotLongs += replay.getSnapshotLongs();
+            for (int position = replay.getMoveCount(); position >= 0; position--) {
+                check(codec, replay.seek(position), positions.get(position), game, position);
+            }
+            for (int turn = 0; turn <= replay.getTurnCount(); turn++) {
+                check(codec, replay.seekTurn(turn), positions.get(replay.getPosition()), game, replay.getPosition());
+            }
+
+            // Jumps to random positions, against playing each from the start
+            for (int i = 0; i < SEEKS; i++) {
+                int target = random.nextInt(replay.getMoveCount() + 1);
+                long start = System.nanoTime();
+                sum += replay.seek(target).getActionsRemaining();
+                replayTime += System.nanoTime() - start;
+                start = System.nanoTime();
+                sum += fromStart(archive, game, cards, target).getActionsRemaining();
+                fromStartTime += System.nanoTime() - start;
+                if (i % 20 == 0) check(codec, replay.getGame(), positions.get(target), game, target);
+                seeks++;
+            }
+
+            // Stepping backwards over the whole game
+            replay.seek(replay.getMoveCount());
+            long start = System.nanoTime();
+            while (replay.getPosition() > 0) {
+                sum += replay.stepBack().getActionsRemaining();
+                steps++;
+            }
+            stepTime += System.nanoTime() - start;
+            check(codec, replay.getGame(), positions.get(0), game, 0);
+        }
+        if (sum == 42) System.out.println();
+
+        System.out.printf("%d games of %.0f moves, every position reached by seeking, stepping back and scrubbing%n",
+                GAMES, (double) moves / GAMES);
+        System.out.printf("Packed positions every %d turns: %5.0f bytes/game%n", Replay.DEFAULT_EVERY, (double) snapshotLongs * Long.BYTES / GAMES);
+        System.out.printf("Seek to a random move: %8.0f ns, playing from the start %8.0f ns, %5.1fx faster%n",
+                (double) replayTime / seeks, (double) fromStartTime / seeks, (double) fromStartTime / replayTime);
+        System.out.printf("Step back one move:    %8.0f ns%n", (double) stepTime / steps);
+    }
+
+    /**
+     * Plays an archived game from the start up to a number of moves, as reviewing a game did before
+     */
+    private static MagicBakery fromStart(GameArchive archive, int game, CardSet cards, int target) throws IOException {
+        MagicBakery bakery = new MagicBakery(archive.getSeed(game), cards);
+        bakery.startGame(archive.getPlayers(game));
+        List<Move> played = archive.getMoves(game);
+        for (int i = 0; i < target; i++) {
+            bakery.apply(played.get(i));
+            if (bakery.getActionsRemaining() == 0) bakery.endTurn();
+        }
+        return bakery;
+    }
+
+    private static void check(StateCodec codec, MagicBakery reached, long[] expected, int game, int position) {
+        if (!Arrays.equals(codec.encode(reached), expected))
+            throw new IllegalStateException("Replay of game " + game + " reaches a different position at move " + position);
+    }
+}
@@ -0,0 +1,179 @@
+package bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import bakery.CardSet;
+import bakery.MagicBakery;
+import bakery.SaveFile;
+import bakery.StateCodec;
+import sim.RandomStrategy;
+
+/**
+ * Benchmark comparing saving and loading games with {@link SaveFile} against Java serialization,
+ * after checking that saved games, including ones imported from Java serialization, play on the same
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public class SaveFileBenchmark {
+    private static final int GAMES = 256;
+    private static final int ROUNDS = 40;
+
+    private SaveFileBenchmark() {}
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        CardSet cards = CardSet.load("io/ingredients.csv", "io/layers.csv", "io/customers.csv");
+
+        // Games part of the way through, half of them made the way the console makes them
+        SplittableRandom random = new SplittableRandom(123);
+        List<MagicBakery> games = new ArrayList<>();
+        for (int i = 0; i < GAMES; i++) {
+            MagicBakery bakery;
+            if (i % 2 == 0) {
+                bakery = new MagicBakery(random.nextLong(), cards);
+                bakery.startGame(List.of("A", "B", "C"));
+            } else {
+                bakery = new MagicBakery(random.nextLong(), "io/ingredients.csv", "io/layers.csv");
+                bakery.startGame(List.of("A", "B", "C", "D"), "io/customers.csv");
+            }
+            playTurns(bakery, new RandomStrategy(random.split()), random.nextInt(12));
+            games.add(bakery);
+        }
+
+        // A loaded game must be the same position and play on the same, whichever format it was saved in
+        File file = File.createTempFile("bakery", ".save");
+        file.deleteOnExit();
+        for (int i = 0; i < GAMES; i++) {
+            MagicBakery bakery = games.get(i);
+            StateCodec codec = new StateCodec(bakery);
+            MagicBakery loaded = SaveFile.fromBytes(SaveFile.toBytes(bakery));
+            Files.write(file.toPath(), serialize(bakery));
+            SaveFile.importLegacy(file, file);
+            MagicBakery imported = MagicBakery.loadState(file);
+            MagicBakery original = bakery.copy();
+            for (MagicBakery game: List.of(original, loaded, imported)) {
+                if (game.getZobristHash() != bakery.getZobristHash()) {
+                    throw new IllegalStateException("Game " + i + " loaded in a different position");
+                }
+                playTurns(game, new RandomStrategy(new SplittableRandom(i)), 10);
+            }
+            if (!Arrays.equals(codec.encode(original), codec.encode(loaded)) || !Arrays.equals(codec.encode(original), codec.encode(imported))) {
+                throw new IllegalStateException("Game " + i + " played on differently after loading");
+            }
+        }
+
+        long serializedBytes = 0;
+        long savedBytes = 0;
+        for (MagicBakery bakery: games) {
+            serializedBytes += serialize(bakery).length;
+            savedBytes += SaveFile.toBytes(bakery).length;
+        }
+
+        for (int warmup = 0; warmup < 3; warmup++) {
+            runSerialize(games);
+            runSave(games);
+            runDeserialize(games);
+            runLoad(games);
+        }
+        long count = (long) ROUNDS * GAMES;
+        long serialize = runSerialize(games);
+        long save = runSave(games);
+        long deserialize = runDeserialize(games);
+        long load = runLoad(games);
+        System.out.printf("%d games loaded, imported and played on identically%n", GAMES);
+        System.out.printf("Serialization (before): %6.0f bytes, save %7.0f ns, load %7.0f ns%n",
+                (double) serializedBytes / GAMES, (double) serialize / count, (double) deserialize / count);
+        System.out.printf("SaveFile:               %6.0f bytes, save %7.0f ns, load %7.0f ns%n",
+                (double) savedBytes / GAMES, (double) save / count, (double) load / count);
+        System.out.printf("                        %5.1fx smaller, save %5.1fx faster, load %5.1fx faster%n",
+                (double) serializedBytes / savedBytes, (double) serialize / save, (double) deserialize / load);
+    }
+
+    private static long runSerialize(List<MagicBakery> games) throws IOException {
+        long total = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (MagicBakery bakery: games) {
+                total += serialize(bakery).length;
+            }
+        }
+        return consume(System.nanoTime() - start, total);
+    }
+
+    private static long runSave(List<MagicBakery> games) {
+        long total = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (MagicBakery bakery: games) {
+                total += SaveFile.toBytes(bakery).length;
+            }
+        }
+        return consume(System.nanoTime() - start, total);
+    }
+
+    private static long runDeserialize(List<MagicBakery> games) throws IOException, ClassNotFoundException {
+        List<byte[]> saved = new ArrayList<>();
+        for (MagicBakery bakery: games) {
+            saved.add(serialize(bakery));
+        }
+        long total = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (byte[] bytes: saved) {
+                try (ObjectInputStream is = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    total += ((MagicBakery) is.readObject()).getActionsRemaining();
+                }
+            }
+        }
+        return consume(System.nanoTime() - start, total);
+    }
+
+    private static long runLoad(List<MagicBakery> games) throws IOException {
+        List<byte[]> saved = new ArrayList<>();
+        for (MagicBakery bakery: games) {
+            saved.add(SaveFile.toBytes(bakery));
+        }
+        long total = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (byte[] bytes: saved) {
+                total += SaveFile.fromBytes(bytes).getActionsRemaining();
+            }
+        }
+        return consume(System.nanoTime() - start, total);
+    }
+
+    /**
+     * Saves a game the way it was done before {@link SaveFile}
+     */
+    private static byte[] serialize(MagicBakery bakery) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream os = new ObjectOutputStream(bytes)) {
+            os.writeObject(bakery);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void playTurns(MagicBakery bakery, RandomStrategy strategy, int turns) {
+        for (int turn = 0; turn < turns; turn++) {
+            while (bakery.getActionsRemaining() != 0) {
+                bakery.apply(strategy.chooseMove(bakery));
+            }
+            if (bakery.endTurn()) return;
+        }
+    }
+
+    private static long consume(long elapsed, long result) {
+        if (result == 42) System.out.println();
+        return elapsed;
+    }
+}
@@ -0,0 +1,147 @@
+package bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import bakery.CardSet;
+import bakery.MagicBakery;
+import bakery.StateCodec;
+import search.PackedStateStore;
+import sim.RandomStrategy;
+
+/**
+ * Benchmark packing positions with {@link StateCodec}, checking that every position unpacks to a game
+ * that plays on the same way, and filling a {@link PackedStateStore} with a million positions
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public class StateCodecBenchmark {
+    private static final int GAMES = 200;
+    private static final int STORED = 1_000_000;
+
+    private StateCodecBenchmark() {}
+
+    public static void main(String[] args) throws FileNotFoundException, IOException {
+        CardSet cards = CardSet.load("io/ingredients.csv", "io/layers.csv", "io/customers.csv");
+
+        // Every position of a few random games, packed
+        SplittableRandom random = new SplittableRandom(123);
+        List<MagicBakery> positions = new ArrayList<>();
+        List<StateCodec> codecs = new ArrayList<>();
+        long packedBytes = 0;
+        for (int i = 0; i < GAMES; i++) {
+            MagicBakery bakery = new MagicBakery(random.nextLong(), cards);
+            bakery.startGame(List.of("A", "B", "C"));
+            StateCodec codec = new StateCodec(bakery);
+            RandomStrategy strategy = new RandomStrategy(random.split());
+            boolean over = false;
+            while (!over) {
+                positions.add(bakery.copy());
+                codecs.add(codec);
+                packedBytes += codec.encode(bakery).length * Long.BYTES;
+                bakery.apply(strategy.chooseMove(bakery));
+                if (bakery.getActionsRemaining() == 0) over = bakery.endTurn();
+            }
+        }
+
+        // An unpacked position must pack the same, hash the same and play on the same
+        for (int i = 0; i < positions.size(); i++) {
+            MagicBakery position = positions.get(i);
+            StateCodec codec = codecs.get(i);
+            long[] packed = codec.encode(position);
+            MagicBakery decoded = codec.decode(packed);
+            if (!Arrays.equals(packed, codec.encode(decoded)) || decoded.getZobristHash() != position.getZobristHash()) {
+                throw new IllegalStateException("Position " + i + " didn't survive packing");
+            }
+            MagicBakery original = position.copy();
+            playTurns(original, new RandomStrategy(new SplittableRandom(i)), 10);
+            playTurns(decoded, new RandomStrategy(new SplittableRandom(i)), 10);
+            if (!Arrays.equals(codec.encode(original), codec.encode(decoded))) {
+                throw new IllegalStateException("Position " + i + " played on differently after packing");
+            }
+        }
+
+        long serializedBytes = 0;
+        for (int i = 0; i < positions.size(); i += 50) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream os = new ObjectOutputStream(bytes)) {
+                os.writeObject(positions.get(i));
+            }
+            serializedBytes += bytes.size();
+        }
+        int sampled = (positions.size() + 49) / 50;
+
+        for (int warmup = 0; warmup < 3; warmup++) {
+            runEncode(positions, codecs);
+            runDecode(positions, codecs);
+        }
+        long encode = runEncode(positions, codecs);
+        long decode = runDecode(positions, codecs);
+
+        PackedStateStore store = new PackedStateStore();
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        for (int i = 0; store.size() < STORED; i = (i + 1) % positions.size()) {
+            store.add(codecs.get(i).encode(positions.get(i)));
+        }
+        System.gc();
+        long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+        for (int i = 0; i < STORED; i += 9973) {
+            int position = i % positions.size();
+            if (!Arrays.equals(store.get(i), codecs.get(position).encode(positions.get(position)))) {
+                throw new IllegalStateException("Store returned the wrong position");
+            }
+        }
+
+        System.out.printf("%d positions round-tripped and played on identically%n", positions.size());
+        System.out.printf("Serialized:  %6.0f bytes/position%n", (double) serializedBytes / sampled);
+        System.out.printf("Packed:      %6.1f bytes/position%n", (double) packedBytes / positions.size());
+        System.out.printf("Encode:      %6.0f ns/position%n", (double) encode / positions.size());
+        System.out.printf("Decode:      %6.0f ns/position%n", (double) decode / positions.size());
+        System.out.printf("Store:       %d positions in %.1f MB (%.1f MB heap growth)%n",
+                store.size(), store.memoryBytes() / 1e6, (heapAfter - heapBefore) / 1e6);
+    }
+
+    private static long runEncode(List<MagicBakery> positions, List<StateCodec> codecs) {
+        long total = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < positions.size(); i++) {
+            total += codecs.get(i).encode(positions.get(i))[0];
+        }
+        return consume(System.nanoTime() - start, total);
+    }
+
+    private static long runDecode(List<MagicBakery> positions, List<StateCodec> codecs) {
+        List<long[]> packed = new ArrayList<>(positions.size());
+        for (int i = 0; i < positions.size(); i++) {
+            packed.add(codecs.get(i).encode(positions.get(i)));
+        }
+        long total = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < positions.size(); i++) {
+            total += codecs.get(i).decode(packed.get(i)).getActionsRemaining();
+        }
+        return consume(System.nanoTime() - start, total);
+    }
+
+    private static void playTurns(MagicBakery bakery, RandomStrategy strategy, int turns) {
+        for (int turn = 0; turn < turns; turn++) {
+            while (bakery.getActionsRemaining() != 0) {
+                bakery.apply(strategy.chooseMove(bakery));
+            }
+            if (bakery.endTurn()) return;
+        }
+    }
+
+    private static long consume(long elapsed, long result) {
+        if (result == 42) System.out.println();
+        return elapsed;
+    }
+}
@@ -0,0 +1,101 @@
+package search;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Node store backed by arrays on the Java heap, one array per field
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public final class HeapNodeStore implements NodeStore {
+    private final int[] moves;
+    private final int[] siblings;
+    private final AtomicIntegerArray children;
+    private final AtomicIntegerArray visits;
+    private final AtomicIntegerArray virtualLosses;
+    private final AtomicLongArray rewards;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Initialises an empty store
+     * @param capacity Number of nodes the store can hold
+     */
+    public HeapNodeStore(int capacity) {
+        moves = new int[capacity];
+        siblings = new int[capacity];
+        children = new AtomicIntegerArray(capacity);
+        visits = new AtomicIntegerArray(capacity);
+        virtualLosses = new AtomicIntegerArray(capacity);
+        rewards = new AtomicLongArray(capacity);
+        reset();
+    }
+
+    public void reset() {
+        size.set(0);
+        allocate(0);
+    }
+
+    public int allocate(int move) {
+        int node = size.getAndIncrement();
+        if (node >= moves.length) {
+            size.set(moves.length);
+            return NONE;
+        }
+        moves[node] = move;
+        siblings[node] = NONE;
+        visits.set(node, 0);
+        virtualLosses.set(node, 0);
+        rewards.set(node, 0);
+        children.set(node, NONE);
+        return node;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public int capacity() {
+        return moves.length;
+    }
+
+    public int move(int node) {
+        return moves[node];
+    }
+
+    public int firstChild(int node) {
+        return children.get(node);
+    }
+
+    public int nextSibling(int node) {
+        return siblings[node];
+    }
+
+    public boolean addChild(int node, int expected, int child) {
+        siblings[child] = expected;
+        return children.compareAndSet(node, expected, child);
+    }
+
+    public int visits(int node) {
+        return visits.get(node);
+    }
+
+    public long reward(int node) {
+        return rewards.get(node);
+    }
+
+    public int virtualLoss(int node) {
+        return virtualLosses.getPlain(node);
+    }
+
+    public void addVirtualLoss(int node) {
+        virtualLosses.getAndIncrement(node);
+    }
+
+    public void update(int node, long reward) {
+        rewards.getAndAdd(node, reward);
+        visits.getAndIncrement(node);
+        virtualLosses.getAndDecrement(node);
+    }
+}
@@ -0,0 +1,123 @@
+package search;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import bakery.MagicBakery;
+
+/**
+ * Plans the current player's turn in the background while they think, so that a hint is ready when asked for
+ * <br/>
+ * Every time the position is shown, {@link #update(MagicBakery)} starts planning a copy of it on a
+ * background thread, first with a short budget and then with longer ones, publishing each better
+ * plan as it finishes. When the position changes, the search of the old position is stopped and
+ * its plans are never shown.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public class HintService {
+    private static final long[] BUDGETS_MILLIS = {50, 250, 1000, 5000};
+
+    private final TurnPlanner planner = new TurnPlanner();
+    private final AtomicReference<Search> current = new AtomicReference<>();
+    private ExecutorService executor;
+
+    /**
+     * Starts planning a position, unless it is the position already being planned
+     * @param game Game in the position to plan, which is copied and not used by the search
+     */
+    public void update(MagicBakery game) {
+        Search search = current.get();
+        if (search != null && search.hash == game.getZobristHash()) {
+            return;
+        }
+        Search next = game.getActionsRemaining() == 0 ? null : new Search(game.copy());
+        if (search != null) {
+            search.cancelled = true;
+        }
+        current.set(next);
+        if (next != null) {
+            executor().execute(next);
+        }
+    }
+
+    /**
+     * Gets the best plan found so far for a position
+     * @param game Game in the position to get a plan for
+     * @return Best plan so far, or {@code null} if the position isn't being planned or no plan is ready yet
+     */
+    public TurnPlanner.Plan getPlan(MagicBakery game) {
+        Search search = current.get();
+        return search == null || search.hash != game.getZobristHash() ? null : search.plan;
+    }
+
+    /**
+     * Describes the best plan found so far for a position
+     * @param game Game in the position to describe a plan for
+     * @return Description of the plan, saying if the search is still going
+     */
+    public String describe(MagicBakery game) {
+        Search search = current.get();
+        TurnPlanner.Plan plan = getPlan(game);
+        if (plan == null) {
+            return "Still thinking, ask again in a moment.";
+        }
+        return "Suggestion: " + plan + (search.finished ? "" : " (still thinking)");
+    }
+
+    /**
+     * Stops searching and stops the background thread
+     */
+    public void shutdown() {
+        Search search = current.getAndSet(null);
+        if (search != null) {
+            search.cancelled = true;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "hint");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Planning of one position, refined with longer and longer budgets
+     */
+    private final class Search implements Runnable {
+        private final MagicBakery game;
+        private final long hash;
+        private volatile boolean cancelled;
+        private volatile boolean finished;
+        private volatile TurnPlanner.Plan plan;
+
+        private Search(MagicBakery game) {
+            this.game = game;
+            hash = game.getZobristHash();
+        }
+
+        @Override
+        public void run() {
+            for (long budget: BUDGETS_MILLIS) {
+                if (cancelled) return;
+                TurnPlanner.Plan next = planner.plan(game, budget, () -> cancelled);
+                if (cancelled) return;
+                if (plan == null || next.getDepth() >= plan.getDepth()) {
+                    plan = next;
+                }
+                if (next.isComplete()) break;
+            }
+            finished = true;
+        }
+    }
+}
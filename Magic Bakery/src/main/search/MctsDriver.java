@@ -0,0 +1,69 @@
+package search;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import bakery.CardSet;
+import bakery.PlayerStrategy;
+import sim.GameResult;
+import sim.GameRunner;
+import sim.RandomStrategy;
+import sim.Tournament;
+
+/**
+ * Plays the same seeded games with the MCTS player and with random players and compares their scores
+ * <br/>
+ * Usage: {@code MctsDriver [games] [players] [millisPerMove] [threads] [masterSeed] [heap|offheap]}
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public class MctsDriver {
+    private MctsDriver() {}
+
+    public static void main(String[] args) throws FileNotFoundException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int numPlayers = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        long millis = args.length > 2 ? Long.parseLong(args[2]) : 50;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        long masterSeed = args.length > 4 ? Long.parseLong(args[4]) : 123;
+        boolean offHeap = args.length > 5 && args[5].equals("offheap");
+
+        CardSet cards = CardSet.load("io/ingredients.csv", "io/layers.csv", "io/customers.csv");
+        List<String> playerNames = new ArrayList<>();
+        for (int i = 0; i < numPlayers; i++) {
+            playerNames.add("Player " + (i + 1));
+        }
+
+        NodeStore nodes = offHeap ? new OffHeapNodeStore(1 << 20) : new HeapNodeStore(1 << 20);
+        MctsStrategy mcts = MctsStrategy.timed(millis, threads, masterSeed, nodes);
+        double mctsTotal = 0;
+        double randomTotal = 0;
+        int wins = 0;
+        int ties = 0;
+        for (int game = 0; game < games; game++) {
+            long seed = Tournament.gameSeed(masterSeed, game);
+            double mctsScore = score(GameRunner.play(seed, cards, playerNames, List.<PlayerStrategy>of(mcts)));
+            double randomScore = score(GameRunner.play(seed, cards, playerNames, List.<PlayerStrategy>of(new RandomStrategy(new SplittableRandom(seed)))));
+            mctsTotal += mctsScore;
+            randomTotal += randomScore;
+            if (mctsScore > randomScore) wins++;
+            else if (mctsScore == randomScore) ties++;
+            System.out.printf("Game %d: MCTS %.1f, random %.1f%n", game + 1, mctsScore, randomScore);
+        }
+        mcts.shutdown();
+
+        System.out.println();
+        System.out.printf("Average score over %d games: MCTS %.3f, random %.3f%n", games, mctsTotal / games, randomTotal / games);
+        System.out.printf("MCTS won %d, tied %d, lost %d%n", wins, ties, games - wins - ties);
+        System.out.printf("%d playouts at %.0f playouts/sec on %d threads%n", mcts.getPlayouts(), mcts.getPlayoutsPerSecond(), threads);
+    }
+
+    /**
+     * Scores a game like the search does: happy customers, garnished or not
+     */
+    private static double score(GameResult result) {
+        return result.getHappy();
+    }
+}
@@ -0,0 +1,383 @@
+package search;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import bakery.CustomerOrder;
+import bakery.CustomerOrder.CustomerOrderStatus;
+import bakery.Customers;
+import bakery.MagicBakery;
+import bakery.MagicBakery.ActionType;
+import bakery.Move;
+import bakery.MoveBuffer;
+import bakery.PlayerStrategy;
+
+/**
+ * Strategy that runs a Monte Carlo tree search before every move
+ * <br/>
+ * The search is open loop: every playout copies the game, guesses the hidden deck orders with
+ * {@link MagicBakery#determinize(java.util.random.RandomGenerator)}, and walks the tree by move,
+ * only considering the children that are legal in its guess. Several threads search the same tree
+ * at once. A thread walking through a node adds a virtual loss to it, so the other threads spread
+ * out over the tree instead of following the same path.
+ * <br/>
+ * The game is cooperative, so every seat shares one reward: the customers made happy after the
+ * playout, garnished or not, relative to what could still be won.
+ * An instance must only play one game at a time.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public class MctsStrategy implements PlayerStrategy {
+    private static final double EXPLORATION = 0.7;
+    private static final int DEFAULT_NODES = 1 << 18;
+
+    private final NodeStore nodes;
+    private final int threads;
+    private final long budgetNanos;
+    private final int budgetPlayouts;
+    private final int horizon;
+    private final SplittableRandom seeds;
+    private final Worker[] workers;
+    private ExecutorService pool;
+    private long playouts;
+    private long searchNanos;
+
+    private MctsStrategy(NodeStore nodes, int threads, long budgetNanos, int budgetPlayouts, int horizon, long seed) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        this.nodes = nodes;
+        this.threads = threads;
+        this.budgetNanos = budgetNanos;
+        this.budgetPlayouts = budgetPlayouts;
+        this.horizon = horizon;
+        seeds = new SplittableRandom(seed);
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker();
+        }
+    }
+
+    /**
+     * Creates a strategy that searches for a fixed time before every move
+     * @param millis Time to search for, in milliseconds
+     * @param threads Number of threads to search with
+     * @param seed Seed of the guesses and playouts
+     * @return MCTS strategy
+     */
+    public static MctsStrategy timed(long millis, int threads, long seed) {
+        return timed(millis, threads, seed, new HeapNodeStore(DEFAULT_NODES));
+    }
+
+    /**
+     * Creates a strategy that searches for a fixed time before every move, keeping its tree in a given store
+     * @param millis Time to search for, in milliseconds
+     * @param threads Number of threads to search with
+     * @param seed Seed of the guesses and playouts
+     * @param nodes Store for the search tree, used by this strategy only
+     * @return MCTS strategy
+     */
+    public static MctsStrategy timed(long millis, int threads, long seed, NodeStore nodes) {
+        return new MctsStrategy(nodes, threads, millis * 1_000_000, Integer.MAX_VALUE, 12, seed);
+    }
+
+    /**
+     * Creates a strategy that plays a fixed number of playouts before every move
+     * <br/>
+     * On a single thread the moves chosen only depend on the seed and the game.
+     * @param playouts Number of playouts per move
+     * @param threads Number of threads to search with
+     * @param seed Seed of the guesses and playouts
+     * @return MCTS strategy
+     */
+    public static MctsStrategy playouts(int playouts, int threads, long seed) {
+        return playouts(playouts, threads, seed, new HeapNodeStore(DEFAULT_NODES));
+    }
+
+    /**
+     * Creates a strategy that plays a fixed number of playouts before every move, keeping its tree in a given store
+     * @param playouts Number of playouts per move
+     * @param threads Number of threads to search with
+     * @param seed Seed of the guesses and playouts
+     * @param nodes Store for the search tree, used by this strategy only
+     * @return MCTS strategy
+     */
+    public static MctsStrategy playouts(int playouts, int threads, long seed, NodeStore nodes) {
+        return new MctsStrategy(nodes, threads, Long.MAX_VALUE, playouts, 12, seed);
+    }
+
+    /**
+     * Searches the game and picks the move that was explored most
+     * @param bakery Game to choose a move in
+     * @return Legal move
+     */
+    public Move chooseMove(MagicBakery bakery) {
+        Worker main = workers[0];
+        int legal = bakery.generateMoves(main.moves);
+        if (legal == 1) {
+            return main.moves.get(0);
+        }
+        long start = System.nanoTime();
+        nodes.reset();
+        Search search = new Search(bakery, start);
+        for (Worker worker: workers) {
+            worker.random = seeds.split();
+        }
+        Future<?>[] futures = new Future<?>[threads - 1];
+        for (int i = 1; i < threads; i++) {
+            Worker worker = workers[i];
+            futures[i - 1] = pool().submit(() -> worker.search(search));
+        }
+        main.search(search);
+        for (Future<?> future: futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while searching", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Search failed", e.getCause());
+            }
+        }
+        playouts += search.playouts.get();
+        searchNanos += System.nanoTime() - start;
+
+        int best = NodeStore.NONE;
+        for (int child = nodes.firstChild(NodeStore.ROOT); child != NodeStore.NONE; child = nodes.nextSibling(child)) {
+            if (best == NodeStore.NONE || nodes.visits(child) > nodes.visits(best)
+                    || nodes.visits(child) == nodes.visits(best) && nodes.reward(child) > nodes.reward(best)) {
+                best = child;
+            }
+        }
+        if (best == NodeStore.NONE) {
+            bakery.generateMoves(main.moves);
+            return main.moves.get(0);
+        }
+        return Move.decode(nodes.move(best));
+    }
+
+    /**
+     * Gets the number of playouts run since the strategy was created
+     * @return Number of playouts
+     */
+    public long getPlayouts() {
+        return playouts;
+    }
+
+    /**
+     * Gets the search speed since the strategy was created
+     * @return Playouts per second of wall-clock search time
+     */
+    public double getPlayoutsPerSecond() {
+        return searchNanos == 0 ? 0 : playouts / (searchNanos / 1e9);
+    }
+
+    /**
+     * Stops the helper threads, if any were started
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    private ExecutorService pool() {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(threads - 1, runnable -> {
+                Thread thread = new Thread(runnable, "mcts");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * Gets the score of a game: happy customers, garnished or not, as the customer service record counts them
+     */
+    private static int score(Customers customers) {
+        return customers.countInactiveCustomersWithStatus(CustomerOrderStatus.FULFILLED)
+                + customers.countInactiveCustomersWithStatus(CustomerOrderStatus.GARNISHED);
+    }
+
+    /**
+     * Shared state of the search for one move
+     */
+    private final class Search {
+        private final MagicBakery root;
+        private final int rootScore;
+        private final double maxGain;
+        private final long deadline;
+        private final AtomicInteger started = new AtomicInteger();
+        private final AtomicInteger playouts = new AtomicInteger();
+
+        private Search(MagicBakery root, long start) {
+            this.root = root;
+            Customers customers = root.getCustomers();
+            rootScore = score(customers);
+            int waiting = customers.getCustomerDeck().size();
+            for (CustomerOrder customerOrder: customers.getActiveCustomers()) {
+                if (customerOrder != null) waiting++;
+            }
+            maxGain = Math.max(1, waiting);
+            deadline = budgetNanos == Long.MAX_VALUE ? Long.MAX_VALUE : start + budgetNanos;
+        }
+
+        private boolean more() {
+            return started.getAndIncrement() < budgetPlayouts && (deadline == Long.MAX_VALUE || System.nanoTime() < deadline);
+        }
+
+        private long reward(MagicBakery game) {
+            double gain = (score(game.getCustomers()) - rootScore) / maxGain;
+            return (long) (Math.max(0, Math.min(1, gain)) * NodeStore.ONE);
+        }
+    }
+
+    /**
+     * Buffers of one searching thread
+     */
+    private final class Worker {
+        private final MoveBuffer moves = new MoveBuffer();
+        private int[] codes = new int[64];
+        private int[] path = new int[64];
+        private SplittableRandom random;
+
+        private void search(Search search) {
+            while (search.more()) {
+                playout(search);
+                search.playouts.incrementAndGet();
+            }
+        }
+
+        private void playout(Search search) {
+            MagicBakery game = search.root.copy();
+            game.determinize(random);
+            int node = NodeStore.ROOT;
+            int depth = 0;
+            int turns = 0;
+            boolean over = false;
+            nodes.addVirtualLoss(node);
+            path[depth++] = node;
+            boolean expanded = false;
+            while (!over && turns < horizon && !expanded) {
+                int legal = listCodes(game);
+                int child = select(node, legal);
+                if (child == NodeStore.NONE) {
+                    child = expand(node, legal);
+                    expanded = true;
+                    if (child == NodeStore.NONE) break;
+                }
+                nodes.addVirtualLoss(child);
+                if (depth == path.length) {
+                    path = Arrays.copyOf(path, depth * 2);
+                }
+                path[depth++] = child;
+                node = child;
+                game.apply(Move.decode(nodes.move(child)));
+                if (game.getActionsRemaining() == 0) {
+                    over = game.endTurn();
+                    turns++;
+                }
+            }
+            while (!over && turns < horizon) {
+                game.apply(rolloutMove(game));
+                if (game.getActionsRemaining() == 0) {
+                    over = game.endTurn();
+                    turns++;
+                }
+            }
+            long reward = search.reward(game);
+            for (int i = 0; i < depth; i++) {
+                nodes.update(path[i], reward);
+            }
+        }
+
+        /**
+         * Lists the codes of the legal moves, sorted so that they can be searched
+         */
+        private int listCodes(MagicBakery game) {
+            int legal = game.generateMoves(moves);
+            if (legal > codes.length) {
+                codes = new int[Math.max(legal, codes.length * 2)];
+            }
+            for (int i = 0; i < legal; i++) {
+                codes[i] = moves.get(i).encode();
+            }
+            Arrays.sort(codes, 0, legal);
+            return legal;
+        }
+
+        /**
+         * Picks the child with the best upper confidence bound, or none if a legal move has no child yet
+         */
+        private int select(int node, int legal) {
+            int seen = 0;
+            int best = NodeStore.NONE;
+            double bestBound = Double.NEGATIVE_INFINITY;
+            double logVisits = Math.log(nodes.visits(node) + nodes.virtualLoss(node) + 1);
+            for (int child = nodes.firstChild(node); child != NodeStore.NONE; child = nodes.nextSibling(child)) {
+                if (Arrays.binarySearch(codes, 0, legal, nodes.move(child)) < 0) continue;
+                seen++;
+                int tries = nodes.visits(child) + nodes.virtualLoss(child);
+                double bound = tries == 0 ? Double.POSITIVE_INFINITY
+                        : nodes.reward(child) / (double) NodeStore.ONE / tries + EXPLORATION * Math.sqrt(logVisits / tries);
+                if (bound > bestBound) {
+                    best = child;
+                    bestBound = bound;
+                }
+            }
+            return seen < legal ? NodeStore.NONE : best;
+        }
+
+        /**
+         * Adds a child for a random legal move that has none, reusing a child another thread added meanwhile
+         */
+        private int expand(int node, int legal) {
+            int offset = random.nextInt(legal);
+            int head = nodes.firstChild(node);
+            for (int i = 0; i < legal; i++) {
+                int code = codes[(offset + i) % legal];
+                int existing = find(head, code);
+                if (existing != NodeStore.NONE) continue;
+                int child = nodes.allocate(code);
+                if (child == NodeStore.NONE) return NodeStore.NONE;
+                while (!nodes.addChild(node, head, child)) {
+                    int newHead = nodes.firstChild(node);
+                    existing = find(newHead, code);
+                    if (existing != NodeStore.NONE) return existing;
+                    head = newHead;
+                }
+                return child;
+            }
+            return NodeStore.NONE;
+        }
+
+        private int find(int child, int code) {
+            for (; child != NodeStore.NONE; child = nodes.nextSibling(child)) {
+                if (nodes.move(child) == code) return child;
+            }
+            return NodeStore.NONE;
+        }
+
+        /**
+         * Picks a playout move: a fulfil if there is one, with the garnish if possible, otherwise at random
+         */
+        private Move rolloutMove(MagicBakery game) {
+            int legal = game.generateMoves(moves);
+            Move fulfil = null;
+            for (int i = 0; i < legal; i++) {
+                Move move = moves.get(i);
+                if (move.getAction() == ActionType.FULFIL_ORDER && (fulfil == null || move.isGarnish() && !fulfil.isGarnish())) {
+                    fulfil = move;
+                }
+            }
+            return fulfil != null ? fulfil : moves.get(random.nextInt(legal));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package search;
+
+/**
+ * Storage for the nodes of a search tree, addressed by index and shared by the searching threads
+ * <br/>
+ * Each node holds the code of the move that leads to it, its first child, its next sibling, and its
+ * statistics: visits, total reward and virtual loss. Rewards are fixed point, with {@link #ONE}
+ * standing for a reward of 1. Children are pushed onto the front of a node's child list with a
+ * compare-and-set, and statistics are updated with atomic adds, so no operation takes a lock.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public interface NodeStore {
+    /**
+     * Index of the root node
+     */
+    int ROOT = 0;
+
+    /**
+     * Index standing for no node
+     */
+    int NONE = -1;
+
+    /**
+     * Fixed-point value of a reward of 1
+     */
+    long ONE = 1L << 20;
+
+    /**
+     * Removes every node and adds a fresh root
+     * <br/>
+     * Must not be called while other threads are using the store
+     */
+    void reset();
+
+    /**
+     * Adds a node without children or statistics
+     * @param move Code of the move leading to the node
+     * @return Index of the new node, or {@link #NONE} if the store is full
+     */
+    int allocate(int move);
+
+    /**
+     * Gets the number of nodes in the store
+     * @return Number of nodes
+     */
+    int size();
+
+    /**
+     * Gets the number of nodes the store can hold
+     * @return Capacity of the store
+     */
+    int capacity();
+
+    /**
+     * Gets the code of the move leading to a node
+     * @param node Index of the node
+     * @return Move code
+     */
+    int move(int node);
+
+    /**
+     * Gets the most recently added child of a node
+     * @param node Index of the node
+     * @return Index of the child, or {@link #NONE}
+     */
+    int firstChild(int node);
+
+    /**
+     * Gets the next sibling of a node
+     * @param node Index of the node
+     * @return Index of the sibling, or {@link #NONE}
+     */
+    int nextSibling(int node);
+
+    /**
+     * Adds a child to the front of a node's children, unless another child was added first
+     * @param node Index of the parent
+     * @param expected Child that was first when the caller last looked
+     * @param child Index of the new child, allocated by the caller
+     * @return {@code true} if the child was added, {@code false} if the caller must look again
+     */
+    boolean addChild(int node, int expected, int child);
+
+    /**
+     * Gets the number of completed visits to a node
+     * @param node Index of the node
+     * @return Number of visits
+     */
+    int visits(int node);
+
+    /**
+     * Gets the sum of the rewards of a node's completed visits
+     * @param node Index of the node
+     * @return Fixed-point total reward
+     */
+    long reward(int node);
+
+    /**
+     * Gets the number of visits to a node still in progress
+     * @param node Index of the node
+     * @return Virtual loss
+     */
+    int virtualLoss(int node);
+
+    /**
+     * Marks the start of a visit, which counts as a loss until it completes
+     * @param node Index of the node
+     */
+    void addVirtualLoss(int node);
+
+    /**
+     * Completes a visit started with {@link #addVirtualLoss(int)}
+     * @param node Index of the node
+     * @param reward Fixed-point reward of the visit
+     */
+    void update(int node, long reward);
+}
@@ -0,0 +1,115 @@
+package search;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Node store backed by a single block of memory outside the Java heap
+ * <br/>
+ * Every node is a fixed 32-byte record: move, first child, next sibling, visits, virtual loss, four
+ * bytes of padding, then the total reward. The garbage collector never sees the nodes, however many
+ * there are. Resetting the store only rewinds the allocation counter, and each node is cleared when
+ * it is handed out again.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public final class OffHeapNodeStore implements NodeStore {
+    private static final int NODE_BYTES = 32;
+    private static final int MOVE = 0;
+    private static final int CHILD = 4;
+    private static final int SIBLING = 8;
+    private static final int VISITS = 12;
+    private static final int VIRTUAL_LOSS = 16;
+    private static final int REWARD = 24;
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final ByteBuffer memory;
+    private final int capacity;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Initialises an empty store
+     * @param capacity Number of nodes the store can hold
+     */
+    public OffHeapNodeStore(int capacity) {
+        if (capacity < 1 || capacity > (Integer.MAX_VALUE - 8) / NODE_BYTES)
+            throw new IllegalArgumentException("Capacity must be between 1 and " + (Integer.MAX_VALUE - 8) / NODE_BYTES);
+        this.capacity = capacity;
+        // Atomic access needs every field aligned to its size
+        memory = ByteBuffer.allocateDirect(capacity * NODE_BYTES + 8).alignedSlice(8).order(ByteOrder.nativeOrder());
+        reset();
+    }
+
+    public void reset() {
+        size.set(0);
+        allocate(0);
+    }
+
+    public int allocate(int move) {
+        int node = size.getAndIncrement();
+        if (node >= capacity) {
+            size.set(capacity);
+            return NONE;
+        }
+        int base = node * NODE_BYTES;
+        INT.set(memory, base + MOVE, move);
+        INT.set(memory, base + SIBLING, NONE);
+        INT.set(memory, base + VISITS, 0);
+        INT.set(memory, base + VIRTUAL_LOSS, 0);
+        LONG.set(memory, base + REWARD, 0L);
+        INT.setVolatile(memory, base + CHILD, NONE);
+        return node;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int move(int node) {
+        return (int) INT.get(memory, node * NODE_BYTES + MOVE);
+    }
+
+    public int firstChild(int node) {
+        return (int) INT.getVolatile(memory, node * NODE_BYTES + CHILD);
+    }
+
+    public int nextSibling(int node) {
+        return (int) INT.get(memory, node * NODE_BYTES + SIBLING);
+    }
+
+    public boolean addChild(int node, int expected, int child) {
+        INT.set(memory, child * NODE_BYTES + SIBLING, expected);
+        return INT.compareAndSet(memory, node * NODE_BYTES + CHILD, expected, child);
+    }
+
+    public int visits(int node) {
+        return (int) INT.getVolatile(memory, node * NODE_BYTES + VISITS);
+    }
+
+    public long reward(int node) {
+        return (long) LONG.getVolatile(memory, node * NODE_BYTES + REWARD);
+    }
+
+    public int virtualLoss(int node) {
+        return (int) INT.getOpaque(memory, node * NODE_BYTES + VIRTUAL_LOSS);
+    }
+
+    public void addVirtualLoss(int node) {
+        INT.getAndAdd(memory, node * NODE_BYTES + VIRTUAL_LOSS, 1);
+    }
+
+    public void update(int node, long reward) {
+        int base = node * NODE_BYTES;
+        LONG.getAndAdd(memory, base + REWARD, reward);
+        INT.getAndAdd(memory, base + VISITS, 1);
+        INT.getAndAdd(memory, base + VIRTUAL_LOSS, -1);
+    }
+}
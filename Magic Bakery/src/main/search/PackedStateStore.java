@@ -0,0 +1,80 @@
+package search;
+
+import java.util.Arrays;
+
+/**
+ * Append-only store for millions of packed positions
+ * <br/>
+ * Positions are copied into large pages of longs, so each one costs its packed length plus twelve
+ * bytes of index instead of an array object of its own. Not safe for use by several threads at once.
+ * @author Ali Almuhtaseb
+ * @version 1
+ * @see bakery.StateCodec
+ */
+public final class PackedStateStore {
+    private static final int PAGE_BITS = 20;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private long[][] pages = new long[0][];
+    private long[] starts = new long[1024];
+    private int[] lengths = new int[1024];
+    private int size;
+    private int page = -1;
+    private int used = PAGE_SIZE;
+
+    /**
+     * Adds a position to the end of the store
+     * @param state Packed position, which is copied
+     * @return Index of the position
+     */
+    public int add(long[] state) {
+        if (state.length > PAGE_SIZE)
+            throw new IllegalArgumentException("Position is too long to store");
+        if (used + state.length > PAGE_SIZE) {
+            page++;
+            if (page == pages.length) {
+                pages = Arrays.copyOf(pages, Math.max(4, pages.length * 2));
+            }
+            pages[page] = new long[PAGE_SIZE];
+            used = 0;
+        }
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+        }
+        System.arraycopy(state, 0, pages[page], used, state.length);
+        starts[size] = (long) page << PAGE_BITS | used;
+        lengths[size] = state.length;
+        used += state.length;
+        return size++;
+    }
+
+    /**
+     * Gets a copy of a stored position
+     * @param index Index returned by {@link #add(long[])}
+     * @return Packed position
+     */
+    public long[] get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException(index);
+        long start = starts[index];
+        int offset = (int) (start & PAGE_SIZE - 1);
+        return Arrays.copyOfRange(pages[(int) (start >>> PAGE_BITS)], offset, offset + lengths[index]);
+    }
+
+    /**
+     * Gets the number of stored positions
+     * @return Number of positions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the memory taken by the pages and the index
+     * @return Approximate size in bytes
+     */
+    public long memoryBytes() {
+        return (long) (page + 1) * PAGE_SIZE * Long.BYTES + (long) starts.length * (Long.BYTES + Integer.BYTES);
+    }
+}
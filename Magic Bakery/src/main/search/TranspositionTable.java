@@ -0,0 +1,79 @@
+package search;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Fixed-size table from position hashes to search results, shared by threads without locks
+ * <br/>
+ * Each entry takes two longs: the data, and the key XOR the data. Threads read and write entries
+ * without any locking, so another thread may change an entry half way through a read. Such a torn
+ * entry no longer XORs back to the key it is looked up with and reads as a miss instead of returning
+ * wrong data. A new entry always replaces whatever was in its slot, so the table never grows.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public final class TranspositionTable {
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] slots;
+    private final int mask;
+
+    /**
+     * Initialises an empty table
+     * @param capacity Number of entries, rounded up to a power of two
+     */
+    public TranspositionTable(int capacity) {
+        if (capacity < 1 || capacity > 1 << 29)
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^29");
+        int entries = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        slots = new long[entries * 2];
+        mask = entries - 1;
+    }
+
+    /**
+     * Looks up the data stored for a position
+     * @param key Hash of the position
+     * @param missing Value to return if the position isn't in the table
+     * @return Stored data, or {@code missing}
+     */
+    public long get(long key, long missing) {
+        int index = index(key);
+        long check = (long) SLOTS.getOpaque(slots, index);
+        long data = (long) SLOTS.getOpaque(slots, index + 1);
+        return (check ^ data) == key && (check | data) != 0 ? data : missing;
+    }
+
+    /**
+     * Stores data for a position, replacing the entry in its slot
+     * @param key Hash of the position
+     * @param data Data to store
+     */
+    public void put(long key, long data) {
+        int index = index(key);
+        SLOTS.setOpaque(slots, index, key ^ data);
+        SLOTS.setOpaque(slots, index + 1, data);
+    }
+
+    /**
+     * Gets the number of entries the table can hold
+     * @return Capacity of the table
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Removes every entry
+     * <br/>
+     * Must not be called while other threads are using the table
+     */
+    public void clear() {
+        Arrays.fill(slots, 0);
+    }
+
+    private int index(long key) {
+        return ((int) (key ^ (key >>> 32)) & mask) << 1;
+    }
+}
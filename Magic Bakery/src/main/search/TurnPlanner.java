@@ -0,0 +1,416 @@
+package search;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToDoubleFunction;
+
+import bakery.CardCatalog;
+import bakery.CustomerOrder;
+import bakery.CustomerOrder.CustomerOrderStatus;
+import bakery.Customers;
+import bakery.Ingredient;
+import bakery.MagicBakery;
+import bakery.MagicBakery.ActionType;
+import bakery.Move;
+import bakery.MoveBuffer;
+import bakery.Player;
+
+/**
+ * Plans the rest of the current player's turn by searching every sequence of their remaining actions
+ * <br/>
+ * The search is an expectimax: the player picks the best move, and a draw from the pantry deck is
+ * averaged over the cards it could turn up. When the deck isn't empty, the next card is one of the
+ * cards known to be left in it, so a single draw is averaged exactly, weighted by how many copies of
+ * each card are left. Refreshing the pantry and draws that reshuffle the discard pile turn up too many
+ * combinations for that, and are averaged over a few random orders of the deck instead.
+ * <br/>
+ * The values of positions are shared through a {@link TranspositionTable} keyed by
+ * {@link MagicBakery#getZobristHash()}, which ignores the order of the deck, so drawing the same cards
+ * in a different order is only searched once. Passing a card never makes another move possible, so
+ * passes are only searched as the last actions of a turn. The first moves are searched in parallel on a fork/join
+ * pool. The search looks one action ahead, then two, and so on up to the end of the turn, and if the
+ * time budget runs out the plan comes from the deepest search that finished.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public class TurnPlanner {
+    private static final int SAMPLES = 4;
+    private static final long MISSING = 0x7FF0DEADBEEF0001L;
+    private static final long PASSING = 0x5BD1E9955BD1E995L;
+    private static final long CUT_OFF = 0xC2B2AE3D27D4EB4FL;
+
+    private final ToDoubleFunction<MagicBakery> score;
+    private final ForkJoinPool pool;
+    private final long budgetNanos;
+    private final TranspositionTable table = new TranspositionTable(1 << 16);
+
+    /**
+     * Initialises a TurnPlanner that scores positions with {@link #defaultScore(MagicBakery)} and
+     * plans within 50 milliseconds on the common pool
+     */
+    public TurnPlanner() {
+        this(TurnPlanner::defaultScore, ForkJoinPool.commonPool(), 50);
+    }
+
+    /**
+     * Initialises a TurnPlanner
+     * @param score Scores a position once the current player has no actions left, higher is better
+     * @param pool Pool to search on
+     * @param budgetMillis Time allowed for one plan, in milliseconds
+     */
+    public TurnPlanner(ToDoubleFunction<MagicBakery> score, ForkJoinPool pool, long budgetMillis) {
+        this.score = score;
+        this.pool = pool;
+        this.budgetNanos = budgetMillis * 1_000_000;
+    }
+
+    /**
+     * Scores a position by the customers served so far, counting a garnish as half a customer more
+     * <br/>
+     * A customer who will leave at the end of the round costs a full customer if the current player
+     * is the last to play this round, and half a customer otherwise, as later players might still
+     * serve them. Cards in the current player's hand that the waiting customers need add a little, so
+     * that moves towards an order are preferred when no order can be served yet.
+     * @param game Position to score
+     * @return Score of the position
+     */
+    public static double defaultScore(MagicBakery game) {
+        Customers customers = game.getCustomers();
+        double score = customers.countInactiveCustomersWithStatus(CustomerOrderStatus.FULFILLED)
+                + 1.5 * customers.countInactiveCustomersWithStatus(CustomerOrderStatus.GARNISHED);
+        Player player = game.getCurrentPlayer();
+        if (customers.customerWillLeaveSoon()) {
+            Player last = null;
+            for (Player seat: game.getPlayers()) {
+                last = seat;
+            }
+            score -= player == last ? 1 : 0.5;
+        }
+        for (CustomerOrder customerOrder: customers.getActiveCustomers()) {
+            if (customerOrder == null) continue;
+            for (Ingredient ingredient: customerOrder.getRecipe()) {
+                if (player.hasIngredient(ingredient)) score += 0.05;
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Plans the rest of the current player's turn
+     * <br/>
+     * The game itself isn't changed. Must not be called by several threads at once.
+     * @param game Game to plan in
+     * @return Best plan found
+     * @throws IllegalStateException If the current player has no actions left
+     */
+    public Plan plan(MagicBakery game) {
+        return search(game, budgetNanos, () -> false);
+    }
+
+    /**
+     * Plans the rest of the current player's turn with a given time budget, stopping early if asked to
+     * <br/>
+     * Once stopped, the plan comes from the deepest search that had finished, as when the time runs out.
+     * @param game Game to plan in
+     * @param budgetMillis Time allowed for the plan, in milliseconds
+     * @param stop Checked while searching, stops the search once it returns {@code true}
+     * @return Best plan found
+     * @throws IllegalStateException If the current player has no actions left
+     */
+    public Plan plan(MagicBakery game, long budgetMillis, BooleanSupplier stop) {
+        return search(game, budgetMillis * 1_000_000, stop);
+    }
+
+    private Plan search(MagicBakery game, long budgetNanos, BooleanSupplier stop) {
+        List<Move> moves = game.getLegalMoves();
+        if (moves.isEmpty())
+            throw new IllegalStateException("Current player has no actions left");
+        long start = System.nanoTime();
+        // Leave a tenth of the budget for the searches in flight to finish and the plan to be built
+        long deadline = start + budgetNanos / 10 * 9;
+        table.clear();
+
+        // Search one action deep, then two, and so on, keeping the result of the deepest complete search
+        int best = 0;
+        double value = Double.NEGATIVE_INFINITY;
+        int depth = 0;
+        for (int horizon = 1; horizon <= game.getActionsRemaining() && (horizon == 1 || System.nanoTime() < deadline && !stop.getAsBoolean()); horizon++) {
+            List<FirstMove> tasks = new ArrayList<>(moves.size());
+            for (int i = 0; i < moves.size(); i++) {
+                tasks.add(new FirstMove(new Searcher(game.copy(), horizon, deadline, stop, i), moves.get(i)));
+            }
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+            boolean complete = true;
+            int iterationBest = 0;
+            for (int i = 0; i < tasks.size(); i++) {
+                if (tasks.get(i).value > tasks.get(iterationBest).value) iterationBest = i;
+                complete &= tasks.get(i).searcher.complete;
+            }
+            if (!complete && depth > 0) break;
+            best = iterationBest;
+            value = tasks.get(best).value;
+            depth = horizon;
+            if (!complete) break;
+        }
+
+        // Follow the best moves until the plan depends on a card that hasn't been drawn yet
+        List<Move> line = new ArrayList<>();
+        Searcher searcher = new Searcher(game.copy(), depth, Long.MAX_VALUE, () -> false, moves.size());
+        Move move = moves.get(best);
+        while (true) {
+            line.add(move);
+            if (searcher.chance(move) != Chance.NONE) break;
+            searcher.game.apply(move);
+            if (searcher.game.getActionsRemaining() == 0 || line.size() >= depth) break;
+            move = searcher.bestMove(line.size());
+        }
+        return new Plan(line, value, depth, game.getActionsRemaining(), System.nanoTime() - start);
+    }
+
+    /**
+     * How the outcome of a move is averaged
+     */
+    private enum Chance {
+        NONE,
+        TOP_CARD,
+        SAMPLED
+    }
+
+    /**
+     * Fork/join task searching one of the first moves
+     */
+    private final class FirstMove extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final Searcher searcher;
+        private final Move move;
+        private double value = Double.NEGATIVE_INFINITY;
+
+        private FirstMove(Searcher searcher, Move move) {
+            this.searcher = searcher;
+            this.move = move;
+        }
+
+        @Override
+        protected void compute() {
+            value = searcher.expected(move);
+        }
+    }
+
+    /**
+     * Depth-first search of one copy of the game, applying and undoing moves in place
+     */
+    private final class Searcher {
+        private final MagicBakery game;
+        private final int horizon;
+        private final long deadline;
+        private final BooleanSupplier stop;
+        private final SplittableRandom random;
+        private final List<MoveBuffer> buffers = new ArrayList<>();
+        private boolean complete = true;
+
+        private Searcher(MagicBakery game, int horizon, long deadline, BooleanSupplier stop, long seed) {
+            this.game = game;
+            this.horizon = horizon;
+            this.deadline = deadline;
+            this.stop = stop;
+            random = new SplittableRandom(seed);
+        }
+
+        /**
+         * Gets the value of the position with the current player to move
+         */
+        private double value(MagicBakery game, int depth, boolean passing) {
+            int actions = game.getActionsRemaining();
+            if (actions == 0 || depth >= horizon) {
+                return score.applyAsDouble(game);
+            }
+            if (System.nanoTime() > deadline || stop.getAsBoolean()) {
+                complete = false;
+                return score.applyAsDouble(game);
+            }
+            // Values searched to the end of the turn are shared between horizons
+            long key = game.getZobristHash() ^ (passing ? PASSING : 0);
+            if (horizon - depth < actions) {
+                key ^= (horizon - depth) * CUT_OFF;
+            }
+            long cached = table.get(key, MISSING);
+            if (cached != MISSING) {
+                return Double.longBitsToDouble(cached);
+            }
+            while (buffers.size() <= depth) {
+                buffers.add(new MoveBuffer());
+            }
+            MoveBuffer moves = buffers.get(depth);
+            double best = Double.NEGATIVE_INFINITY;
+            for (int i = 0, size = game.generateMoves(moves); i < size; i++) {
+                Move move = moves.get(i);
+                if (passing && move.getAction() != ActionType.PASS_INGREDIENT) continue;
+                best = Math.max(best, expected(game, move, depth));
+            }
+            table.put(key, Double.doubleToRawLongBits(best));
+            return best;
+        }
+
+        private double expected(Move move) {
+            return expected(game, move, 0);
+        }
+
+        /**
+         * Gets the value of a move, averaged over the cards it could draw
+         */
+        private double expected(MagicBakery game, Move move, int depth) {
+            switch (chance(game, move)) {
+                case NONE -> {
+                    game.apply(move);
+                    double value = value(game, depth + 1, move.getAction() == ActionType.PASS_INGREDIENT);
+                    game.undo();
+                    return value;
+                }
+                case TOP_CARD -> {
+                    double total = 0;
+                    for (int ordinal = 0, cards = CardCatalog.size(); ordinal < cards; ordinal++) {
+                        Ingredient card = CardCatalog.get(ordinal);
+                        int copies = card == null ? 0 : game.getPantryDeckCount(card);
+                        if (copies == 0) continue;
+                        MagicBakery copy = game.copyWithTopOfPantryDeck(card);
+                        copy.apply(move);
+                        total += copies * value(copy, depth + 1, false);
+                    }
+                    return total / game.getPantryDeckSize();
+                }
+                default -> {
+                    double total = 0;
+                    for (int sample = 0; sample < SAMPLES; sample++) {
+                        MagicBakery copy = game.copy();
+                        copy.determinize(random);
+                        copy.apply(move);
+                        total += value(copy, depth + 1, false);
+                    }
+                    return total / SAMPLES;
+                }
+            }
+        }
+
+        private Chance chance(Move move) {
+            return chance(game, move);
+        }
+
+        /**
+         * Works out whether a move draws from the pantry deck, and if so how many cards
+         */
+        private Chance chance(MagicBakery game, Move move) {
+            boolean draws = move.getAction() == ActionType.DRAW_INGREDIENT || move.getAction() == ActionType.REFRESH_PANTRY;
+            if (!draws) return Chance.NONE;
+            int deck = game.getPantryDeckSize();
+            if (move.getAction() == ActionType.REFRESH_PANTRY) {
+                return deck == 0 ? Chance.NONE : Chance.SAMPLED;
+            }
+            if (deck > 0) return Chance.TOP_CARD;
+            // Drawing from an empty deck reshuffles the discard pile, if there is one
+            return game.getLegalMoves().contains(Move.drawFromPantryDeck()) ? Chance.SAMPLED : Chance.NONE;
+        }
+
+        /**
+         * Picks the best move in the searcher's game, mostly from values already in the table
+         */
+        private Move bestMove(int depth) {
+            List<Move> moves = game.getLegalMoves();
+            Move best = moves.get(0);
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (Move move: moves) {
+                double value = expected(game, move, depth);
+                if (value > bestValue) {
+                    best = move;
+                    bestValue = value;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Moves planned for the rest of a turn, with their expected score
+     */
+    public static final class Plan {
+        private final List<Move> moves;
+        private final double value;
+        private final int depth;
+        private final int actions;
+        private final long elapsedNanos;
+
+        private Plan(List<Move> moves, double value, int depth, int actions, long elapsedNanos) {
+            this.moves = Collections.unmodifiableList(moves);
+            this.value = value;
+            this.depth = depth;
+            this.actions = actions;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Gets the planned moves, up to and including the first move that draws an unknown card
+         * @return Unmodifiable list of moves, the first of which is the one to play now
+         */
+        public List<Move> getMoves() {
+            return moves;
+        }
+
+        /**
+         * Gets the score the plan is expected to reach by the end of the turn
+         * @return Expected score
+         */
+        public double getValue() {
+            return value;
+        }
+
+        /**
+         * Gets the number of actions the plan looked ahead
+         * @return Search depth, at most the actions the player had left
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * Checks if every sequence of the remaining actions was searched before the time budget ran out
+         * @return {@code true} if the search reached the end of the turn
+         */
+        public boolean isComplete() {
+            return depth == actions;
+        }
+
+        /**
+         * Gets the time the plan took
+         * @return Elapsed time in nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Gets a short description of the plan
+         * @return Description of the plan
+         */
+        public String toString() {
+            StringBuilder description = new StringBuilder();
+            for (Move move: moves) {
+                if (description.length() > 0) description.append(", then ");
+                description.append(move);
+            }
+            return description.append(String.format(" (expected score %.2f%s)", value,
+                    isComplete() ? "" : ", " + depth + " of " + actions + " actions searched")).toString();
+        }
+    }
+}
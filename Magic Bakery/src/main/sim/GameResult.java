@@ -0,0 +1,105 @@
+package sim;
+
+import bakery.CustomerOrder.CustomerOrderStatus;
+import bakery.Customers;
+import bakery.MagicBakery;
+
+/**
+ * Represents the outcome of a finished game, as reported by the customer service record
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public final class GameResult {
+    private final int players;
+    private final int turns;
+    private final int fulfilled;
+    private final int garnished;
+    private final int givenUp;
+
+    /**
+     * Initialises a GameResult
+     * @param players Number of players
+     * @param turns Number of turns played
+     * @param fulfilled Orders fulfilled without garnish
+     * @param garnished Orders fulfilled with garnish
+     * @param givenUp Customers who gave up and went to Greggs
+     */
+    public GameResult(int players, int turns, int fulfilled, int garnished, int givenUp) {
+        this.players = players;
+        this.turns = turns;
+        this.fulfilled = fulfilled;
+        this.garnished = garnished;
+        this.givenUp = givenUp;
+    }
+
+    /**
+     * Reads the result of a finished game
+     * @param bakery Finished game
+     * @param turns Number of turns played
+     * @return Result of the game
+     */
+    public static GameResult of(MagicBakery bakery, int turns) {
+        Customers customers = bakery.getCustomers();
+        return new GameResult(bakery.getPlayers().size(), turns,
+                customers.getInactiveCustomersWithStatus(CustomerOrderStatus.FULFILLED).size(),
+                customers.getInactiveCustomersWithStatus(CustomerOrderStatus.GARNISHED).size(),
+                customers.getInactiveCustomersWithStatus(CustomerOrderStatus.GIVEN_UP).size());
+    }
+
+    /**
+     * Gets the number of players
+     * @return Number of players
+     */
+    public int getPlayers() {
+        return players;
+    }
+
+    /**
+     * Gets the number of turns played
+     * @return Number of turns
+     */
+    public int getTurns() {
+        return turns;
+    }
+
+    /**
+     * Gets the number of orders fulfilled without garnish
+     * @return Number of fulfilled orders
+     */
+    public int getFulfilled() {
+        return fulfilled;
+    }
+
+    /**
+     * Gets the number of orders fulfilled with garnish
+     * @return Number of garnished orders
+     */
+    public int getGarnished() {
+        return garnished;
+    }
+
+    /**
+     * Gets the number of happy customers, garnished or not
+     * @return Number of happy customers
+     */
+    public int getHappy() {
+        return fulfilled + garnished;
+    }
+
+    /**
+     * Gets the number of customers who went to Greggs instead
+     * @return Number of customers who gave up
+     */
+    public int getGivenUp() {
+        return givenUp;
+    }
+
+    /**
+     * Gets the result in the same words as the customer service record
+     * @return Description of the result
+     */
+    public String toString() {
+        return String.format("Happy customers eating baked goods: %d (%d garnished), gone to Greggs instead: %d",
+                getHappy(), garnished, givenUp);
+    }
+}
@@ -0,0 +1,81 @@
+package sim;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import bakery.ArchiveWriter;
+import bakery.CardSet;
+import bakery.MagicBakery;
+import bakery.Move;
+import bakery.Player;
+import bakery.PlayerStrategy;
+
+/**
+ * Plays complete games without a console, asking strategies for every move
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public final class GameRunner {
+    private GameRunner() {}
+
+    /**
+     * Starts and plays a complete game
+     * @param seed Random seed of the game
+     * @param cards Cards to play with
+     * @param playerNames List of player names
+     * @param strategies Strategies by seat, reused in turn if there are fewer strategies than players
+     * @return Result of the game
+     */
+    public static GameResult play(long seed, CardSet cards, List<String> playerNames, List<PlayerStrategy> strategies) {
+        MagicBakery bakery = new MagicBakery(seed, cards);
+        bakery.startGame(playerNames);
+        return play(bakery, strategies);
+    }
+
+    /**
+     * Starts and plays a complete game, adding it to an archive
+     * @param seed Random seed of the game
+     * @param cards Cards to play with
+     * @param playerNames List of player names
+     * @param strategies Strategies by seat, reused in turn if there are fewer strategies than players
+     * @param archive Archive the finished game is added to with every move played
+     * @return Result of the game
+     * @throws IOException If the archive can't be written
+     */
+    public static GameResult play(long seed, CardSet cards, List<String> playerNames, List<PlayerStrategy> strategies, ArchiveWriter archive) throws IOException {
+        MagicBakery bakery = new MagicBakery(seed, cards);
+        bakery.startGame(playerNames);
+        List<Move> moves = new ArrayList<>();
+        GameResult result = play(bakery, strategies, moves);
+        archive.add(seed, bakery, moves);
+        return result;
+    }
+
+    /**
+     * Plays a started game until {@link MagicBakery#endTurn()} reports that it is over
+     * @param bakery Started game
+     * @param strategies Strategies by seat, reused in turn if there are fewer strategies than players
+     * @return Result of the game
+     */
+    public static GameResult play(MagicBakery bakery, List<PlayerStrategy> strategies) {
+        return play(bakery, strategies, null);
+    }
+
+    private static GameResult play(MagicBakery bakery, List<PlayerStrategy> strategies, List<Move> moves) {
+        List<Player> players = new ArrayList<>(bakery.getPlayers());
+        int turns = 0;
+        boolean gameOver = false;
+        while (!gameOver) {
+            PlayerStrategy strategy = strategies.get(players.indexOf(bakery.getCurrentPlayer()) % strategies.size());
+            while (bakery.getActionsRemaining() != 0) {
+                Move move = strategy.chooseMove(bakery);
+                bakery.apply(move);
+                if (moves != null) moves.add(move);
+            }
+            gameOver = bakery.endTurn();
+            turns++;
+        }
+        return GameResult.of(bakery, turns);
+    }
+}
@@ -0,0 +1,85 @@
+package sim;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import bakery.CustomerOrder;
+import bakery.Ingredient;
+import bakery.Layer;
+import bakery.MagicBakery;
+import bakery.Move;
+import bakery.MoveBuffer;
+import bakery.Player;
+import bakery.PlayerStrategy;
+
+/**
+ * Strategy that serves the most impatient customer it can and otherwise collects what the waiting
+ * customers need
+ * <br/>
+ * Legal moves are listed into a buffer the strategy keeps, so an instance must only play one game at
+ * a time
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public class GreedyStrategy implements PlayerStrategy {
+    private final MoveBuffer moves = new MoveBuffer();
+
+    /**
+     * Picks the legal move with the highest score, preferring earlier moves on ties
+     * @param bakery Game to choose a move in
+     * @return Best scoring legal move
+     */
+    public Move chooseMove(MagicBakery bakery) {
+        Map<Ingredient, Integer> needed = neededCards(bakery);
+        Player player = bakery.getCurrentPlayer();
+        Move best = null;
+        int bestScore = Integer.MIN_VALUE;
+        for (int i = 0, size = bakery.generateMoves(moves); i < size; i++) {
+            Move move = moves.get(i);
+            int score = score(move, needed, player);
+            if (score > bestScore) {
+                best = move;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    private static int score(Move move, Map<Ingredient, Integer> needed, Player player) {
+        return switch (move.getAction()) {
+            case FULFIL_ORDER -> 1000 + move.getTarget() * 10 + (move.isGarnish() ? 5 : 0);
+            case BAKE_LAYER -> isNeeded(move.getCard(), needed, player) ? 500 : 50;
+            case DRAW_INGREDIENT -> {
+                if (move.getCard() == null) yield 40;
+                yield isNeeded(move.getCard(), needed, player) ? 300 : 20;
+            }
+            case REFRESH_PANTRY -> 30;
+            case PASS_INGREDIENT, SAVE_GAME -> 0;
+        };
+    }
+
+    private static boolean isNeeded(Ingredient card, Map<Ingredient, Integer> needed, Player player) {
+        return player.getCount(card) < needed.getOrDefault(card, 0);
+    }
+
+    /**
+     * Counts the cards needed by the active customers, including the ingredients of the layers
+     * the current player doesn't hold yet
+     */
+    private static Map<Ingredient, Integer> neededCards(MagicBakery bakery) {
+        Map<Ingredient, Integer> needed = new HashMap<>();
+        Player player = bakery.getCurrentPlayer();
+        for (CustomerOrder customerOrder: bakery.getCustomers().getActiveCustomers()) {
+            if (customerOrder == null) continue;
+            for (Ingredient ingredient: customerOrder.getRecipe()) {
+                needed.merge(ingredient, 1, Integer::sum);
+                if (ingredient instanceof Layer && !player.hasIngredient(ingredient)) {
+                    for (Ingredient layerIngredient: ((Layer) ingredient).getRecipe()) {
+                        needed.merge(layerIngredient, 1, Integer::sum);
+                    }
+                }
+            }
+        }
+        return needed;
+    }
+}
@@ -0,0 +1,37 @@
+package sim;
+
+import java.util.random.RandomGenerator;
+
+import bakery.MagicBakery;
+import bakery.Move;
+import bakery.MoveBuffer;
+import bakery.PlayerStrategy;
+
+/**
+ * Strategy that picks uniformly among the legal moves
+ * <br/>
+ * Moves are listed into a buffer the strategy keeps, so an instance must only play one game at a time
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public class RandomStrategy implements PlayerStrategy {
+    private final RandomGenerator random;
+    private final MoveBuffer moves = new MoveBuffer();
+
+    /**
+     * Initialises a RandomStrategy
+     * @param random Random generator used to pick moves
+     */
+    public RandomStrategy(RandomGenerator random) {
+        this.random = random;
+    }
+
+    /**
+     * Picks one of the legal moves at random
+     * @param bakery Game to choose a move in
+     * @return Random legal move
+     */
+    public Move chooseMove(MagicBakery bakery) {
+        return moves.get(random.nextInt(bakery.generateMoves(moves)));
+    }
+}
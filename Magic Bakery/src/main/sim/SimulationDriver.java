@@ -0,0 +1,62 @@
+package sim;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import bakery.ArchiveWriter;
+import bakery.CardSet;
+import bakery.GameArchive;
+import bakery.PlayerStrategy;
+
+/**
+ * Plays a batch of headless games on one thread and reports the throughput
+ * <br/>
+ * Usage: {@code SimulationDriver [games] [players] [random|greedy] [archive]}, where the optional
+ * archive file is given every game played, see {@link GameArchive}
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public class SimulationDriver {
+    private SimulationDriver() {}
+
+    public static void main(String[] args) throws IOException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int numPlayers = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        String strategyName = args.length > 2 ? args[2] : "random";
+        ArchiveWriter archive = args.length > 3 ? ArchiveWriter.create(new File(args[3])) : null;
+
+        CardSet cards = CardSet.load("io/ingredients.csv", "io/layers.csv", "io/customers.csv");
+        List<String> playerNames = new ArrayList<>();
+        for (int i = 0; i < numPlayers; i++) {
+            playerNames.add("Player " + (i + 1));
+        }
+
+        long happy = 0;
+        long garnished = 0;
+        long givenUp = 0;
+        long turns = 0;
+        long start = System.nanoTime();
+        for (int game = 0; game < games; game++) {
+            PlayerStrategy strategy = strategyName.equals("greedy") ? new GreedyStrategy() : new RandomStrategy(new Random(~game));
+            GameResult result = archive == null
+                    ? GameRunner.play(game, cards, playerNames, List.of(strategy))
+                    : GameRunner.play(game, cards, playerNames, List.of(strategy), archive);
+            happy += result.getHappy();
+            garnished += result.getGarnished();
+            givenUp += result.getGivenUp();
+            turns += result.getTurns();
+        }
+        if (archive != null) {
+            archive.close();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d %s games with %d players in %.2fs (%.0f games/sec)%n", games, strategyName, numPlayers, seconds, games / seconds);
+        System.out.printf("Average turns: %.2f%n", (double) turns / games);
+        System.out.printf("Average happy customers: %.3f (%.3f garnished)%n", (double) happy / games, (double) garnished / games);
+        System.out.printf("Average gone to Greggs: %.3f%n", (double) givenUp / games);
+    }
+}
@@ -0,0 +1,211 @@
+package sim;
+
+import java.io.Serial;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+import bakery.CardSet;
+import bakery.PlayerStrategy;
+
+/**
+ * Plays many seeded games in parallel on a fork/join pool and merges their results
+ * <br/>
+ * Every game gets its own seed derived from the master seed and its index, so any single game can
+ * be replayed on its own. Workers add their results to shared {@link LongAdder} counters once per
+ * batch of games.
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public class Tournament {
+    private static final int BATCH = 256;
+
+    private final CardSet cards;
+    private final List<String> playerNames;
+    private final LongFunction<List<PlayerStrategy>> strategies;
+
+    /**
+     * Initialises a Tournament
+     * @param cards Cards to play with
+     * @param playerNames List of player names
+     * @param strategies Creates the strategies by seat for a game, given the game's seed
+     */
+    public Tournament(CardSet cards, List<String> playerNames, LongFunction<List<PlayerStrategy>> strategies) {
+        this.cards = cards;
+        this.playerNames = playerNames;
+        this.strategies = strategies;
+    }
+
+    /**
+     * Derives the seed of a game from the master seed
+     * @param masterSeed Master seed of the tournament
+     * @param game Index of the game
+     * @return Seed of the game
+     */
+    public static long gameSeed(long masterSeed, long game) {
+        long z = masterSeed + (game + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Plays a single game of the tournament
+     * @param masterSeed Master seed of the tournament
+     * @param game Index of the game
+     * @return Result of the game
+     */
+    public GameResult playGame(long masterSeed, long game) {
+        long seed = gameSeed(masterSeed, game);
+        return GameRunner.play(seed, cards, playerNames, strategies.apply(seed));
+    }
+
+    /**
+     * Plays a number of games on a pool
+     * @param masterSeed Master seed of the tournament
+     * @param games Number of games to play
+     * @param pool Pool to play the games on
+     * @return Merged results of all games
+     */
+    public Summary run(long masterSeed, long games, ForkJoinPool pool) {
+        Summary summary = new Summary();
+        long start = System.nanoTime();
+        pool.invoke(new Games(masterSeed, 0, games, summary));
+        summary.elapsedNanos = System.nanoTime() - start;
+        summary.threads = pool.getParallelism();
+        return summary;
+    }
+
+    /**
+     * Fork/join task playing a range of games
+     */
+    private class Games extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final long masterSeed;
+        private final long from;
+        private final long to;
+        private final Summary summary;
+
+        private Games(long masterSeed, long from, long to, Summary summary) {
+            this.masterSeed = masterSeed;
+            this.from = from;
+            this.to = to;
+            this.summary = summary;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BATCH) {
+                long middle = (from + to) >>> 1;
+                invokeAll(new Games(masterSeed, from, middle, summary), new Games(masterSeed, middle, to, summary));
+                return;
+            }
+            long fulfilled = 0;
+            long garnished = 0;
+            long givenUp = 0;
+            long turns = 0;
+            for (long game = from; game < to; game++) {
+                GameResult result = playGame(masterSeed, game);
+                fulfilled += result.getFulfilled();
+                garnished += result.getGarnished();
+                givenUp += result.getGivenUp();
+                turns += result.getTurns();
+            }
+            summary.games.add(to - from);
+            summary.fulfilled.add(fulfilled);
+            summary.garnished.add(garnished);
+            summary.givenUp.add(givenUp);
+            summary.turns.add(turns);
+        }
+    }
+
+    /**
+     * Merged results of a tournament
+     */
+    public static final class Summary {
+        private final LongAdder games = new LongAdder();
+        private final LongAdder fulfilled = new LongAdder();
+        private final LongAdder garnished = new LongAdder();
+        private final LongAdder givenUp = new LongAdder();
+        private final LongAdder turns = new LongAdder();
+        private long elapsedNanos;
+        private int threads;
+
+        private Summary() {}
+
+        /**
+         * Gets the number of games played
+         * @return Number of games
+         */
+        public long getGames() {
+            return games.sum();
+        }
+
+        /**
+         * Gets the total number of orders fulfilled without garnish
+         * @return Number of fulfilled orders
+         */
+        public long getFulfilled() {
+            return fulfilled.sum();
+        }
+
+        /**
+         * Gets the total number of orders fulfilled with garnish
+         * @return Number of garnished orders
+         */
+        public long getGarnished() {
+            return garnished.sum();
+        }
+
+        /**
+         * Gets the total number of customers who went to Greggs instead
+         * @return Number of customers who gave up
+         */
+        public long getGivenUp() {
+            return givenUp.sum();
+        }
+
+        /**
+         * Gets the total number of turns played
+         * @return Number of turns
+         */
+        public long getTurns() {
+            return turns.sum();
+        }
+
+        /**
+         * Gets the wall-clock time the tournament took
+         * @return Elapsed time in nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Gets the throughput of the tournament
+         * @return Games played per second
+         */
+        public double getGamesPerSecond() {
+            return getGames() / (elapsedNanos / 1e9);
+        }
+
+        /**
+         * Gets a report of the tournament
+         * @return Multi-line report
+         */
+        public String toString() {
+            double n = getGames();
+            return String.format("""
+                    %d games on %d threads in %.2fs (%.0f games/sec)
+                    Average turns: %.2f
+                    Average happy customers: %.3f (%.3f garnished)
+                    Average gone to Greggs: %.3f""",
+                    getGames(), threads, elapsedNanos / 1e9, getGamesPerSecond(),
+                    getTurns() / n, (getFulfilled() + getGarnished()) / n, getGarnished() / n, getGivenUp() / n);
+        }
+    }
+}
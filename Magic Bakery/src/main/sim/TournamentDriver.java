@@ -0,0 +1,57 @@
+package sim;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import bakery.CardSet;
+import bakery.PlayerStrategy;
+
+/**
+ * Runs a seeded tournament on every core, then again on fewer threads to show how it scales
+ * <br/>
+ * Usage: {@code TournamentDriver [games] [players] [random|greedy] [masterSeed]}
+ * @author Ali Almuhtaseb
+ * @version 1
+ */
+public class TournamentDriver {
+    private TournamentDriver() {}
+
+    public static void main(String[] args) throws FileNotFoundException {
+        long games = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+        int numPlayers = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        String strategyName = args.length > 2 ? args[2] : "random";
+        long masterSeed = args.length > 3 ? Long.parseLong(args[3]) : 123;
+
+        CardSet cards = CardSet.load("io/ingredients.csv", "io/layers.csv", "io/customers.csv");
+        List<String> playerNames = new ArrayList<>();
+        for (int i = 0; i < numPlayers; i++) {
+            playerNames.add("Player " + (i + 1));
+        }
+        Tournament tournament = new Tournament(cards, playerNames, seed -> {
+            PlayerStrategy strategy = strategyName.equals("greedy") ? new GreedyStrategy() : new RandomStrategy(new SplittableRandom(seed));
+            return List.of(strategy);
+        });
+
+        // Warm up before measuring
+        tournament.run(masterSeed, Math.min(games, 20_000), ForkJoinPool.commonPool());
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        double single = 0;
+        for (int threads = cores; threads >= 1; threads = threads == 1 ? 0 : Math.max(1, threads / 2)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            Tournament.Summary summary = tournament.run(masterSeed, threads == cores ? games : games / cores * threads, pool);
+            pool.shutdown();
+            if (threads == cores) {
+                System.out.println(summary);
+                System.out.println();
+                System.out.println("threads  games/sec");
+            }
+            System.out.printf("%7d  %9.0f%n", threads, summary.getGamesPerSecond());
+            if (threads == 1) single = summary.getGamesPerSecond();
+        }
+        System.out.printf("Single-thread baseline: %.0f games/sec on %d cores available%n", single, cores);
+    }
+}
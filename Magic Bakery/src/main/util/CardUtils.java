@@ -8,6 +8,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Scanner;
 
+import bakery.CardCatalog;
 import bakery.CustomerOrder;
 import bakery.Ingredient;
 import bakery.Layer;
@@ -100,6 +101,20 @@ public class CardUtils {
         return null;
     }
 
+    /**
+     * Returns the canonical card for a recipe entry, preferring a matching layer
+     * @param name Stripped card name
+     * @param layers List of layers
+     * @return Matching layer, otherwise the catalog ingredient with that name
+     */
+    private static Ingredient findCard(String name, Collection<Layer> layers) {
+        Layer layer = findLayer(name, layers);
+        if (layer != null) {
+            return CardCatalog.layer(layer.getName(), layer.getRecipe());
+        }
+        return CardCatalog.ingredient(name);
+    }
+
     /**
      * Converts a string to a customer order
      * @param str Comma-separated customer order
@@ -115,12 +130,7 @@ public class CardUtils {
         String[] recipeIngredients = recipeParts.split(";");
         List<Ingredient> recipe = new ArrayList<>();
         for (String recipeIngredient: recipeIngredients) {
-            Layer recipeLayer = findLayer(recipeIngredient, layers);
-            if (recipeLayer != null) {
-                recipe.add(new Layer(recipeIngredient.strip(), recipeLayer.getRecipe()));
-            } else {
-                recipe.add(new Ingredient(recipeIngredient.strip()));
-            }
+            recipe.add(findCard(recipeIngredient.strip(), layers));
         }
 
         List<Ingredient> garnish = new ArrayList<>();
@@ -129,12 +139,7 @@ public class CardUtils {
             String[] garnishIngredients = garnishParts.split(";");
             garnish = new ArrayList<>();
             for (String garnishIngredient: garnishIngredients) {
-                Layer recipeLayer = findLayer(garnishIngredient, layers);
-                if (recipeLayer != null) {
-                    garnish.add(new Layer(garnishIngredient.strip(), recipeLayer.getRecipe()));
-                } else {
-                    garnish.add(new Ingredient(garnishIngredient.strip()));
-                }
+                garnish.add(findCard(garnishIngredient.strip(), layers));
             }
         }
 
@@ -150,7 +155,7 @@ public class CardUtils {
         String[] parts = str.split(",");
         String name = parts[0].strip();
         int count = Integer.parseInt(parts[1].strip());
-        Ingredient ingredient = new Ingredient(name);
+        Ingredient ingredient = CardCatalog.ingredient(name);
         return new ArrayList<>(Collections.nCopies(count, ingredient));
     }
 
@@ -167,10 +172,10 @@ public class CardUtils {
         List<Ingredient> recipe = new ArrayList<>();
         String[] ingredients = recipeIngredients.split(";");
         for (String ingredient: ingredients) {
-            recipe.add(new Ingredient(ingredient.strip()));
+            recipe.add(CardCatalog.ingredient(ingredient.strip()));
         }
 
-        Layer layer = new Layer(name, recipe);
+        Layer layer = CardCatalog.layer(name, recipe);
         List<Layer> layers = new ArrayList<>();
         layers.add(layer);
         layers.add(layer);
@@ -5,6 +5,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Supplier;
 
 import bakery.CustomerOrder;
 import bakery.Ingredient;
@@ -53,6 +54,19 @@ public class ConsoleUtils {
      * @return Action chosen by the user
      */
     public ActionType promptForAction(String prompt, MagicBakery bakery) {
+        return promptForAction(prompt, bakery, null);
+    }
+
+    /**
+     * Prompts the user for a bakery action using a given prompt, offering to suggest the best action
+     * <br/>
+     * Asking for a suggestion prints it and asks again
+     * @param prompt User prompt
+     * @param bakery Bakery object
+     * @param hint Describes the suggested action, or {@code null} to not offer suggestions
+     * @return Action chosen by the user
+     */
+    public ActionType promptForAction(String prompt, MagicBakery bakery, Supplier<String> hint) {
         System.out.println(prompt);
         Collection<Object> options = new ArrayList<>();
         if (!bakery.getPantry().isEmpty()) options.add("Take an ingredient from the pantry");
@@ -61,8 +75,13 @@ public class ConsoleUtils {
         if (!bakery.getBakeableLayers().isEmpty()) options.add("Bake a layer");
         if (!bakery.getFulfillableCustomers().isEmpty()) options.add("Fulfill a customer order");
         options.add("Save game state");
+        if (hint != null) options.add("Suggest best action");
 
         Object response = promptEnumerateCollection("Select an option:", options);
+        while (response.toString().equals("Suggest best action")) {
+            System.out.println(hint.get());
+            response = promptEnumerateCollection("Select an option:", options);
+        }
 
         if (response.toString().equals("Take an ingredient from the pantry")) return ActionType.DRAW_INGREDIENT;
         if (response.toString().equals("Give ingredient to another player")) return ActionType.PASS_INGREDIENT;